@@ -0,0 +1,24 @@
+package at.renehollander.transactionmanager.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// takes the usual JMH arguments, results are written as JSON to jmh-result.json unless -rf/-rff say otherwise
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(cli);
+        if (!cli.getResultFormat().hasValue()) builder.resultFormat(ResultFormatType.JSON);
+        if (!cli.getResult().hasValue()) builder.result("jmh-result.json");
+        Options options = builder.build();
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,82 @@
+package at.renehollander.transactionmanager.benchmarks;
+
+import at.renehollander.transactionmanager.Transport;
+import at.renehollander.transactionmanager.manager.Manager;
+import at.renehollander.transactionmanager.station.ExecutionEngine;
+import at.renehollander.transactionmanager.station.Station;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// an in-process manager with stations on temporary sqlite files
+public class Cluster implements AutoCloseable {
+
+    private static final int POOL_SIZE = 8;
+
+    private final File directory;
+    private final Manager manager;
+    private final List<Station> stations = new ArrayList<>();
+
+    public Cluster(int size, Transport transport) throws IOException, SQLException, InterruptedException {
+        directory = Files.createTempDirectory("transactionmanager-bench").toFile();
+        int port = freePort();
+        manager = new Manager(port, transport);
+        for (int i = 0; i < size; i++) {
+            Station station = new Station("station" + i, directory, "localhost", port, POOL_SIZE, ExecutionEngine.bounded(POOL_SIZE, ExecutionEngine.DEFAULT_QUEUE_LIMIT), transport);
+            createTable(station);
+            stations.add(station);
+        }
+        long deadline = System.currentTimeMillis() + 30000;
+        while (manager.getStations().size() < size) {
+            if (System.currentTimeMillis() > deadline) throw new IllegalStateException("only " + manager.getStations().size() + " of " + size + " stations connected");
+            Thread.sleep(50);
+        }
+    }
+
+    private static void createTable(Station station) throws SQLException {
+        Connection connection = station.getDatabaseConnection().getConnection();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE test(id INTEGER PRIMARY KEY, name STRING)");
+        }
+        connection.commit();
+    }
+
+    // the last station already holds the row so inserting it again fails there and rolls back everywhere
+    public void conflict(long id) throws SQLException {
+        Connection connection = stations.get(stations.size() - 1).getDatabaseConnection().getConnection();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO test VALUES(" + id + ", 'conflict')");
+        }
+        connection.commit();
+    }
+
+    public Manager getManager() {
+        return manager;
+    }
+
+    public int size() {
+        return stations.size();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        stations.forEach(Station::close);
+        manager.close();
+        FileUtils.deleteDirectory(directory);
+    }
+
+}
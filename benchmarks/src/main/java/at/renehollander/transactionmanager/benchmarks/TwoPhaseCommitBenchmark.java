@@ -0,0 +1,98 @@
+package at.renehollander.transactionmanager.benchmarks;
+
+import at.renehollander.transactionmanager.Transport;
+import at.renehollander.transactionmanager.manager.TransactionResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TwoPhaseCommitBenchmark {
+
+    private static final int TIMEOUT = 30;
+    private static final int BATCH_SIZE = 100;
+    private static final long CONFLICT_ID = -1;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int stations;
+
+    @Param({"SOCKET_IO", "BINARY"})
+    public Transport transport;
+
+    private Cluster cluster;
+    private final AtomicLong ids = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        cluster = new Cluster(stations, transport);
+        cluster.conflict(CONFLICT_ID);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        cluster.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public TransactionResult commit() {
+        return expect(run("INSERT INTO test VALUES(" + ids.incrementAndGet() + ", 'bench')"), TransactionResult.Outcome.COMMITTED);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public TransactionResult rollback() {
+        return expect(run("INSERT INTO test VALUES(" + CONFLICT_ID + ", 'bench')"), TransactionResult.Outcome.ABORTED);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public TransactionResult readOnly() {
+        return expect(run("SELECT * FROM test WHERE id = " + CONFLICT_ID), TransactionResult.Outcome.COMMITTED);
+    }
+
+    // reported per statement so it compares directly to the single statement transactions
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public TransactionResult batch() {
+        List<String> statements = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            statements.add("INSERT INTO test VALUES(" + ids.incrementAndGet() + ", 'bench')");
+        }
+        return expect(cluster.getManager().executeBatchAsync(TIMEOUT, statements).toCompletableFuture().join(), TransactionResult.Outcome.COMMITTED);
+    }
+
+    private TransactionResult run(String statement) {
+        return cluster.getManager().executeAsync(TIMEOUT, statement).toCompletableFuture().join();
+    }
+
+    private static TransactionResult expect(TransactionResult result, TransactionResult.Outcome outcome) {
+        if (result.getOutcome() != outcome) throw new IllegalStateException("expected " + outcome + " but got " + result);
+        return result;
+    }
+
+}
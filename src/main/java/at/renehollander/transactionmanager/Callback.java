@@ -20,6 +20,20 @@ public final class Callback {
         }
     }
 
+    @FunctionalInterface
+    public interface OneParamWithStringError<T> {
+
+        void execute(String[] err, T t);
+
+        default void execute(String[] err) {
+            execute(err, null);
+        }
+
+        default void execute(T t) {
+            execute(null, t);
+        }
+    }
+
     @FunctionalInterface
     public interface OneParamWithError<T> {
 
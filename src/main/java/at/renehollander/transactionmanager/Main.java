@@ -1,6 +1,9 @@
 package at.renehollander.transactionmanager;
 
+import at.renehollander.transactionmanager.load.ImportMain;
+import at.renehollander.transactionmanager.load.LoadMain;
 import at.renehollander.transactionmanager.manager.Manager;
+import at.renehollander.transactionmanager.manager.Session;
 import at.renehollander.transactionmanager.station.DatabaseConnection;
 import at.renehollander.transactionmanager.station.Station;
 import org.apache.commons.io.FileUtils;
@@ -12,13 +15,23 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
 import java.util.Scanner;
-import java.util.stream.Stream;
+import java.util.concurrent.ExecutionException;
 
 public class Main {
     private static Logger LOG = LoggerFactory.getLogger(Main.class);
 
-    public static void main(String[] args) throws InterruptedException, SQLException, IOException {
+    public static void main(String[] args) throws InterruptedException, SQLException, IOException, ExecutionException {
+        if (args.length > 0 && args[0].equals("load")) {
+            LoadMain.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("import")) {
+            ImportMain.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         File dbFolder = new File("db/");
         if (dbFolder.exists()) FileUtils.deleteDirectory(dbFolder);
         dbFolder.mkdir();
@@ -37,15 +50,18 @@ public class Main {
         LOG.info("Example: INSERT INTO test VALUES(2, 'Hallo Welt')");
         LOG.info("For testing purposes id 1 on station 3 is already used!");
 
+        Session session = manager.session(64);
         Scanner sc = new Scanner(System.in);
         while (true) {
             // INSERT INTO test VALUES(1, 'Hello World')
             String line = sc.nextLine();
-            manager.execute(30, line, (err) -> {
+            session.execute(30, line).whenComplete((result, err) -> {
                 if (err != null) {
-                    Stream.of(err).forEach(LOG::error);
+                    LOG.error("Could not execute statement " + line, err);
+                    return;
                 }
-                LOG.info("Finished statement " + line);
+                result.getErrors().forEach(LOG::error);
+                LOG.info("Finished statement " + line + ": " + result.getOutcome());
             });
         }
     }
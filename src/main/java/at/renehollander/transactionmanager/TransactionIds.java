@@ -0,0 +1,24 @@
+package at.renehollander.transactionmanager;
+
+// several coordinators share the stations, so each one hands out ids from its own range: the coordinator sits in the
+// bits above the counter. ids stay positive, the stations keep zero and below for their own transactions
+public class TransactionIds {
+
+    public static final int COORDINATOR_SHIFT = 48;
+    public static final int MAX_COORDINATOR = (1 << (63 - COORDINATOR_SHIFT)) - 1;
+
+    // the last id before the first one of the coordinator
+    public static long base(int coordinator) {
+        if (coordinator < 0 || coordinator > MAX_COORDINATOR) throw new IllegalArgumentException("coordinator must be between 0 and " + MAX_COORDINATOR);
+        return (long) coordinator << COORDINATOR_SHIFT;
+    }
+
+    public static int coordinator(long id) {
+        return (int) (id >>> COORDINATOR_SHIFT);
+    }
+
+    public static boolean belongsTo(long id, int coordinator) {
+        return id > base(coordinator) && coordinator(id) == coordinator;
+    }
+
+}
@@ -0,0 +1,26 @@
+package at.renehollander.transactionmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public enum Transport {
+    // socket.io with JSON payloads
+    SOCKET_IO("socketio"),
+    // length-prefixed frames with tagged binary values over a plain TCP connection
+    BINARY("binary");
+
+    private final String name;
+
+    Transport(String name) {
+        this.name = name;
+    }
+
+    public static Transport parse(String name) {
+        List<String> names = new ArrayList<>();
+        for (Transport transport : values()) {
+            if (transport.name.equalsIgnoreCase(name)) return transport;
+            names.add(transport.name);
+        }
+        throw new IllegalArgumentException("Unknown transport " + name + ", expected one of " + String.join(", ", names));
+    }
+}
@@ -0,0 +1,216 @@
+package at.renehollander.transactionmanager.load;
+
+import at.renehollander.transactionmanager.manager.Manager;
+import at.renehollander.transactionmanager.manager.TransactionResult;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// streams rows into a table in chunks, each one inserted and committed on its stations as one transaction.
+// a few chunks are in flight at once and the next ones are only read once one of them committed. which chunks committed
+// is kept in a progress file, a later run over the same file with the same chunk size skips them
+public class BulkLoader {
+
+    private static final int RETRY_DELAY = 1000;
+
+    private final Manager manager;
+    private final String table;
+    private final int chunkSize;
+    private final int parallel;
+    private final int timeout;
+    private final int retries;
+    private final String conflict;
+    private final File progressFile;
+
+    private final Semaphore slots;
+    private final AtomicReference<String> failure = new AtomicReference<>();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+        Thread thread = new Thread(runnable, "bulk-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Progress progress;
+
+    // conflict is passed on to the manager, progress is null to not keep track of committed chunks
+    public BulkLoader(Manager manager, String table, int chunkSize, int parallel, int timeout, int retries, String conflict, File progress) {
+        if (chunkSize < 1) throw new IllegalArgumentException("a chunk has to hold at least one row");
+        if (parallel < 1) throw new IllegalArgumentException("at least one chunk has to be allowed in flight");
+        if (retries < 0) throw new IllegalArgumentException("retries must not be negative");
+        this.manager = manager;
+        this.table = table;
+        this.chunkSize = chunkSize;
+        this.parallel = parallel;
+        this.timeout = timeout;
+        this.retries = retries;
+        this.conflict = conflict;
+        this.progressFile = progress;
+        this.slots = new Semaphore(parallel);
+    }
+
+    // true if every row committed, otherwise the reason was printed and a later run resumes after the committed chunks
+    public boolean load(RowReader reader, PrintStream out, int interval) throws IOException, InterruptedException {
+        progress = Progress.load(progressFile, table, chunkSize);
+        if (progress.committed > 0 || !progress.done.isEmpty()) {
+            out.println("Resuming, " + (progress.committed + progress.done.size()) + " chunks of " + chunkSize + " rows already committed");
+        }
+        long start = System.nanoTime();
+        AtomicLong reported = new AtomicLong();
+        AtomicLong reportedAt = new AtomicLong(start);
+        if (interval > 0) {
+            scheduler.scheduleAtFixedRate(() -> {
+                long now = System.nanoTime();
+                long current = rows.get();
+                double seconds = (now - reportedAt.getAndSet(now)) / (double) TimeUnit.SECONDS.toNanos(1);
+                out.println(String.format("%8.1fs %12d rows %10.0f rows/s", (now - start) / (double) TimeUnit.SECONDS.toNanos(1), current, (current - reported.getAndSet(current)) / seconds));
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+        long skipped = 0;
+        long chunk = 0;
+        try {
+            while (failure.get() == null) {
+                List<List<Object>> next = reader.read(chunkSize);
+                if (next.isEmpty()) break;
+                long index = chunk++;
+                if (progress.isCommitted(index)) {
+                    skipped += next.size();
+                    continue;
+                }
+                slots.acquire();
+                if (failure.get() != null) {
+                    slots.release();
+                    break;
+                }
+                send(index, reader.getColumns(), next, 0);
+            }
+        } catch (IOException e) {
+            failure.compareAndSet(null, e.getMessage());
+        }
+        slots.acquire(parallel);
+        slots.release(parallel);
+        scheduler.shutdownNow();
+
+        double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+        out.println(String.format("Loaded %d rows in %.1fs (%.0f rows/s), skipped %d rows of earlier runs, retried %d chunks",
+                rows.get(), seconds, rows.get() / seconds, skipped, retried.get()));
+        String reason = failure.get();
+        if (reason != null) {
+            out.println("Stopped: " + reason);
+            return false;
+        }
+        progress.delete();
+        return true;
+    }
+
+    private void send(long index, List<String> columns, List<List<Object>> chunk, int attempt) {
+        manager.bulkInsertAsync(timeout, table, columns, chunk, conflict).whenComplete((result, err) -> {
+            if (err != null) {
+                failed("chunk " + index + " could not be sent: " + err.getMessage());
+            } else if (result.isCommitted()) {
+                rows.addAndGet(chunk.size());
+                try {
+                    progress.commit(index);
+                    slots.release();
+                } catch (IOException e) {
+                    failed("could not record chunk " + index + " in " + progressFile + ": " + e.getMessage());
+                }
+            } else if (result.getOutcome() == TransactionResult.Outcome.IN_DOUBT) {
+                // it may still commit once the stations recover, so it is neither recorded nor sent again
+                failed("chunk " + index + " ended in doubt: " + result.getErrors());
+            } else if (attempt < retries) {
+                retried.incrementAndGet();
+                scheduler.schedule(() -> send(index, columns, chunk, attempt + 1), RETRY_DELAY, TimeUnit.MILLISECONDS);
+            } else {
+                failed("chunk " + index + " aborted " + (attempt + 1) + " times: " + result.getErrors());
+            }
+        });
+    }
+
+    private void failed(String reason) {
+        failure.compareAndSet(null, reason);
+        slots.release();
+    }
+
+    // the chunks below committed all went in, done holds the ones above that did while an earlier one was still in flight
+    private static class Progress {
+        private final File file;
+        private final String table;
+        private final int chunkSize;
+        private long committed;
+        private final TreeSet<Long> done = new TreeSet<>();
+
+        private Progress(File file, String table, int chunkSize) {
+            this.file = file;
+            this.table = table;
+            this.chunkSize = chunkSize;
+        }
+
+        static Progress load(File file, String table, int chunkSize) throws IOException {
+            Progress progress = new Progress(file, table, chunkSize);
+            if (file == null || !file.exists()) return progress;
+            Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            }
+            if (!table.equals(properties.getProperty("table"))) {
+                throw new IOException(file + " records a load into " + properties.getProperty("table") + ", not " + table);
+            }
+            if (Integer.parseInt(properties.getProperty("chunk")) != chunkSize) {
+                throw new IOException(file + " records chunks of " + properties.getProperty("chunk") + " rows, resume with that chunk size");
+            }
+            progress.committed = Long.parseLong(properties.getProperty("committed"));
+            for (String chunk : properties.getProperty("done", "").split(",")) {
+                if (!chunk.isEmpty()) progress.done.add(Long.parseLong(chunk));
+            }
+            return progress;
+        }
+
+        synchronized boolean isCommitted(long chunk) {
+            return chunk < committed || done.contains(chunk);
+        }
+
+        synchronized void commit(long chunk) throws IOException {
+            done.add(chunk);
+            while (done.remove(committed)) committed++;
+            if (file == null) return;
+            Properties properties = new Properties();
+            properties.setProperty("table", table);
+            properties.setProperty("chunk", String.valueOf(chunkSize));
+            properties.setProperty("committed", String.valueOf(committed));
+            StringBuilder chunks = new StringBuilder();
+            for (long next : done) {
+                if (chunks.length() > 0) chunks.append(',');
+                chunks.append(next);
+            }
+            properties.setProperty("done", chunks.toString());
+            // written next to it and moved over, so a crash leaves either the old or the new progress
+            File written = new File(file.getPath() + ".tmp");
+            try (OutputStream out = new FileOutputStream(written)) {
+                properties.store(out, "chunks committed by the bulk loader");
+            }
+            Files.move(written.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        synchronized void delete() {
+            if (file != null && file.exists() && !file.delete()) System.err.println("Could not delete " + file);
+        }
+    }
+
+}
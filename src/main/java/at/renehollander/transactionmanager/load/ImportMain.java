@@ -0,0 +1,144 @@
+package at.renehollander.transactionmanager.load;
+
+import at.renehollander.transactionmanager.Transport;
+import at.renehollander.transactionmanager.manager.Manager;
+import at.renehollander.transactionmanager.manager.PartitionMap;
+import at.renehollander.transactionmanager.manager.TransactionResult;
+import at.renehollander.transactionmanager.station.DatabaseConnection;
+import at.renehollander.transactionmanager.station.ExecutionEngine;
+import at.renehollander.transactionmanager.station.Station;
+import at.renehollander.transactionmanager.station.StorageProfile;
+import ch.qos.logback.classic.Level;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class ImportMain {
+
+    private static final Map<String, String> OPTIONS = new LinkedHashMap<>();
+
+    static {
+        OPTIONS.put("file", "-");
+        OPTIONS.put("table", "-");
+        OPTIONS.put("format", "csv");
+        OPTIONS.put("header", "true");
+        OPTIONS.put("columns", "-");
+        OPTIONS.put("delimiter", ",");
+        OPTIONS.put("schema", "-");
+        OPTIONS.put("chunk", "1000");
+        OPTIONS.put("parallel", "4");
+        OPTIONS.put("conflict", "-");
+        OPTIONS.put("retries", "3");
+        OPTIONS.put("progress", "-");
+        OPTIONS.put("port", "4000");
+        OPTIONS.put("transport", "socketio");
+        OPTIONS.put("stations", "3");
+        OPTIONS.put("wait", "0");
+        OPTIONS.put("db", "db");
+        OPTIONS.put("partitions", "-");
+        OPTIONS.put("storage", "durable");
+        OPTIONS.put("timeout", "30");
+        OPTIONS.put("interval", "5");
+        OPTIONS.put("verbose", "false");
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException, ExecutionException {
+        Map<String, String> options = LoadMain.parse(args, OPTIONS);
+        if (options == null || options.get("file").equals("-") || options.get("table").equals("-")) {
+            usage();
+            System.exit(1);
+        }
+        if (!Boolean.parseBoolean(options.get("verbose"))) {
+            ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        }
+
+        File file = new File(options.get("file"));
+        String table = options.get("table");
+        int port = Integer.parseInt(options.get("port"));
+        int timeout = Integer.parseInt(options.get("timeout"));
+        Transport transport = Transport.parse(options.get("transport"));
+        List<String> columns = options.get("columns").equals("-") ? null : new ArrayList<>(Arrays.asList(options.get("columns").split("\\s*,\\s*")));
+        if (options.get("delimiter").length() != 1) throw new IllegalArgumentException("--delimiter takes a single character");
+        RowReader reader = new RowReader(file, RowReader.Format.valueOf(options.get("format").toUpperCase()), options.get("delimiter").charAt(0),
+                Boolean.parseBoolean(options.get("header")), columns);
+
+        Manager manager = new Manager(port, transport);
+        if (!options.get("partitions").equals("-")) manager.setPartitionMap(PartitionMap.load(new File(options.get("partitions"))));
+
+        // unlike a load test the databases are kept, an interrupted import resumes into them
+        List<Station> stations = new ArrayList<>();
+        StorageProfile profile = StorageProfile.parse(options.get("storage"));
+        int local = Integer.parseInt(options.get("stations"));
+        if (local > 0) {
+            File dbFolder = new File(options.get("db"));
+            dbFolder.mkdirs();
+            for (int i = 1; i <= local; i++) {
+                stations.add(new Station("station" + i, dbFolder, "localhost", port, DatabaseConnection.DEFAULT_POOL_SIZE,
+                        ExecutionEngine.bounded(DatabaseConnection.DEFAULT_POOL_SIZE, ExecutionEngine.DEFAULT_QUEUE_LIMIT), transport, null, profile));
+            }
+        }
+        int expected = local + Integer.parseInt(options.get("wait"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout);
+        while (manager.getStations().size() < expected) {
+            if (System.nanoTime() > deadline) {
+                System.err.println("Only " + manager.getStations().size() + " of " + expected + " stations connected within " + timeout + "s");
+                System.exit(1);
+            }
+            Thread.sleep(100);
+        }
+        System.out.println("Stations " + manager.getStations() + " connected");
+
+        if (!options.get("schema").equals("-")) {
+            TransactionResult schema = manager.executeAsync(timeout, options.get("schema")).toCompletableFuture().get();
+            if (!schema.isCommitted()) {
+                System.err.println("Could not create table " + table + ": " + schema.getErrors());
+                System.exit(1);
+            }
+        }
+
+        File progress = new File(options.get("progress").equals("-") ? file.getPath() + ".progress" : options.get("progress"));
+        BulkLoader loader = new BulkLoader(manager, table, Integer.parseInt(options.get("chunk")), Integer.parseInt(options.get("parallel")),
+                timeout, Integer.parseInt(options.get("retries")), options.get("conflict").equals("-") ? null : options.get("conflict"), progress);
+        System.out.println("Loading " + file + " into " + table + " " + reader.getColumns());
+        boolean loaded;
+        try {
+            loaded = loader.load(reader, System.out, Integer.parseInt(options.get("interval")));
+        } finally {
+            reader.close();
+        }
+
+        stations.forEach(Station::close);
+        manager.close();
+        System.exit(loaded ? 0 : 2);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java -jar transactionmanager-1.0.0.jar import --file F --table T [--option value]...");
+        System.err.println("  --format F           csv, or json with one array or object per line (" + OPTIONS.get("format") + ")");
+        System.err.println("  --header true        the first csv line names the columns (" + OPTIONS.get("header") + ")");
+        System.err.println("  --columns a,b        columns to insert, in the order the file has them (from the header)");
+        System.err.println("  --delimiter C        csv delimiter (" + OPTIONS.get("delimiter") + ")");
+        System.err.println("  --schema SQL         statement run before loading, e.g. CREATE TABLE IF NOT EXISTS ...");
+        System.err.println("  --chunk N            rows committed together (" + OPTIONS.get("chunk") + ")");
+        System.err.println("  --parallel N         chunks in flight (" + OPTIONS.get("parallel") + ")");
+        System.err.println("  --conflict C         ignore or replace rows colliding with a unique key, makes resuming harmless (fail)");
+        System.err.println("  --retries N          times an aborted chunk is sent again (" + OPTIONS.get("retries") + ")");
+        System.err.println("  --progress F         committed chunks, a later run resumes after them (<file>.progress)");
+        System.err.println("  --stations N         stations to start in this process, their databases are kept (" + OPTIONS.get("stations") + ")");
+        System.err.println("  --wait N             further stations to wait for, started with StationMain (" + OPTIONS.get("wait") + ")");
+        System.err.println("  --port, --transport, --db, --partitions   like ManagerMain and StationMain");
+        System.err.println("  --storage P          durable, balanced or throughput sqlite settings of local stations (" + OPTIONS.get("storage") + ")");
+        System.err.println("  --timeout S, --interval S");
+        System.err.println("  --verbose true       keep the info log");
+    }
+
+}
@@ -0,0 +1,93 @@
+package at.renehollander.transactionmanager.load;
+
+import java.util.Random;
+
+// picks the key an operation works on out of [0, keys)
+public abstract class KeyDistribution {
+
+    protected final long keys;
+
+    protected KeyDistribution(long keys) {
+        if (keys < 1) throw new IllegalArgumentException("at least one key is required");
+        this.keys = keys;
+    }
+
+    public abstract long next(Random random);
+
+    public static KeyDistribution uniform(long keys) {
+        return new KeyDistribution(keys) {
+            @Override
+            public long next(Random random) {
+                return (long) (random.nextDouble() * this.keys);
+            }
+
+            @Override
+            public String toString() {
+                return "uniform over " + this.keys + " keys";
+            }
+        };
+    }
+
+    // a hotKeys fraction of the keys, the lowest ones, gets a hotOperations fraction of the operations
+    public static KeyDistribution hotspot(long keys, double hotKeys, double hotOperations) {
+        if (hotKeys <= 0 || hotKeys >= 1 || hotOperations < 0 || hotOperations > 1) {
+            throw new IllegalArgumentException("hot key and operation fractions have to be between 0 and 1");
+        }
+        long hot = Math.max(1, (long) (keys * hotKeys));
+        return new KeyDistribution(keys) {
+            @Override
+            public long next(Random random) {
+                if (hot >= this.keys) return (long) (random.nextDouble() * this.keys);
+                if (random.nextDouble() < hotOperations) return (long) (random.nextDouble() * hot);
+                return hot + (long) (random.nextDouble() * (this.keys - hot));
+            }
+
+            @Override
+            public String toString() {
+                return "hotspot with " + (int) (hotOperations * 100) + "% of operations on " + hot + " of " + this.keys + " keys";
+            }
+        };
+    }
+
+    public static KeyDistribution zipfian(long keys, double theta) {
+        return new Zipfian(keys, theta);
+    }
+
+    // the generator of Gray et al., "Quickly Generating Billion-Record Synthetic Databases", key 0 is the most popular one
+    private static class Zipfian extends KeyDistribution {
+        private final double theta;
+        private final double alpha;
+        private final double zetan;
+        private final double eta;
+
+        private Zipfian(long keys, double theta) {
+            super(keys);
+            if (theta <= 0 || theta >= 1) throw new IllegalArgumentException("zipfian theta has to be between 0 and 1");
+            this.theta = theta;
+            this.alpha = 1 / (1 - theta);
+            this.zetan = zeta(keys, theta);
+            this.eta = (1 - Math.pow(2.0 / keys, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+        }
+
+        private static double zeta(long n, double theta) {
+            double sum = 0;
+            for (long i = 1; i <= n; i++) sum += 1 / Math.pow(i, theta);
+            return sum;
+        }
+
+        @Override
+        public long next(Random random) {
+            double u = random.nextDouble();
+            double uz = u * zetan;
+            if (uz < 1) return 0;
+            if (uz < 1 + Math.pow(0.5, theta)) return Math.min(1, keys - 1);
+            return Math.min(keys - 1, (long) (keys * Math.pow(eta * u - eta + 1, alpha)));
+        }
+
+        @Override
+        public String toString() {
+            return "zipfian with theta " + theta + " over " + keys + " keys";
+        }
+    }
+
+}
@@ -0,0 +1,198 @@
+package at.renehollander.transactionmanager.load;
+
+import at.renehollander.transactionmanager.manager.Manager;
+import at.renehollander.transactionmanager.manager.TransactionResult;
+import at.renehollander.transactionmanager.metrics.Counter;
+import at.renehollander.transactionmanager.metrics.Histogram;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// runs a workload against one or more managers, either closed loop with a fixed number of transactions in flight
+// or open loop at a target rate. open loop latencies count from when a transaction was due, not from when
+// it could be sent, so a stalled system shows up in the percentiles instead of just lowering the rate
+public class LoadDriver {
+
+    private final List<Manager> managers;
+    private final AtomicInteger nextManager = new AtomicInteger();
+    private final Workload workload;
+    private final int timeout;
+    private final int concurrency;
+    private final double rate;
+    private final long warmup;
+    private final long duration;
+
+    private final Map<Workload.Operation, Stats> operations = new EnumMap<>(Workload.Operation.class);
+    private final Stats total = new Stats();
+    private final Semaphore inFlight;
+    private final AtomicInteger running = new AtomicInteger();
+    private final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), (runnable) -> {
+        Thread thread = new Thread(runnable, "load-driver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private long measureFrom;
+    private long end;
+
+    // a rate of 0 runs closed loop, otherwise concurrency only caps how many transactions may be in flight
+    public LoadDriver(Manager manager, Workload workload, int timeout, int concurrency, double rate, long warmup, long duration, TimeUnit unit) {
+        this(Collections.singletonList(manager), workload, timeout, concurrency, rate, warmup, duration, unit);
+    }
+
+    // coordinators sharing the stations take turns, like clients spread over them
+    public LoadDriver(List<Manager> managers, Workload workload, int timeout, int concurrency, double rate, long warmup, long duration, TimeUnit unit) {
+        if (managers.isEmpty()) throw new IllegalArgumentException("at least one manager is needed");
+        if (concurrency < 1) throw new IllegalArgumentException("concurrency has to be at least 1");
+        if (rate < 0) throw new IllegalArgumentException("rate must not be negative");
+        this.managers = managers;
+        this.workload = workload;
+        this.timeout = timeout;
+        this.concurrency = concurrency;
+        this.rate = rate;
+        this.warmup = unit.toNanos(warmup);
+        this.duration = unit.toNanos(duration);
+        this.inFlight = new Semaphore(concurrency);
+        for (Workload.Operation operation : Workload.Operation.values()) operations.put(operation, new Stats());
+    }
+
+    public void run(PrintStream out, int interval) throws InterruptedException {
+        long start = System.nanoTime();
+        measureFrom = start + warmup;
+        end = measureFrom + duration;
+        out.println("Running " + workload + (rate > 0 ? " at " + rate + " transactions/s" : " closed loop") + " with " + concurrency + " in flight for " +
+                TimeUnit.NANOSECONDS.toSeconds(warmup) + "s warmup and " + TimeUnit.NANOSECONDS.toSeconds(duration) + "s measured");
+        Thread pacer = null;
+        if (rate > 0) {
+            pacer = new Thread(this::pace, "load-pacer");
+            pacer.setDaemon(true);
+            pacer.start();
+        } else {
+            for (int i = 0; i < concurrency; i++) executor.execute(this::loop);
+        }
+        long lastCount = 0;
+        long lastAborted = 0;
+        long next = start;
+        while (System.nanoTime() < end) {
+            next += TimeUnit.SECONDS.toNanos(interval);
+            sleepUntil(Math.min(next, end));
+            long count = total.count();
+            long aborted = total.aborted();
+            long elapsed = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+            out.println(String.format(Locale.ROOT, "%5ds %10.1f tx/s %6.2f%% aborted %5d in flight%s", elapsed, (count - lastCount) / (double) interval,
+                    count == lastCount ? 0 : 100.0 * (aborted - lastAborted) / (count - lastCount), running.get(), System.nanoTime() < measureFrom ? " (warmup)" : ""));
+            lastCount = count;
+            lastAborted = aborted;
+        }
+        if (pacer != null) pacer.join();
+        // let what is still in flight finish so it is not reported as lost
+        inFlight.tryAcquire(concurrency, timeout + 1, TimeUnit.SECONDS);
+        executor.shutdown();
+        report(out);
+    }
+
+    private void loop() {
+        if (System.nanoTime() >= end) return;
+        inFlight.acquireUninterruptibly();
+        issue(System.nanoTime(), this::loop);
+    }
+
+    private void pace() {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long due = System.nanoTime();
+        while (due < end) {
+            sleepUntil(due);
+            inFlight.acquireUninterruptibly();
+            issue(due, null);
+            due += interval;
+        }
+    }
+
+    private void issue(long due, Runnable then) {
+        Random random = ThreadLocalRandom.current();
+        Workload.Operation operation = workload.next(random);
+        List<Object> parameters = workload.parameters(operation, random);
+        running.incrementAndGet();
+        Manager manager = managers.get(Math.floorMod(nextManager.getAndIncrement(), managers.size()));
+        manager.executeAsync(timeout, workload.statement(operation), parameters).whenComplete((result, err) -> {
+            long finished = System.nanoTime();
+            running.decrementAndGet();
+            record(operation, due, finished, result, err);
+            // the next one runs on the driver threads so transactions that complete right away do not recurse
+            if (then != null) executor.execute(then);
+            inFlight.release();
+        });
+    }
+
+    private void record(Workload.Operation operation, long due, long finished, TransactionResult result, Throwable err) {
+        Stats stats = operations.get(operation);
+        boolean measured = due >= measureFrom && due < end;
+        for (Stats s : new Stats[]{stats, total}) {
+            if (measured) s.latency.recordNanos(finished - due);
+            s.all.increment();
+            if (err != null || result.getOutcome() != TransactionResult.Outcome.COMMITTED) {
+                s.allAborted.increment();
+                if (measured && err != null) s.failed.increment();
+                if (measured && result != null && result.getOutcome() == TransactionResult.Outcome.ABORTED) s.aborted.increment();
+                if (measured && result != null && result.getOutcome() == TransactionResult.Outcome.IN_DOUBT) s.inDoubt.increment();
+            }
+        }
+    }
+
+    private void report(PrintStream out) {
+        double seconds = duration / (double) TimeUnit.SECONDS.toNanos(1);
+        out.println();
+        out.println(String.format(Locale.ROOT, "%-9s %10s %10s %9s %9s %9s %9s %8s %8s %8s", "operation", "count", "tx/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "aborted", "in doubt", "failed"));
+        for (Map.Entry<Workload.Operation, Stats> entry : operations.entrySet()) {
+            if (entry.getValue().latency.getCount() > 0) row(out, entry.getKey().name().toLowerCase(Locale.ROOT), entry.getValue(), seconds);
+        }
+        row(out, "total", total, seconds);
+    }
+
+    private static void row(PrintStream out, String name, Stats stats, double seconds) {
+        Histogram latency = stats.latency;
+        long count = latency.getCount();
+        out.println(String.format(Locale.ROOT, "%-9s %10d %10.1f %9.3f %9.3f %9.3f %9.3f %7.2f%% %7.2f%% %7.2f%%", name, count, count / seconds,
+                latency.getPercentile(50) / 1000.0, latency.getPercentile(99) / 1000.0, latency.getPercentile(99.9) / 1000.0, latency.getMax() / 1000.0,
+                percent(stats.aborted.get(), count), percent(stats.inDoubt.get(), count), percent(stats.failed.get(), count)));
+    }
+
+    private static double percent(long part, long count) {
+        return count == 0 ? 0 : 100.0 * part / count;
+    }
+
+    private static void sleepUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) LockSupport.parkNanos(remaining);
+    }
+
+    private static class Stats {
+        private final Histogram latency = new Histogram();
+        private final Counter aborted = new Counter();
+        private final Counter inDoubt = new Counter();
+        private final Counter failed = new Counter();
+        private final Counter all = new Counter();
+        private final Counter allAborted = new Counter();
+
+        private long count() {
+            return all.get();
+        }
+
+        private long aborted() {
+            return allAborted.get();
+        }
+    }
+
+}
@@ -0,0 +1,207 @@
+package at.renehollander.transactionmanager.load;
+
+import at.renehollander.transactionmanager.Transport;
+import at.renehollander.transactionmanager.manager.AdmissionController;
+import at.renehollander.transactionmanager.manager.Manager;
+import at.renehollander.transactionmanager.manager.PartitionMap;
+import at.renehollander.transactionmanager.manager.Session;
+import at.renehollander.transactionmanager.manager.TransactionResult;
+import at.renehollander.transactionmanager.station.DatabaseConnection;
+import at.renehollander.transactionmanager.station.ExecutionEngine;
+import at.renehollander.transactionmanager.station.Station;
+import at.renehollander.transactionmanager.station.StorageProfile;
+import ch.qos.logback.classic.Level;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class LoadMain {
+
+    private static final Map<String, String> OPTIONS = new LinkedHashMap<>();
+
+    static {
+        OPTIONS.put("port", "4000");
+        OPTIONS.put("coordinators", "1");
+        OPTIONS.put("transport", "socketio");
+        OPTIONS.put("stations", "3");
+        OPTIONS.put("wait", "0");
+        OPTIONS.put("db", "load-db");
+        OPTIONS.put("partitions", "-");
+        OPTIONS.put("storage", "durable");
+        OPTIONS.put("mix", "insert=10,update=40,read=50");
+        OPTIONS.put("keys", "10000");
+        OPTIONS.put("distribution", "uniform");
+        OPTIONS.put("theta", "0.99");
+        OPTIONS.put("hot-keys", "0.2");
+        OPTIONS.put("hot-operations", "0.8");
+        OPTIONS.put("concurrency", "64");
+        OPTIONS.put("rate", "0");
+        OPTIONS.put("warmup", "10");
+        OPTIONS.put("duration", "60");
+        OPTIONS.put("timeout", "30");
+        OPTIONS.put("admission", "-");
+        OPTIONS.put("adaptive", "false");
+        OPTIONS.put("group-commit", "0");
+        OPTIONS.put("interval", "5");
+        OPTIONS.put("verbose", "false");
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException, ExecutionException {
+        Map<String, String> options = parse(args, OPTIONS);
+        if (options == null) {
+            usage();
+            System.exit(1);
+        }
+        if (!Boolean.parseBoolean(options.get("verbose"))) {
+            ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        }
+
+        int port = Integer.parseInt(options.get("port"));
+        int timeout = Integer.parseInt(options.get("timeout"));
+        int concurrency = Integer.parseInt(options.get("concurrency"));
+        long keys = Long.parseLong(options.get("keys"));
+        Transport transport = Transport.parse(options.get("transport"));
+
+        // coordinators listen on consecutive ports, every station connects to each of them
+        List<Manager> managers = new ArrayList<>();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        int coordinators = Integer.parseInt(options.get("coordinators"));
+        if (coordinators < 1) throw new IllegalArgumentException("--coordinators takes at least 1");
+        for (int i = 0; i < coordinators; i++) {
+            Manager manager = new Manager(port + i, transport, i);
+            manager.getLockManager().key(Workload.TABLE, "id");
+            if (!options.get("partitions").equals("-")) manager.setPartitionMap(PartitionMap.load(new File(options.get("partitions"))));
+            if (!options.get("admission").equals("-")) {
+                String[] limits = options.get("admission").split(",");
+                if (limits.length != 3) throw new IllegalArgumentException("--admission takes limit,station limit,queue limit");
+                AdmissionController admission = new AdmissionController(Integer.parseInt(limits[0].trim()), Integer.parseInt(limits[1].trim()), Integer.parseInt(limits[2].trim()));
+                admission.setAdaptive(Boolean.parseBoolean(options.get("adaptive")));
+                manager.setAdmissionController(admission);
+            }
+            manager.setGroupCommitWindow(Integer.parseInt(options.get("group-commit")));
+            managers.add(manager);
+            addresses.add(InetSocketAddress.createUnresolved("localhost", port + i));
+        }
+        Manager manager = managers.get(0);
+
+        List<Station> stations = new ArrayList<>();
+        StorageProfile profile = StorageProfile.parse(options.get("storage"));
+        int local = Integer.parseInt(options.get("stations"));
+        if (local > 0) {
+            File dbFolder = new File(options.get("db"));
+            if (dbFolder.exists()) FileUtils.deleteDirectory(dbFolder);
+            dbFolder.mkdirs();
+            for (int i = 1; i <= local; i++) {
+                stations.add(new Station("station" + i, dbFolder, addresses, DatabaseConnection.DEFAULT_POOL_SIZE,
+                        ExecutionEngine.bounded(DatabaseConnection.DEFAULT_POOL_SIZE, ExecutionEngine.DEFAULT_QUEUE_LIMIT), transport, null, profile));
+            }
+        }
+        int expected = local + Integer.parseInt(options.get("wait"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout);
+        for (Manager coordinator : managers) {
+            while (coordinator.getStations().size() < expected) {
+                if (System.nanoTime() > deadline) {
+                    System.err.println("Only " + coordinator.getStations().size() + " of " + expected + " stations connected to coordinator "
+                            + coordinator.getCoordinator() + " within " + timeout + "s");
+                    System.exit(1);
+                }
+                Thread.sleep(100);
+            }
+        }
+        System.out.println("Stations " + manager.getStations() + " connected" + (coordinators > 1 ? " to " + coordinators + " coordinators" : ""));
+
+        KeyDistribution distribution = distribution(options, keys);
+        Workload workload = Workload.parse(options.get("mix"), distribution, keys);
+        TransactionResult schema = manager.executeAsync(timeout, workload.schema()).toCompletableFuture().get();
+        if (!schema.isCommitted()) {
+            System.err.println("Could not create table " + Workload.TABLE + ": " + schema.getErrors());
+            System.exit(1);
+        }
+        preload(manager, keys, concurrency, timeout);
+
+        LoadDriver driver = new LoadDriver(managers, workload, timeout, concurrency, Double.parseDouble(options.get("rate")),
+                Long.parseLong(options.get("warmup")), Long.parseLong(options.get("duration")), TimeUnit.SECONDS);
+        driver.run(System.out, Integer.parseInt(options.get("interval")));
+
+        stations.forEach(Station::close);
+        managers.forEach(Manager::close);
+        System.exit(0);
+    }
+
+    private static KeyDistribution distribution(Map<String, String> options, long keys) {
+        switch (options.get("distribution")) {
+            case "uniform":
+                return KeyDistribution.uniform(keys);
+            case "zipfian":
+                return KeyDistribution.zipfian(keys, Double.parseDouble(options.get("theta")));
+            case "hotspot":
+                return KeyDistribution.hotspot(keys, Double.parseDouble(options.get("hot-keys")), Double.parseDouble(options.get("hot-operations")));
+            default:
+                throw new IllegalArgumentException("Unknown key distribution " + options.get("distribution"));
+        }
+    }
+
+    // every key gets a row up front so updates and reads find one, in batches of single row statements so each row is routed on its own
+    private static void preload(Manager manager, long keys, int concurrency, int timeout) throws InterruptedException, ExecutionException {
+        long start = System.nanoTime();
+        Session session = manager.session(concurrency);
+        List<CompletableFuture<TransactionResult>> batches = new ArrayList<>();
+        for (long from = 0; from < keys; from += 100) {
+            List<String> statements = new ArrayList<>();
+            for (long key = from; key < Math.min(keys, from + 100); key++) statements.add(Workload.preload(key));
+            batches.add(session.executeBatch(timeout, statements).toCompletableFuture());
+        }
+        for (CompletableFuture<TransactionResult> batch : batches) {
+            TransactionResult result = batch.get();
+            if (!result.isCommitted()) throw new IllegalStateException("Preloading failed: " + result.getErrors());
+        }
+        System.out.println("Preloaded " + keys + " keys in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+    }
+
+    static Map<String, String> parse(String[] args, Map<String, String> defaults) {
+        Map<String, String> options = new LinkedHashMap<>(defaults);
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || !defaults.containsKey(args[i].substring(2))) {
+                System.err.println("Unknown option " + args[i]);
+                return null;
+            }
+            if (i + 1 >= args.length) {
+                System.err.println("Missing value for " + args[i]);
+                return null;
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java -jar transactionmanager-1.0.0.jar load [--option value]...");
+        System.err.println("  --stations N         stations to start in this process (" + OPTIONS.get("stations") + ")");
+        System.err.println("  --wait N             further stations to wait for, started with StationMain (" + OPTIONS.get("wait") + ")");
+        System.err.println("  --coordinators N     managers sharing the stations on consecutive ports, taking turns (" + OPTIONS.get("coordinators") + ")");
+        System.err.println("  --port, --transport, --db, --partitions   like ManagerMain and StationMain");
+        System.err.println("  --storage P          durable, balanced or throughput sqlite settings of local stations (" + OPTIONS.get("storage") + ")");
+        System.err.println("  --mix                share of each operation (" + OPTIONS.get("mix") + ")");
+        System.err.println("  --keys N             preloaded keys updates and reads pick from (" + OPTIONS.get("keys") + ")");
+        System.err.println("  --distribution D     uniform, zipfian (--theta) or hotspot (--hot-keys, --hot-operations)");
+        System.err.println("  --concurrency N      transactions in flight, closed loop unless --rate is given (" + OPTIONS.get("concurrency") + ")");
+        System.err.println("  --rate N             target transactions per second, 0 for closed loop (" + OPTIONS.get("rate") + ")");
+        System.err.println("  --admission L,S,Q    admit at most L transactions, S per station, queue Q more and reject the rest (" + OPTIONS.get("admission") + ")");
+        System.err.println("  --adaptive true      lower the admission limit while latency rises (" + OPTIONS.get("adaptive") + ")");
+        System.err.println("  --group-commit MS    sync the commits of this many milliseconds together, 0 syncs each one (" + OPTIONS.get("group-commit") + ")");
+        System.err.println("  --warmup S, --duration S, --timeout S, --interval S");
+        System.err.println("  --verbose true       keep the info log");
+    }
+
+}
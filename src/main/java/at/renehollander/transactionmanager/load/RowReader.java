@@ -0,0 +1,173 @@
+package at.renehollander.transactionmanager.load;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// reads a file one row at a time, so it never holds more than the rows asked for in memory.
+// csv follows rfc 4180, quoted values may contain the delimiter, doubled quotes and line breaks. json has one array of
+// values or one object keyed by column per line
+public class RowReader implements Closeable {
+
+    public enum Format {
+        CSV, JSON
+    }
+
+    // only integers written the way sqlite would print them are loaded as numbers, so "007" stays text
+    private static final Pattern INTEGER = Pattern.compile("-?(?:0|[1-9]\\d{0,17})");
+
+    private final BufferedReader reader;
+    private final Format format;
+    private final char delimiter;
+    private List<String> columns;
+    private long line;
+
+    public RowReader(File file, Format format, char delimiter, boolean header, List<String> columns) throws IOException {
+        this.reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+        this.format = format;
+        this.delimiter = delimiter;
+        this.columns = columns;
+        if (header) {
+            if (format != Format.CSV) throw new IllegalArgumentException("only csv files have a header");
+            List<Object> names = next();
+            if (names == null) throw new IOException("the file is empty, there is no header");
+            List<String> read = new ArrayList<>(names.size());
+            for (Object name : names) read.add(name == null ? "" : name.toString().trim());
+            if (this.columns == null) this.columns = read;
+        }
+        if (this.columns == null) throw new IllegalArgumentException("the columns have to be given for a file without header");
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    // the line the next row starts on
+    public long getLine() {
+        return line + 1;
+    }
+
+    // up to max rows, fewer only at the end of the file
+    public List<List<Object>> read(int max) throws IOException {
+        List<List<Object>> rows = new ArrayList<>(Math.min(max, 1024));
+        while (rows.size() < max) {
+            List<Object> row = next();
+            if (row == null) break;
+            if (row.size() != columns.size()) {
+                throw new IOException("row ending on line " + line + " has " + row.size() + " values for " + columns.size() + " columns");
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private List<Object> next() throws IOException {
+        return format == Format.CSV ? nextCsv() : nextJson();
+    }
+
+    private List<Object> nextCsv() throws IOException {
+        String text = reader.readLine();
+        // blank lines separate nothing, they are skipped
+        while (text != null && text.isEmpty()) {
+            line++;
+            text = reader.readLine();
+        }
+        if (text == null) return null;
+        line++;
+        List<Object> row = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        int i = 0;
+        while (true) {
+            if (i == text.length()) {
+                if (!quoted) break;
+                // a quoted value goes on on the next line
+                String more = reader.readLine();
+                if (more == null) throw new IOException("quoted value starting before line " + line + " is never closed");
+                line++;
+                value.append('\n');
+                text = more;
+                i = 0;
+                continue;
+            }
+            char c = text.charAt(i++);
+            if (quoted) {
+                if (c != '"') {
+                    value.append(c);
+                } else if (i < text.length() && text.charAt(i) == '"') {
+                    value.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"' && value.length() == 0 && !wasQuoted) {
+                quoted = true;
+                wasQuoted = true;
+            } else if (c == delimiter) {
+                row.add(value(value.toString(), wasQuoted));
+                value.setLength(0);
+                wasQuoted = false;
+            } else {
+                value.append(c);
+            }
+        }
+        row.add(value(value.toString(), wasQuoted));
+        return row;
+    }
+
+    // empty unquoted values are null, quoted ones are always text
+    private static Object value(String value, boolean quoted) {
+        if (quoted) return value;
+        if (value.isEmpty()) return null;
+        if (INTEGER.matcher(value).matches()) return Long.parseLong(value);
+        return value;
+    }
+
+    private List<Object> nextJson() throws IOException {
+        String text = reader.readLine();
+        while (text != null && text.trim().isEmpty()) {
+            line++;
+            text = reader.readLine();
+        }
+        if (text == null) return null;
+        line++;
+        try {
+            text = text.trim();
+            List<Object> row = new ArrayList<>();
+            if (text.startsWith("[")) {
+                JSONArray array = new JSONArray(text);
+                for (int i = 0; i < array.length(); i++) row.add(json(array.get(i)));
+            } else {
+                JSONObject object = new JSONObject(text);
+                for (String column : columns) row.add(object.has(column) ? json(object.get(column)) : null);
+            }
+            return row;
+        } catch (JSONException e) {
+            throw new IOException("line " + line + " is not a json array or object: " + e.getMessage());
+        }
+    }
+
+    private static Object json(Object value) {
+        if (value == JSONObject.NULL) return null;
+        if (value instanceof Integer) return ((Integer) value).longValue();
+        if (value instanceof JSONArray || value instanceof JSONObject) return value.toString();
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+}
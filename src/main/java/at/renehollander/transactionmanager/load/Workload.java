@@ -0,0 +1,94 @@
+package at.renehollander.transactionmanager.load;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+// what the load driver sends: single statement transactions against one table keyed by an integer id.
+// inserts add new keys after the preloaded ones, updates and reads pick existing keys from the distribution
+public class Workload {
+
+    public enum Operation {
+        INSERT, UPDATE, READ
+    }
+
+    public static final String TABLE = "load";
+
+    private final int insert;
+    private final int update;
+    private final int read;
+    private final KeyDistribution keys;
+    private final AtomicLong inserted;
+
+    public Workload(int insert, int update, int read, KeyDistribution keys, long preloaded) {
+        if (insert < 0 || update < 0 || read < 0 || insert + update + read == 0) {
+            throw new IllegalArgumentException("the operation mix needs at least one positive share");
+        }
+        this.insert = insert;
+        this.update = update;
+        this.read = read;
+        this.keys = keys;
+        this.inserted = new AtomicLong(preloaded);
+    }
+
+    // "insert=20,update=30,read=50", missing operations get no share
+    public static Workload parse(String mix, KeyDistribution keys, long preloaded) {
+        int[] shares = new int[3];
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2) throw new IllegalArgumentException("Invalid operation mix " + mix);
+            shares[Operation.valueOf(pair[0].trim().toUpperCase(Locale.ROOT)).ordinal()] = Integer.parseInt(pair[1].trim());
+        }
+        return new Workload(shares[0], shares[1], shares[2], keys, preloaded);
+    }
+
+    public String schema() {
+        return "CREATE TABLE IF NOT EXISTS " + TABLE + "(id INTEGER PRIMARY KEY, value STRING)";
+    }
+
+    public Operation next(Random random) {
+        int pick = random.nextInt(insert + update + read);
+        if (pick < insert) return Operation.INSERT;
+        if (pick < insert + update) return Operation.UPDATE;
+        return Operation.READ;
+    }
+
+    public String statement(Operation operation) {
+        switch (operation) {
+            case INSERT:
+                return "INSERT INTO " + TABLE + " VALUES(?, ?)";
+            case UPDATE:
+                return "UPDATE " + TABLE + " SET value = ? WHERE id = ?";
+            default:
+                return "SELECT value FROM " + TABLE + " WHERE id = ?";
+        }
+    }
+
+    public List<Object> parameters(Operation operation, Random random) {
+        switch (operation) {
+            case INSERT:
+                return Arrays.asList(inserted.getAndIncrement(), value(random));
+            case UPDATE:
+                return Arrays.asList(value(random), keys.next(random));
+            default:
+                return Collections.singletonList(keys.next(random));
+        }
+    }
+
+    public static String preload(long key) {
+        return "INSERT OR REPLACE INTO " + TABLE + " VALUES(" + key + ", 'initial')";
+    }
+
+    private static String value(Random random) {
+        return Long.toHexString(random.nextLong());
+    }
+
+    @Override
+    public String toString() {
+        return "insert=" + insert + ",update=" + update + ",read=" + read + " on " + keys;
+    }
+
+}
@@ -0,0 +1,225 @@
+package at.renehollander.transactionmanager.manager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// bounds the transactions in flight, overall and per station, the ones above the limits wait in priority order and are
+// rejected right away once the queue is full, so an overload queues on the coordinator instead of timing out on the stations
+public class AdmissionController {
+
+    public enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    private static final String FULL = "rejected, too many transactions waiting for admission";
+
+    private final int maxLimit;
+    private final int stationLimit;
+    private final int queueLimit;
+
+    private final TreeSet<Ticket> queue = new TreeSet<>((a, b) -> a.priority != b.priority ? a.priority.compareTo(b.priority) : Long.compare(a.sequence, b.sequence));
+    private final Map<String, Integer> stations = new HashMap<>();
+    private long sequence;
+    private int inFlight;
+    private long admitted;
+    private long rejected;
+
+    // adaptive limit, follows the gradient between the long-term and the recent latency
+    private boolean adaptive;
+    private double limit;
+    private double baseline;
+    private double recent;
+    private long samples;
+    private double tolerance = 1.5;
+
+    public AdmissionController(int limit, int stationLimit, int queueLimit) {
+        if (limit < 1) throw new IllegalArgumentException("at least one transaction has to be allowed in flight");
+        if (stationLimit < 1) throw new IllegalArgumentException("at least one transaction per station has to be allowed in flight");
+        if (queueLimit < 0) throw new IllegalArgumentException("queue limit must not be negative");
+        this.maxLimit = limit;
+        this.stationLimit = stationLimit;
+        this.queueLimit = queueLimit;
+        this.limit = limit;
+    }
+
+    // the limit shrinks while transactions take longer than tolerance times their usual latency and grows back once they
+    // do not, it never exceeds the configured one
+    public synchronized void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+        if (!adaptive) limit = maxLimit;
+    }
+
+    public synchronized boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public synchronized void setTolerance(double tolerance) {
+        if (tolerance < 1) throw new IllegalArgumentException("tolerance must be at least 1");
+        this.tolerance = tolerance;
+    }
+
+    // admitted runs right away if there is room, later when there is or never if the ticket is rejected or cancelled first
+    void enter(Ticket ticket, Runnable admitted, Consumer<String> rejected) {
+        ticket.admitted = admitted;
+        ticket.rejected = rejected;
+        Priority priority = ticket.priority;
+        Ticket displaced = null;
+        boolean started = false;
+        boolean full = false;
+        synchronized (this) {
+            ticket.sequence = sequence++;
+            if (queue.isEmpty() && fits(ticket)) {
+                start(ticket);
+                started = true;
+            } else if (queue.size() < queueLimit) {
+                queue.add(ticket);
+            } else if (queueLimit > 0 && queue.last().priority.compareTo(priority) > 0) {
+                // a full queue makes room for a more important transaction by rejecting the least important one
+                displaced = queue.pollLast();
+                displaced.state = Ticket.State.DONE;
+                this.rejected++;
+                queue.add(ticket);
+            } else {
+                ticket.state = Ticket.State.DONE;
+                this.rejected++;
+                full = true;
+            }
+        }
+        if (displaced != null) displaced.rejected.accept(FULL);
+        if (started) {
+            ticket.admitted.run();
+        } else if (full) {
+            ticket.rejected.accept(FULL);
+        }
+    }
+
+    synchronized boolean isWaiting(Ticket ticket) {
+        return ticket.state == Ticket.State.WAITING;
+    }
+
+    // true if the ticket was still waiting, it is neither admitted nor rejected afterwards
+    synchronized boolean cancel(Ticket ticket) {
+        if (ticket.state != Ticket.State.WAITING) return false;
+        queue.remove(ticket);
+        ticket.state = Ticket.State.DONE;
+        return true;
+    }
+
+    // nanos is how long the transaction took once admitted, it drives the adaptive limit
+    void release(Ticket ticket, long nanos) {
+        List<Ticket> started = new ArrayList<>();
+        synchronized (this) {
+            if (ticket.state != Ticket.State.ADMITTED) return;
+            ticket.state = Ticket.State.DONE;
+            inFlight--;
+            for (String station : ticket.stations) {
+                stations.computeIfPresent(station, (s, count) -> count > 1 ? count - 1 : null);
+            }
+            if (adaptive) sample(nanos);
+            // waiting transactions that only need stations with room go ahead of ones that do not, in priority order
+            for (Iterator<Ticket> iterator = queue.iterator(); iterator.hasNext() && inFlight < currentLimit(); ) {
+                Ticket next = iterator.next();
+                if (!fits(next)) continue;
+                iterator.remove();
+                start(next);
+                started.add(next);
+            }
+        }
+        started.forEach((next) -> next.admitted.run());
+    }
+
+    private boolean fits(Ticket ticket) {
+        if (inFlight >= currentLimit()) return false;
+        for (String station : ticket.stations) {
+            if (stations.getOrDefault(station, 0) >= stationLimit) return false;
+        }
+        return true;
+    }
+
+    private void start(Ticket ticket) {
+        ticket.state = Ticket.State.ADMITTED;
+        inFlight++;
+        admitted++;
+        for (String station : ticket.stations) {
+            stations.merge(station, 1, Integer::sum);
+        }
+    }
+
+    private int currentLimit() {
+        return Math.max(1, (int) limit);
+    }
+
+    private void sample(long nanos) {
+        if (samples++ == 0) {
+            baseline = nanos;
+            recent = nanos;
+            return;
+        }
+        recent += (nanos - recent) / 10;
+        baseline += (nanos - baseline) / 500;
+        // a baseline that drifted above recent latencies is pulled down right away, it only rises slowly
+        if (recent < baseline) baseline = recent;
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * baseline / recent));
+        double next = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(1, Math.min(maxLimit, limit * 0.8 + next * 0.2));
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    public synchronized int getLimit() {
+        return currentLimit();
+    }
+
+    public synchronized long getAdmitted() {
+        return admitted;
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    // recent latency of admitted transactions in milliseconds, only measured while adaptive
+    public synchronized long getLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis((long) recent);
+    }
+
+    public int getStationLimit() {
+        return stationLimit;
+    }
+
+    public int getQueueLimit() {
+        return queueLimit;
+    }
+
+    static class Ticket {
+        enum State {
+            WAITING, ADMITTED, DONE
+        }
+
+        private final List<String> stations;
+        private final Priority priority;
+        private Runnable admitted;
+        private Consumer<String> rejected;
+        private long sequence;
+        private State state = State.WAITING;
+
+        Ticket(Collection<String> stations, Priority priority) {
+            this.stations = new ArrayList<>(stations);
+            this.priority = priority;
+        }
+    }
+
+}
@@ -0,0 +1,193 @@
+package at.renehollander.transactionmanager.manager;
+
+import at.renehollander.transactionmanager.wire.Frame;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.AttributeKey;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+class BinaryServer {
+    private static Logger LOG = LoggerFactory.getLogger(BinaryServer.class);
+
+    private static final AttributeKey<BinaryParticipant> PARTICIPANT = AttributeKey.valueOf("participant");
+
+    interface Handler {
+        void received(Participant participant, String event, Map<String, Object> data, Consumer<Map<String, Object>> reply);
+    }
+
+    private final int port;
+    private final Timer timer;
+    private final Predicate<Participant> connected;
+    private final Consumer<Participant> disconnected;
+    private final Handler handler;
+
+    private EventLoopGroup boss;
+    private EventLoopGroup workers;
+
+    BinaryServer(int port, Timer timer, Predicate<Participant> connected, Consumer<Participant> disconnected, Handler handler) {
+        this.port = port;
+        this.timer = timer;
+        this.connected = connected;
+        this.disconnected = disconnected;
+        this.handler = handler;
+    }
+
+    void start() {
+        boss = new NioEventLoopGroup(1);
+        workers = new NioEventLoopGroup();
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(boss, workers)
+                .channel(NioServerSocketChannel.class)
+                .option(ChannelOption.SO_REUSEADDR, true)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        Frame.install(channel.pipeline());
+                        channel.pipeline().addLast(new FrameHandler());
+                    }
+                });
+        bootstrap.bind(port).syncUninterruptibly();
+        LOG.info("Binary transport listening on port " + port);
+    }
+
+    void stop() {
+        boss.shutdownGracefully();
+        workers.shutdownGracefully();
+    }
+
+    private class FrameHandler extends SimpleChannelInboundHandler<ByteBuf> {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf buf) {
+            Frame frame = Frame.decode(buf, false);
+            BinaryParticipant participant = ctx.channel().attr(PARTICIPANT).get();
+            Map<String, Object> data = frame.getPayload() instanceof Map ? (Map<String, Object>) frame.getPayload() : new HashMap<>();
+            if (participant == null) {
+                if (frame.getType() != Frame.EVENT || !Frame.HELLO.equals(frame.getEvent()) || !(data.get("name") instanceof String)) {
+                    LOG.error("Closing binary connection from " + ctx.channel().remoteAddress() + " that did not introduce itself");
+                    ctx.close();
+                    return;
+                }
+                participant = new BinaryParticipant((String) data.get("name"), ctx.channel(), timer);
+                if (!connected.test(participant)) {
+                    ctx.close();
+                    return;
+                }
+                ctx.channel().attr(PARTICIPANT).set(participant);
+            } else if (frame.getType() == Frame.REPLY) {
+                participant.replied(frame.getId(), data);
+            } else {
+                Consumer<Map<String, Object>> reply = null;
+                if (frame.getType() == Frame.REQUEST) {
+                    Channel channel = ctx.channel();
+                    reply = (response) -> channel.writeAndFlush(new Frame(Frame.REPLY, frame.getId(), null, response).encode(channel.alloc()));
+                }
+                handler.received(participant, frame.getEvent(), data, reply);
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            BinaryParticipant participant = ctx.channel().attr(PARTICIPANT).get();
+            if (participant != null) {
+                participant.closed();
+                disconnected.accept(participant);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            LOG.error("An exception occured on binary connection " + ctx.channel().remoteAddress(), cause);
+            ctx.close();
+        }
+    }
+
+    private static class BinaryParticipant implements Participant {
+        private final String name;
+        private final Channel channel;
+        private final Timer timer;
+        private final AtomicLong requestIds = new AtomicLong();
+        private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+
+        private BinaryParticipant(String name, Channel channel, Timer timer) {
+            this.name = name;
+            this.channel = channel;
+            this.timer = timer;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void send(String event, Map<String, Object> data, int timeout, Consumer<Map<String, Object>> response) {
+            long id = requestIds.incrementAndGet();
+            // the timeout is set before the request can be found, a reply or a closed connection cancels it
+            Pending request = new Pending(response, timer.newTimeout((t) -> {
+                Pending expired = pending.remove(id);
+                if (expired != null) expired.response.accept(null);
+            }, timeout, TimeUnit.SECONDS));
+            pending.put(id, request);
+            // a timeout that ran out before the request was put found nothing to answer
+            if (request.timeout.isExpired() && pending.remove(id, request)) response.accept(null);
+            channel.writeAndFlush(new Frame(Frame.REQUEST, id, event, data).encode(channel.alloc()));
+        }
+
+        private void replied(long id, Map<String, Object> data) {
+            Pending request = pending.remove(id);
+            if (request == null) return;
+            request.timeout.cancel();
+            request.response.accept(data);
+        }
+
+        // requests still waiting on a closed connection can not be answered anymore, they are treated like timeouts right away
+        private void closed() {
+            for (Long id : pending.keySet()) {
+                Pending request = pending.remove(id);
+                if (request != null) {
+                    request.timeout.cancel();
+                    request.response.accept(null);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static class Pending {
+        private final Consumer<Map<String, Object>> response;
+        private final Timeout timeout;
+
+        private Pending(Consumer<Map<String, Object>> response, Timeout timeout) {
+            this.response = response;
+            this.timeout = timeout;
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+package at.renehollander.transactionmanager.manager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// a station that is not taking part in transactions yet, either because it did not join or because it copies a peer's database.
+// transactions are still routed to it and hold its station lock, but only what they commit after the copy was taken is kept,
+// in commit order, to be replayed once the copy is restored
+class CatchUp {
+
+    enum Phase {
+        JOINING, COPYING, REPLAYING
+    }
+
+    final String station;
+    volatile Participant participant;
+    volatile Phase phase = Phase.JOINING;
+    volatile long snapshot;
+    volatile String donor;
+
+    private final int limit;
+    private List<Replay> log = new ArrayList<>();
+    private boolean recording;
+    private boolean overflowed;
+
+    CatchUp(Participant participant, int limit) {
+        this.station = participant.getName();
+        this.participant = participant;
+        this.limit = limit;
+    }
+
+    // called while the station lock is held, so nothing commits between the copy being taken and the log starting
+    synchronized void startRecording() {
+        recording = true;
+    }
+
+    synchronized void record(Replay replay) {
+        if (!recording || overflowed) return;
+        if (log.size() >= limit) {
+            overflowed = true;
+            log = new ArrayList<>();
+            return;
+        }
+        log.add(replay);
+    }
+
+    synchronized List<Replay> drain() {
+        List<Replay> drained = log;
+        log = new ArrayList<>();
+        return drained;
+    }
+
+    synchronized boolean isOverflowed() {
+        return overflowed;
+    }
+
+    static class Replay {
+        final String event;
+        final Map<String, Object> data;
+
+        Replay(String event, Map<String, Object> data) {
+            this.event = event;
+            this.data = data;
+        }
+    }
+
+}
@@ -0,0 +1,318 @@
+package at.renehollander.transactionmanager.manager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class DecisionLog implements Closeable {
+    private static Logger LOG = LoggerFactory.getLogger(DecisionLog.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    public static final long ID_BLOCK = 1 << 16;
+
+    private static final int MAGIC = 0x544d444c;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 9;
+
+    private static final byte COMMIT = 1;
+    private static final byte END = 2;
+    private static final byte RESERVE = 3;
+    // follows the commit it belongs to, one for every station that has to confirm it
+    private static final byte PARTICIPANT = 4;
+
+    private final File directory;
+    private final int segmentSize;
+
+    private final Map<Long, Set<Long>> open;
+    private final Map<Long, Set<Long>> recovered;
+    private volatile long reserved;
+    private final long recoveredReserved;
+
+    private long segment;
+    private RandomAccessFile file;
+    private MappedByteBuffer buffer;
+
+    private final List<Runnable> waiting;
+    private final Thread flusher;
+    private volatile boolean closed;
+    // set once the flusher took its last batch, guarded by waiting
+    private boolean stopped;
+
+    public DecisionLog(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public DecisionLog(File directory, int segmentSize) throws IOException {
+        if (segmentSize < HEADER_SIZE + RECORD_SIZE * 16) throw new IllegalArgumentException("segment size is too small");
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.open = new LinkedHashMap<>();
+        this.waiting = new ArrayList<>();
+        if (!directory.exists() && !directory.mkdirs()) throw new IOException("Could not create " + directory);
+
+        File[] segments = segments();
+        for (File existing : segments) {
+            replay(existing);
+            segment = Math.max(segment, segmentNumber(existing));
+        }
+        this.recovered = Collections.unmodifiableMap(new LinkedHashMap<>(open));
+        this.recoveredReserved = reserved;
+        if (segments.length > 0) {
+            LOG.info("Recovered decision log with " + recovered.size() + " in-doubt commits, ids reserved up to " + reserved);
+        }
+        roll();
+        for (File existing : segments) {
+            if (!existing.delete()) LOG.warn("Could not delete old decision log segment " + existing);
+        }
+
+        flusher = new Thread(this::flushLoop, "decision-log");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // participants are the stations the commit goes to, it stays open until it is ended once they all confirmed it
+    public void commit(long id, Collection<String> participants, Runnable durable) {
+        synchronized (this) {
+            checkOpen();
+            Set<Long> stations = new LinkedHashSet<>();
+            for (String participant : participants) stations.add(station(participant));
+            open.put(id, stations);
+            // a new segment carries the whole commit, so its records never end up split over two
+            if (buffer.remaining() < RECORD_SIZE * (1 + stations.size())) {
+                roll();
+            } else {
+                append(COMMIT, id);
+                for (long station : stations) append(PARTICIPANT, station);
+            }
+        }
+        await(durable);
+    }
+
+    public synchronized void end(long id) {
+        checkOpen();
+        if (open.remove(id) != null) append(END, id);
+    }
+
+    // how a station is recorded as participant
+    public static long station(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public void reserve(long id) {
+        if (id <= reserved) return;
+        synchronized (this) {
+            checkOpen();
+            if (id <= reserved) return;
+            long upTo = (id / ID_BLOCK + 1) * ID_BLOCK;
+            append(RESERVE, upTo);
+            buffer.force();
+            reserved = upTo;
+        }
+    }
+
+    // the commits open when the log was loaded, each with the stations that had not confirmed it
+    public Map<Long, Set<Long>> getRecovered() {
+        return recovered;
+    }
+
+    public long getRecoveredReserved() {
+        return recoveredReserved;
+    }
+
+    public synchronized int getInDoubt() {
+        return open.size();
+    }
+
+    private void await(Runnable durable) {
+        synchronized (waiting) {
+            if (!stopped) {
+                waiting.add(durable);
+                waiting.notify();
+                return;
+            }
+        }
+        // the flusher is gone, the commit was appended before close forced the log or is forced here
+        synchronized (this) {
+            if (!closed) buffer.force();
+        }
+        durable.run();
+    }
+
+    private void flushLoop() {
+        List<Runnable> batch = new ArrayList<>();
+        boolean last = false;
+        while (!last) {
+            synchronized (waiting) {
+                boolean interrupted = false;
+                while (waiting.isEmpty() && !closed && !interrupted) {
+                    try {
+                        waiting.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                // the last batch takes everything still waiting, later commits run their callbacks themselves
+                last = closed || interrupted;
+                if (last) stopped = true;
+                batch.addAll(waiting);
+                waiting.clear();
+            }
+            if (batch.isEmpty()) continue;
+            MappedByteBuffer current;
+            synchronized (this) {
+                current = buffer;
+            }
+            current.force();
+            for (Runnable runnable : batch) {
+                try {
+                    runnable.run();
+                } catch (Exception e) {
+                    LOG.error("An exception occured after flushing the decision log", e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void append(byte type, long id) {
+        if (buffer.remaining() < RECORD_SIZE) roll();
+        buffer.put(type);
+        buffer.putLong(id);
+    }
+
+    private void roll() {
+        try {
+            MappedByteBuffer previous = buffer;
+            RandomAccessFile previousFile = file;
+            File previousSegment = previous == null ? null : segmentFile(segment);
+
+            // grown beyond the usual size if the open decisions would not fit, with room for one more record
+            long records = reserved > 0 ? 1 : 0;
+            for (Set<Long> stations : open.values()) records += 1 + stations.size();
+            long size = Math.max(segmentSize, HEADER_SIZE + RECORD_SIZE * (records + 1));
+            if (size > Integer.MAX_VALUE) throw new IllegalStateException("Open decisions do not fit into one decision log segment");
+
+            segment++;
+            file = new RandomAccessFile(segmentFile(segment), "rw");
+            file.setLength(size);
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC);
+            buffer.putInt(0);
+            if (reserved > 0) {
+                buffer.put(RESERVE);
+                buffer.putLong(reserved);
+            }
+            for (Map.Entry<Long, Set<Long>> decision : open.entrySet()) {
+                buffer.put(COMMIT);
+                buffer.putLong(decision.getKey());
+                for (long station : decision.getValue()) {
+                    buffer.put(PARTICIPANT);
+                    buffer.putLong(station);
+                }
+            }
+            buffer.force();
+            LOG.info("Started decision log segment " + segment + " carrying " + open.size() + " open decisions");
+
+            if (previous != null) {
+                previousFile.close();
+                if (!previousSegment.delete()) LOG.warn("Could not delete old decision log segment " + previousSegment);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not roll decision log", e);
+        }
+    }
+
+    private void replay(File segment) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "r")) {
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                LOG.warn("Ignoring decision log segment " + segment + " with invalid header");
+                return;
+            }
+            buffer.getInt();
+            Set<Long> last = null;
+            try {
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    byte type = buffer.get();
+                    long id = buffer.getLong();
+                    if (type == COMMIT) {
+                        last = new LinkedHashSet<>();
+                        open.put(id, last);
+                    } else if (type == PARTICIPANT) {
+                        if (last != null) last.add(id);
+                    } else if (type == END) {
+                        open.remove(id);
+                    } else if (type == RESERVE) {
+                        reserved = Math.max(reserved, id);
+                    } else {
+                        break;
+                    }
+                }
+            } catch (BufferUnderflowException e) {
+                LOG.warn("Decision log segment " + segment + " ends with a partial record");
+            }
+        }
+    }
+
+    private File[] segments() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith("decisions-") && name.endsWith(".log"));
+        if (files == null) return new File[0];
+        Arrays.sort(files, (a, b) -> Long.compare(segmentNumber(a), segmentNumber(b)));
+        return files;
+    }
+
+    private File segmentFile(long number) {
+        return new File(directory, String.format("decisions-%08d.log", number));
+    }
+
+    private static long segmentNumber(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring("decisions-".length(), name.length() - ".log".length()));
+    }
+
+    private void checkOpen() {
+        if (closed) throw new IllegalStateException("Decision log is closed");
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            buffer.force();
+        }
+        synchronized (waiting) {
+            waiting.notify();
+        }
+        // the flusher runs the callbacks still waiting before it stops, the file stays open until then
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        file.close();
+    }
+
+}
@@ -0,0 +1,204 @@
+package at.renehollander.transactionmanager.manager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// table and key locks of the transactions the manager runs. every transaction asks for its whole footprint up front and
+// takes it in one global order with first come first served queues, so transactions can wait on each other but never in a cycle.
+// key locks are held until the transaction completed. a write also takes its turn on each of its stations, which it gives
+// back once its votes are in, so writers of disjoint keys only take turns executing on a station they share
+public class LockManager {
+
+    private static Logger LOG = LoggerFactory.getLogger(LockManager.class);
+
+    public enum Mode {
+        IS, IX, S, X;
+
+        private static final boolean[][] COMPATIBLE = {
+                {true, true, true, false},
+                {true, true, false, false},
+                {true, false, true, false},
+                {false, false, false, false}
+        };
+
+        boolean compatible(Mode other) {
+            return COMPATIBLE[ordinal()][other.ordinal()];
+        }
+
+        Mode join(Mode other) {
+            if (this == other) return this;
+            if (this == IS) return other;
+            if (other == IS) return this;
+            return X;
+        }
+    }
+
+    private final Map<String, String> keyColumns = new ConcurrentHashMap<>();
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Long, Request> requests = new ConcurrentHashMap<>();
+
+    // rows of the table are locked by the values of this column where statements name them, otherwise the whole table is
+    public LockManager key(String table, String column) {
+        keyColumns.put(table.toLowerCase(Locale.ROOT), column);
+        return this;
+    }
+
+    public String getKeyColumn(String table) {
+        return table == null ? null : keyColumns.get(table.toLowerCase(Locale.ROOT));
+    }
+
+    // a single select sees what committed on its stations, which the write-ahead log gives it without waiting for any writer,
+    // so it takes no locks. callers wanting the rows to stay as they read them declare shared locks themselves
+    Locks footprint(List<StatementInfo> statements, PartitionMap map) {
+        Locks locks = new Locks();
+        if (statements.size() == 1 && statements.get(0).isReadOnly()) return locks;
+        for (StatementInfo statement : statements) {
+            String table = statement.getTable();
+            if (table == null) continue;
+            String column = getKeyColumn(table);
+            if (column == null && map != null) column = map.getKeyColumn(table);
+            List<String> keys = column == null ? null : statement.keys(column);
+            boolean write = !statement.isReadOnly();
+            if (keys == null) {
+                locks.lock(table, null, write);
+            } else {
+                for (String key : keys) locks.lock(table, key, write);
+            }
+        }
+        return locks;
+    }
+
+    // granted runs once every lock is held, which may be right away on the calling thread or later on the one releasing the last conflicting lock
+    void acquire(long id, Locks locks, Runnable granted) {
+        Request request = new Request(id, new ArrayList<>(locks.modes.entrySet()), granted);
+        requests.put(id, request);
+        advance(request, false);
+    }
+
+    // gives up every lock the transaction holds or waits for
+    void release(long id) {
+        Request request = requests.remove(id);
+        if (request == null) return;
+        List<Request> woken = new ArrayList<>();
+        synchronized (request) {
+            request.released = true;
+            int last = Math.min(request.next, request.locks.size() - 1);
+            for (int i = 0; i <= last; i++) {
+                unlock(request, request.locks.get(i).getKey(), woken);
+            }
+        }
+        for (Request next : woken) advance(next, true);
+    }
+
+    // gives up the turns on the stations and keeps the rest, only once every lock is held
+    void releaseStations(long id) {
+        Request request = requests.get(id);
+        if (request == null) return;
+        List<Request> woken = new ArrayList<>();
+        synchronized (request) {
+            if (request.released || request.next < request.locks.size()) return;
+            for (Iterator<Map.Entry<String, Mode>> iterator = request.locks.iterator(); iterator.hasNext(); ) {
+                String resource = iterator.next().getKey();
+                if (!Locks.isStation(resource)) continue;
+                iterator.remove();
+                unlock(request, resource, woken);
+            }
+            request.next = request.locks.size();
+        }
+        for (Request next : woken) advance(next, true);
+    }
+
+    private void unlock(Request request, String resource, List<Request> woken) {
+        entries.compute(resource, (key, entry) -> {
+            if (entry == null) return null;
+            if (entry.holders.remove(request.id) == null) entry.queue.remove(request);
+            entry.wake(woken);
+            return entry.holders.isEmpty() && entry.queue.isEmpty() ? null : entry;
+        });
+    }
+
+    private void advance(Request request, boolean grantedNext) {
+        synchronized (request) {
+            if (request.released) return;
+            if (grantedNext) request.next++;
+            while (request.next < request.locks.size()) {
+                Map.Entry<String, Mode> lock = request.locks.get(request.next);
+                boolean[] granted = new boolean[1];
+                entries.compute(lock.getKey(), (resource, entry) -> {
+                    if (entry == null) entry = new Entry();
+                    if (entry.queue.isEmpty() && entry.compatible(lock.getValue())) {
+                        entry.holders.put(request.id, lock.getValue());
+                        granted[0] = true;
+                    } else {
+                        entry.queue.add(request);
+                    }
+                    return entry;
+                });
+                if (!granted[0]) {
+                    LOG.info("Transaction " + request.id + " waits for " + lock.getValue() + " lock on " + lock.getKey());
+                    return;
+                }
+                request.next++;
+            }
+        }
+        request.granted.run();
+    }
+
+    public int getLocked() {
+        return entries.size();
+    }
+
+    public int getWaiting() {
+        int waiting = 0;
+        for (Entry entry : entries.values()) waiting += entry.queue.size();
+        return waiting;
+    }
+
+    private static class Entry {
+        private final Map<Long, Mode> holders = new HashMap<>(4);
+        private final ArrayDeque<Request> queue = new ArrayDeque<>(2);
+
+        private boolean compatible(Mode mode) {
+            for (Mode held : holders.values()) {
+                if (!held.compatible(mode)) return false;
+            }
+            return true;
+        }
+
+        // grants waiting requests from the front as long as they fit next to the current holders
+        private void wake(List<Request> woken) {
+            while (!queue.isEmpty()) {
+                Request first = queue.peek();
+                Mode mode = first.locks.get(first.next).getValue();
+                if (!compatible(mode)) return;
+                queue.poll();
+                holders.put(first.id, mode);
+                woken.add(first);
+            }
+        }
+    }
+
+    private static class Request {
+        private final long id;
+        private final List<Map.Entry<String, Mode>> locks;
+        private final Runnable granted;
+        private int next;
+        private boolean released;
+
+        private Request(long id, List<Map.Entry<String, Mode>> locks, Runnable granted) {
+            this.id = id;
+            this.locks = locks;
+            this.granted = granted;
+        }
+    }
+
+}
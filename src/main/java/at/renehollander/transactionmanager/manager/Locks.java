@@ -0,0 +1,83 @@
+package at.renehollander.transactionmanager.manager;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+// the tables and keys a transaction touches, either taken from its statements or declared by the caller when they can not be parsed.
+// resources are named so their natural order puts a table before its keys, every table before any station and every
+// station before its fence
+public class Locks {
+
+    private static final String TABLE = "1:";
+    private static final String STATION = "2:";
+    private static final String FENCE = "3:";
+
+    final Map<String, LockManager.Mode> modes = new TreeMap<>();
+
+    public Locks shared(String table) {
+        return lock(table, null, false);
+    }
+
+    public Locks shared(String table, Object key) {
+        return lock(table, String.valueOf(key), false);
+    }
+
+    public Locks exclusive(String table) {
+        return lock(table, null, true);
+    }
+
+    public Locks exclusive(String table, Object key) {
+        return lock(table, String.valueOf(key), true);
+    }
+
+    Locks lock(String table, String key, boolean write) {
+        String name = TABLE + table.toLowerCase(Locale.ROOT);
+        if (key == null) {
+            add(name, write ? LockManager.Mode.X : LockManager.Mode.S);
+        } else {
+            add(name, write ? LockManager.Mode.IX : LockManager.Mode.IS);
+            add(name + ":" + key, write ? LockManager.Mode.X : LockManager.Mode.S);
+        }
+        return this;
+    }
+
+    // sqlite lets one transaction at a time write to a database, so writers of a station take turns here until their votes
+    // are in instead of meeting on the stations, where two that got to different ones first would wait for each other.
+    // the commit that follows needs nothing another writer holds, the next one goes on while it is sent
+    Locks station(String name) {
+        add(STATION + name, LockManager.Mode.X);
+        add(FENCE + name, LockManager.Mode.IX);
+        return this;
+    }
+
+    // waits for every writer of the station to end and keeps new ones out until it is released
+    Locks fence(String name) {
+        add(FENCE + name, LockManager.Mode.X);
+        return this;
+    }
+
+    static boolean isStation(String resource) {
+        return resource.startsWith(STATION);
+    }
+
+    private void add(String resource, LockManager.Mode mode) {
+        modes.merge(resource, mode, LockManager.Mode::join);
+    }
+
+    Locks copy() {
+        Locks copy = new Locks();
+        copy.modes.putAll(modes);
+        return copy;
+    }
+
+    boolean isEmpty() {
+        return modes.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return modes.toString();
+    }
+
+}
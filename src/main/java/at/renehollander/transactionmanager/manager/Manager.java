@@ -2,34 +2,202 @@ package at.renehollander.transactionmanager.manager;
 
 import at.renehollander.transactionmanager.Callback;
 import at.renehollander.transactionmanager.Maps;
+import at.renehollander.transactionmanager.TransactionIds;
+import at.renehollander.transactionmanager.Transport;
+import at.renehollander.transactionmanager.metrics.Counter;
+import at.renehollander.transactionmanager.metrics.Histogram;
+import at.renehollander.transactionmanager.metrics.Metrics;
 import com.corundumstudio.socketio.*;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class Manager implements AuthorizationListener {
 
     private static Logger LOG = LoggerFactory.getLogger(Manager.class);
 
-    private Map<String, SocketIOClient> clients;
+    private static final int PROBE_TIMEOUT = 1;
+    private static final int PROBE_INTERVAL = 1000;
+    private static final int SNAPSHOT_TIMEOUT = 30;
+    private static final int MAX_SNAPSHOT_CHUNK = 1024 * 1024;
+
+    private final Map<String, Participant> clients = new ConcurrentHashMap<>();
     private SocketIOServer server;
+    private BinaryServer binaryServer;
+
+    // one wheel for the timeouts of every request in flight, so they cost a slot in a bucket instead of a scheduled task each
+    private final Timer timer = new HashedWheelTimer((runnable) -> {
+        Thread thread = new Thread(runnable, "manager-timeouts");
+        thread.setDaemon(true);
+        return thread;
+    }, 10, TimeUnit.MILLISECONDS);
+
+    private final int coordinator;
+    private final AtomicLong transactionIds;
+    // logical clock stamping writers, never behind the stamps the stations saw from other coordinators. wall clocks of
+    // different machines drift apart, the one running behind would otherwise win every tie for a station's writer slot
+    private final AtomicLong clock = new AtomicLong();
+
+    private volatile PartitionMap partitionMap;
+    private volatile LockManager lockManager = new LockManager();
+
+    private volatile DecisionLog decisionLog;
+    // commits that are not known to have reached every participant, with the stations that still have to confirm them
+    private final Map<Long, Set<Long>> recovered = new LinkedHashMap<>();
+    private long recoveredBefore;
+
+    private volatile int groupCommitWindow;
+    private ScheduledExecutorService groupCommitScheduler;
+    private final Queue<Transaction> pendingCommits = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private volatile int queryChunkSize = 100;
+    private volatile QueryCache queryCache;
+    // a station also serves other managers, whose commits never invalidate the cache
+    private boolean shared;
+    private final Map<Long, QueryResult> queries = new ConcurrentHashMap<>();
+
+    private final Metrics metrics = new Metrics("manager");
+    private final Map<String, StationMetrics> stationMetrics = new ConcurrentHashMap<>();
+    private final Histogram transactionLatency = metrics.histogram("transaction");
+    private final Counter committedTransactions = metrics.counter("transactions.committed");
+    private final Counter abortedTransactions = metrics.counter("transactions.aborted");
+    private final Counter inDoubtTransactions = metrics.counter("transactions.inDoubt");
+    private final Counter replicaReads = metrics.counter("transactions.replicaReads");
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Map<String, StationHealth> health = new ConcurrentHashMap<>();
+    private volatile int minimumTimeout = 1000;
+    private volatile int quarantineAfter = 3;
+    private volatile ReadBalancing readBalancing = ReadBalancing.LEAST_OUTSTANDING;
+    private volatile AdmissionController admissionController;
+
+    private final Map<String, CatchUp> catchingUp = new ConcurrentHashMap<>();
+    private final AtomicLong snapshotIds = new AtomicLong();
+    private final AtomicLong fenceIds = new AtomicLong();
+    private volatile int catchUpLimit = 100000;
 
     public Manager(int port) {
+        this(port, Transport.SOCKET_IO);
+    }
+
+    public Manager(int port, Transport transport) {
+        this(port, transport, 0);
+    }
+
+    // coordinators sharing stations need distinct numbers, each one only hands out and recovers ids of its own
+    public Manager(int port, Transport transport, int coordinator) {
+        this.coordinator = coordinator;
+        this.transactionIds = new AtomicLong(TransactionIds.base(coordinator));
+        metrics.gauge("transactions.inFlight", inFlight::get);
+        metrics.gauge("queries.open", queries::size);
+        metrics.gauge("stations.connected", clients::size);
+        metrics.gauge("stations.catchingUp", catchingUp::size);
+        metrics.gauge("locks.held", () -> {
+            LockManager locks = lockManager;
+            return locks == null ? 0 : locks.getLocked();
+        });
+        metrics.gauge("queryCache.hits", () -> {
+            QueryCache cache = queryCache;
+            return cache == null ? 0 : cache.getHits();
+        });
+        metrics.gauge("queryCache.misses", () -> {
+            QueryCache cache = queryCache;
+            return cache == null ? 0 : cache.getMisses();
+        });
+        metrics.gauge("queryCache.hitRate", () -> {
+            QueryCache cache = queryCache;
+            return cache == null ? 0 : cache.getHitRate();
+        });
+        metrics.gauge("queryCache.bytes", () -> {
+            QueryCache cache = queryCache;
+            return cache == null ? 0 : cache.getBytes();
+        });
+        metrics.gauge("queryCache.entries", () -> {
+            QueryCache cache = queryCache;
+            return cache == null ? 0 : cache.getEntries();
+        });
+        metrics.gauge("queryCache.evictions", () -> {
+            QueryCache cache = queryCache;
+            return cache == null ? 0 : cache.getEvictions();
+        });
+        metrics.gauge("queryCache.invalidations", () -> {
+            QueryCache cache = queryCache;
+            return cache == null ? 0 : cache.getInvalidations();
+        });
+        metrics.gauge("admission.inFlight", () -> {
+            AdmissionController admission = admissionController;
+            return admission == null ? 0 : admission.getInFlight();
+        });
+        metrics.gauge("admission.queued", () -> {
+            AdmissionController admission = admissionController;
+            return admission == null ? 0 : admission.getQueued();
+        });
+        metrics.gauge("admission.limit", () -> {
+            AdmissionController admission = admissionController;
+            return admission == null ? 0 : admission.getLimit();
+        });
+        metrics.gauge("admission.rejected", () -> {
+            AdmissionController admission = admissionController;
+            return admission == null ? 0 : admission.getRejected();
+        });
+        metrics.gauge("locks.waiting", () -> {
+            LockManager locks = lockManager;
+            return locks == null ? 0 : locks.getWaiting();
+        });
+        metrics.register();
 
-        clients = new HashMap<>();
+        if (transport == Transport.BINARY) {
+            binaryServer = new BinaryServer(port, timer, this::connected, this::disconnected, this::received);
+            binaryServer.start();
+            return;
+        }
 
         Configuration config = new Configuration();
         config.setPort(port);
         config.getSocketConfig().setReuseAddress(true);
         config.setAuthorizationListener(this);
+        // replies to stations are sent when they are ready, acknowledging on return would answer joins and chunks empty
+        config.setAckMode(AckMode.MANUAL);
+        // snapshot chunks are relayed in one frame each
+        config.setMaxFramePayloadLength(2 * MAX_SNAPSHOT_CHUNK);
+        config.setMaxHttpContentLength(2 * MAX_SNAPSHOT_CHUNK);
         server = new SocketIOServer(config);
 
         server.addConnectListener(this::onConnect);
         server.addDisconnectListener(this::onDisconnect);
+        for (String event : new String[]{"rows", "join", "snapshotChunk", "snapshotRestored"}) {
+            server.addEventListener(event, SocketIOParticipant.Payload.class, (client, data, ack) -> {
+                Participant participant = clients.get(client.<String>get("name"));
+                if (participant == null) return;
+                received(participant, event, data, ack.isAckRequested() ? (response) -> {
+                    if (response == null) {
+                        ack.sendAckData();
+                    } else {
+                        ack.sendAckData(response);
+                    }
+                } : null);
+            });
+        }
 
         server.start();
     }
@@ -37,139 +205,1285 @@ public class Manager implements AuthorizationListener {
     public void onConnect(SocketIOClient client) {
         String name = client.getHandshakeData().getUrlParams().get("name").get(0);
         client.set("name", name);
-        clients.put(name, client);
+        connected(new SocketIOParticipant(name, client));
+    }
+
+    private boolean connected(Participant participant) {
+        String name = participant.getName();
+        if (name.isEmpty() || clients.putIfAbsent(name, participant) != null) {
+            LOG.error("Rejecting station " + name + ", a station with that name is already connected");
+            return false;
+        }
+        health.put(name, new StationHealth(quarantineAfter));
+        stationMetrics.computeIfAbsent(name, (n) -> {
+            metrics.gauge("station." + n + ".healthy", () -> {
+                StationHealth station = health.get(n);
+                return station != null && station.isHealthy() ? 1 : 0;
+            });
+            metrics.gauge("station." + n + ".latency", () -> {
+                StationHealth station = health.get(n);
+                return station == null ? 0 : station.getLatencyMillis();
+            });
+            metrics.gauge("station." + n + ".outstanding", () -> {
+                StationHealth station = health.get(n);
+                return station == null ? 0 : station.getOutstanding();
+            });
+            return new StationMetrics(metrics, n);
+        });
+        // it takes part in transactions once it joined, with its own database or a copy of a peer's
+        CatchUp catchUp = catchingUp.get(name);
+        if (catchUp != null && catchUp.phase == CatchUp.Phase.COPYING) {
+            catchUp.participant = participant;
+        } else {
+            catchingUp.put(name, new CatchUp(participant, catchUpLimit));
+        }
         LOG.info("Client " + name + " connected!");
+        if (decisionLog != null) {
+            // recovery may commit transactions that ended in doubt after their rows were cached
+            QueryCache cache = queryCache;
+            if (cache != null) cache.invalidateAll();
+            recover(participant);
+        }
+        return true;
     }
 
     public void execute(int timeout, String statement, Callback.NoParamsWithStringError callback) {
-        Lock lock = new ReentrantLock();
-        Set<SocketIOClient> clients = fetch();
-        List<String> exceptions = new ArrayList<>();
-        AtomicBoolean triggered = new AtomicBoolean(false);
-        server.getBroadcastOperations().sendEvent("execute", Maps.of("timeout", timeout, "statement", statement), new BroadcastAckCallback<Map>(Map.class, timeout) {
-            public void onClientSuccess(SocketIOClient client, Map resultMap) {
-                lock.lock();
-                LOG.info("Recieved response from " + client.get("name"));
-                Map<String, Object> result = resultMap;
-                if (result == null) result = new HashMap<>();
-                clients.remove(client);
-                if (result.containsKey("error")) {
-                    LOG.error("client " + client.get("name") + " responded with an exception: " + result.get("error"));
-                    exceptions.add("client " + client.get("name") + " responded with an exception: " + result.get("error"));
-                } else {
-                    LOG.info("client " + client.get("name") + " response after " + statement + " was ok");
+        execute(timeout, statement, (err, result) -> callback.execute(err));
+    }
+
+    public void execute(int timeout, String statement, Callback.OneParamWithStringError<TransactionResult> callback) {
+        execute(timeout, statement, null, callback);
+    }
+
+    public void execute(int timeout, String statement, List<Object> parameters, Callback.NoParamsWithStringError callback) {
+        execute(timeout, statement, parameters, (err, result) -> callback.execute(err));
+    }
+
+    public void execute(int timeout, String statement, List<Object> parameters, Callback.OneParamWithStringError<TransactionResult> callback) {
+        execute(timeout, statement, parameters, null, callback);
+    }
+
+    // parameters are bound to the ? placeholders of the statement on the stations,
+    // locks replace the footprint the lock manager would take from the statement
+    public void execute(int timeout, String statement, List<Object> parameters, Locks locks, Callback.OneParamWithStringError<TransactionResult> callback) {
+        execute(timeout, statement, parameters, locks, false, null, AdmissionController.Priority.NORMAL, callback);
+    }
+
+    // reads are run on one station and rolled back, the station refuses statements that change anything.
+    // a plain execute of a select is read the same way unless read balancing is turned off
+    public void read(int timeout, String statement, Callback.OneParamWithStringError<TransactionResult> callback) {
+        read(timeout, statement, null, callback);
+    }
+
+    public void read(int timeout, String statement, List<Object> parameters, Callback.OneParamWithStringError<TransactionResult> callback) {
+        execute(timeout, statement, parameters, null, true, null, AdmissionController.Priority.NORMAL, callback);
+    }
+
+    // preferred is the station a read goes to if it holds the rows and is healthy
+    void execute(int timeout, String statement, List<Object> parameters, Locks locks, boolean read, String preferred, AdmissionController.Priority priority, Callback.OneParamWithStringError<TransactionResult> callback) {
+        Transaction tx = new Transaction(nextId(), timeout, statement, callback);
+        tx.priority = priority;
+        StatementInfo info = StatementInfo.parse(statement, parameters);
+        prepare(tx, "execute", Collections.singletonList(info), locks, read, preferred, (statements) -> {
+            Map<String, Object> data = Maps.of("id", tx.id, "timeout", timeout, "statement", statement);
+            if (parameters != null) data.put("parameters", parameters);
+            return data;
+        });
+    }
+
+    public void executeBatch(int timeout, List<String> statements, Callback.NoParamsWithStringError callback) {
+        executeBatch(timeout, statements, (err, result) -> callback.execute(err));
+    }
+
+    public void executeBatch(int timeout, List<String> statements, Callback.OneParamWithStringError<TransactionResult> callback) {
+        executeBatch(timeout, statements, null, callback);
+    }
+
+    public void executeBatch(int timeout, List<String> statements, Locks locks, Callback.OneParamWithStringError<TransactionResult> callback) {
+        executeBatch(timeout, statements, locks, null, AdmissionController.Priority.NORMAL, callback);
+    }
+
+    void executeBatch(int timeout, List<String> statements, Locks locks, String preferred, AdmissionController.Priority priority, Callback.OneParamWithStringError<TransactionResult> callback) {
+        Transaction tx = new Transaction(nextId(), timeout, "batch of " + statements.size() + " statements", callback);
+        tx.priority = priority;
+        List<StatementInfo> infos = new ArrayList<>(statements.size());
+        for (String statement : statements) infos.add(StatementInfo.parse(statement));
+        prepare(tx, "executeBatch", infos, locks, false, preferred, (routed) -> Maps.of("id", tx.id, "timeout", timeout, "statements", routed));
+    }
+
+    public CompletionStage<TransactionResult> executeAsync(int timeout, String statement) {
+        return executeAsync(timeout, statement, null);
+    }
+
+    // completes with the result whatever the outcome, exceptionally only if the transaction could not be started
+    public CompletionStage<TransactionResult> executeAsync(int timeout, String statement, List<Object> parameters) {
+        return executeAsync(timeout, statement, parameters, null);
+    }
+
+    public CompletionStage<TransactionResult> executeAsync(int timeout, String statement, List<Object> parameters, Locks locks) {
+        return executeAsync(timeout, statement, parameters, locks, false, null, AdmissionController.Priority.NORMAL);
+    }
+
+    public CompletionStage<TransactionResult> readAsync(int timeout, String statement) {
+        return readAsync(timeout, statement, null);
+    }
+
+    public CompletionStage<TransactionResult> readAsync(int timeout, String statement, List<Object> parameters) {
+        return executeAsync(timeout, statement, parameters, null, true, null, AdmissionController.Priority.NORMAL);
+    }
+
+    CompletionStage<TransactionResult> executeAsync(int timeout, String statement, List<Object> parameters, Locks locks, boolean read, String preferred, AdmissionController.Priority priority) {
+        CompletableFuture<TransactionResult> future = new CompletableFuture<>();
+        try {
+            execute(timeout, statement, parameters, locks, read, preferred, priority, (err, result) -> future.complete(result));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    public CompletionStage<TransactionResult> executeBatchAsync(int timeout, List<String> statements) {
+        return executeBatchAsync(timeout, statements, null);
+    }
+
+    public CompletionStage<TransactionResult> executeBatchAsync(int timeout, List<String> statements, Locks locks) {
+        return executeBatchAsync(timeout, statements, locks, null, AdmissionController.Priority.NORMAL);
+    }
+
+    CompletionStage<TransactionResult> executeBatchAsync(int timeout, List<String> statements, Locks locks, String preferred, AdmissionController.Priority priority) {
+        CompletableFuture<TransactionResult> future = new CompletableFuture<>();
+        try {
+            executeBatch(timeout, statements, locks, preferred, priority, (err, result) -> future.complete(result));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    public void bulkInsert(int timeout, String table, List<String> columns, List<List<Object>> rows, Callback.OneParamWithStringError<TransactionResult> callback) {
+        bulkInsert(timeout, table, columns, rows, null, callback);
+    }
+
+    // the rows are written with one prepared insert per station and committed together. the table is locked as a whole rather
+    // than row by row, and the load waits behind other transactions for admission. conflict is null, "ignore" or "replace",
+    // the latter two make loading the same rows again harmless on tables with a unique key
+    public void bulkInsert(int timeout, String table, List<String> columns, List<List<Object>> rows, String conflict, Callback.OneParamWithStringError<TransactionResult> callback) {
+        if (columns.isEmpty()) throw new IllegalArgumentException("at least one column has to be inserted");
+        if (conflict != null && !conflict.equals("ignore") && !conflict.equals("replace")) throw new IllegalArgumentException("unknown conflict resolution " + conflict);
+        for (List<Object> row : rows) {
+            if (row.size() != columns.size()) throw new IllegalArgumentException("a row has " + row.size() + " values for " + columns.size() + " columns");
+        }
+        Transaction tx = new Transaction(nextId(), timeout, rows.size() + " rows for " + table, callback);
+        tx.priority = AdmissionController.Priority.LOW;
+        inFlight.incrementAndGet();
+        tx.writes = new HashSet<>(Collections.singleton(table.toLowerCase(Locale.ROOT)));
+        tx.write = true;
+        Map<Participant, List<List<Object>>> routes = routeRows(tx, table, columns, rows);
+        tx.participants = routes.keySet();
+        admit(tx, () -> lock(tx, (locks) -> new Locks().exclusive(table), true, () -> dispatch(tx, "insertRows", routes, (routed) -> {
+            Map<String, Object> data = Maps.of("id", tx.id, "timeout", timeout, "table", table, "columns", columns);
+            data.put("rows", routed);
+            if (conflict != null) data.put("conflict", conflict);
+            return data;
+        })));
+    }
+
+    public CompletionStage<TransactionResult> bulkInsertAsync(int timeout, String table, List<String> columns, List<List<Object>> rows, String conflict) {
+        CompletableFuture<TransactionResult> future = new CompletableFuture<>();
+        try {
+            bulkInsert(timeout, table, columns, rows, conflict, (err, result) -> future.complete(result));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    public Session session(int maxInFlight) {
+        return session(maxInFlight, false);
+    }
+
+    // a session pinning its reads keeps reading from a station that confirmed its last write,
+    // so it sees that write even if it ended in doubt and did not reach every station
+    public Session session(int maxInFlight, boolean pinReads) {
+        return new Session(this, maxInFlight, pinReads);
+    }
+
+    private void prepare(Transaction tx, String event, List<StatementInfo> statements, Locks hints, boolean read, String preferred, Function<List<String>, Map<String, Object>> request) {
+        inFlight.incrementAndGet();
+        boolean writes = statements.stream().anyMatch((statement) -> !statement.isReadOnly());
+        tx.writes = new HashSet<>();
+        for (StatementInfo statement : statements) {
+            if (statement.isReadOnly()) continue;
+            if (statement.getTable() == null) {
+                tx.writes = null;
+                break;
+            }
+            tx.writes.add(statement.getTable());
+        }
+        ReadBalancing balancing = readBalancing;
+        tx.read = read || (balancing != null && !writes);
+        tx.write = writes && !tx.read;
+        Map<Participant, List<String>> routes = tx.read && balancing != null ? routeRead(statements, balancing, preferred) : null;
+        if (routes == null) routes = route(tx, statements);
+        tx.participants = routes.keySet();
+        Map<Participant, List<String>> routed = routes;
+        admit(tx, () -> lock(tx, (locks) -> hints != null ? hints.copy() : locks.footprint(statements, partitionMap), writes, () -> dispatch(tx, event, routed, request)));
+    }
+
+    private void admit(Transaction tx, Runnable admitted) {
+        AdmissionController admission = admissionController;
+        if (admission == null || tx.participants.isEmpty()) {
+            admitted.run();
+            return;
+        }
+        Set<String> stations = new LinkedHashSet<>();
+        tx.participants.forEach((client) -> stations.add(client.getName()));
+        tx.admission = admission;
+        tx.ticket = new AdmissionController.Ticket(stations, tx.priority);
+        AtomicReference<Timeout> wait = new AtomicReference<>();
+        admission.enter(tx.ticket, () -> {
+            Timeout waiting = wait.get();
+            if (waiting != null) waiting.cancel();
+            tx.admitted = System.nanoTime();
+            admitted.run();
+        }, (reason) -> {
+            Timeout waiting = wait.get();
+            if (waiting != null) waiting.cancel();
+            LOG.error("Transaction " + tx.id + " " + reason);
+            tx.exceptions.add(reason);
+            complete(tx, false);
+        });
+        if (!admission.isWaiting(tx.ticket)) return;
+        wait.set(timer.newTimeout((t) -> {
+            if (!admission.cancel(tx.ticket)) return;
+            LOG.error("Transaction " + tx.id + " timed out waiting for admission");
+            tx.exceptions.add("timed out waiting for admission");
+            complete(tx, false);
+        }, tx.timeout, TimeUnit.SECONDS));
+    }
+
+    private void lock(Transaction tx, Function<LockManager, Locks> footprints, boolean writes, Runnable granted) {
+        LockManager locks = lockManager;
+        if (locks == null || tx.participants.isEmpty()) {
+            granted.run();
+            return;
+        }
+        Locks footprint = footprints.apply(locks);
+        if (writes) {
+            tx.participants.forEach((client) -> footprint.station(client.getName()));
+        }
+        if (footprint.isEmpty()) {
+            granted.run();
+            return;
+        }
+        tx.locks = locks;
+        AtomicBoolean started = new AtomicBoolean();
+        Timeout wait = timer.newTimeout((t) -> {
+            if (!started.compareAndSet(false, true)) return;
+            LOG.error("Transaction " + tx.id + " timed out waiting for locks on " + footprint);
+            locks.release(tx.id);
+            tx.exceptions.add("timed out waiting for locks");
+            complete(tx, false);
+        }, tx.timeout, TimeUnit.SECONDS);
+        locks.acquire(tx.id, footprint, () -> {
+            if (!started.compareAndSet(false, true)) return;
+            wait.cancel();
+            granted.run();
+        });
+    }
+
+    // routes holds what each participant gets, request turns it into the event sent to it
+    private <T> void dispatch(Transaction tx, String event, Map<Participant, T> routes, Function<T, Map<String, Object>> request) {
+        for (Iterator<Participant> iterator = routes.keySet().iterator(); iterator.hasNext(); ) {
+            Participant client = iterator.next();
+            CatchUp catchUp = catchingUp.get(client.getName());
+            if (catchUp == null) continue;
+            // it gets what it missed as one-phase commits once its copy is restored
+            if (!tx.read) {
+                Map<String, Object> data = request.apply(routes.get(client));
+                data.put("commit", true);
+                if (tx.catchUp == null) tx.catchUp = new HashMap<>();
+                tx.catchUp.put(catchUp, new CatchUp.Replay(event, data));
+            }
+            iterator.remove();
+        }
+        boolean onePhase = tx.participants.size() == 1 && !tx.read;
+        if (tx.participants.isEmpty() && tx.exceptions.isEmpty()) {
+            String reason = tx.catchUp == null ? "no stations connected" : "only stations catching up hold its rows";
+            LOG.error("Can not run transaction " + tx.id + ", " + reason);
+            tx.exceptions.add(reason);
+        } else if (onePhase) {
+            tx.path = TransactionResult.Path.ONE_PHASE;
+        } else if (tx.read && tx.participants.size() == 1) {
+            tx.path = TransactionResult.Path.REPLICA_READ;
+        }
+        if (tx.write) tx.stamp = tick();
+        send(tx.participants, event, (client) -> {
+            Map<String, Object> data = request.apply(routes.get(client));
+            if (onePhase) data.put("commit", true);
+            if (tx.read) data.put("read", true);
+            // a station lets one writer in at a time, the older of two from different coordinators waits for the other
+            if (tx.write) data.put("writer", tx.stamp);
+            return data;
+        }, tx.timeout, !onePhase, (client, result) -> {
+            if (result != null && result.get("clock") instanceof Number) observe(((Number) result.get("clock")).longValue());
+            if (result == null) {
+                LOG.error("client " + client.getName() + " timed out");
+                tx.fail(client.getName(), "timed out");
+                // a one-phase participant may have committed before its answer got lost
+                if (tx.path == TransactionResult.Path.ONE_PHASE) tx.inDoubt = true;
+                tx.phaseTwo.add(client);
+            } else if (result.containsKey("error")) {
+                LOG.error("client " + client.getName() + " responded with an exception: " + result.get("error"));
+                tx.fail(client.getName(), "responded with an exception: " + result.get("error"));
+                // stations roll back failed reads on their own
+                if (tx.path != TransactionResult.Path.ONE_PHASE && !tx.read) tx.phaseTwo.add(client);
+            } else if ("readonly".equals(result.get("vote"))) {
+                LOG.info("client " + client.getName() + " voted read-only after " + tx.description);
+                tx.readOnly.add(client.getName());
+            } else {
+                LOG.info("client " + client.getName() + " response after " + tx.description + " was ok" + (result.containsKey("res") ? ": " + result.get("res") : ""));
+                tx.phaseTwo.add(client);
+            }
+        }, () -> rollbackOrCommit(tx));
+        tx.participants.forEach((client) -> {
+            LOG.info("Sent Statement \"" + tx.description + "\" of transaction " + tx.id + " to " + client.getName());
+        });
+    }
+
+    // one station holding every row the statements read, or null if there is none and the read goes wherever a write would
+    private Map<Participant, List<String>> routeRead(List<StatementInfo> statements, ReadBalancing balancing, String preferred) {
+        PartitionMap map = partitionMap;
+        Set<String> candidates = getStations();
+        List<String> sql = new ArrayList<>(statements.size());
+        for (StatementInfo statement : statements) {
+            Set<String> holders = map == null ? null : map.holders(statement);
+            if (holders != null) candidates.retainAll(holders);
+            sql.add(statement.getSql());
+        }
+        StationHealth pinned = preferred == null ? null : health.get(preferred);
+        String station = pinned != null && pinned.isHealthy() && candidates.contains(preferred) ? preferred : pick(candidates, balancing);
+        Participant client = station == null ? null : clients.get(station);
+        if (client == null) return null;
+        Map<Participant, List<String>> routes = new LinkedHashMap<>();
+        routes.put(client, sql);
+        return routes;
+    }
+
+    // ties are broken at random so equally loaded stations share the reads
+    private String pick(Collection<String> candidates, ReadBalancing balancing) {
+        String best = null;
+        long lowest = Long.MAX_VALUE;
+        int ties = 0;
+        for (String name : candidates) {
+            StationHealth station = health.get(name);
+            if (station == null || !station.isHealthy()) continue;
+            long load = balancing == ReadBalancing.LEAST_OUTSTANDING ? station.getOutstanding() : station.getLatencyNanos();
+            if (load < lowest) {
+                best = name;
+                lowest = load;
+                ties = 1;
+            } else if (load == lowest && ThreadLocalRandom.current().nextInt(++ties) == 0) {
+                best = name;
+            }
+        }
+        return best;
+    }
+
+    private Map<Participant, List<String>> route(Transaction tx, List<StatementInfo> statements) {
+        Collection<Participant> all = null;
+        PartitionMap map = partitionMap;
+        Map<Participant, List<String>> routes = new LinkedHashMap<>();
+        for (StatementInfo statement : statements) {
+            Set<String> owners = map == null ? null : map.owners(statement);
+            Collection<Participant> targets;
+            if (owners == null) {
+                // taken once per transaction so every statement of a batch reaches the same stations
+                if (all == null) all = targets();
+                targets = all;
+            } else {
+                if (owners.isEmpty()) {
+                    LOG.error("No station owns the rows of \"" + statement.getSql() + "\" in transaction " + tx.id);
+                    tx.exceptions.add("no station owns the rows of " + statement.getSql());
+                    return Collections.emptyMap();
+                }
+                targets = new ArrayList<>(owners.size());
+                for (String owner : owners) {
+                    Participant client = target(owner);
+                    if (client == null) {
+                        LOG.error("Station " + owner + " owning rows of transaction " + tx.id + " is not connected");
+                        tx.exceptions.add("station " + owner + " is not connected");
+                        tx.stationErrors.put(owner, "is not connected");
+                        return Collections.emptyMap();
+                    }
+                    targets.add(client);
+                }
+            }
+            for (Participant client : targets) {
+                routes.computeIfAbsent(client, (c) -> new ArrayList<>()).add(statement.getSql());
+            }
+        }
+        return healthy(tx, routes.keySet()) ? routes : Collections.emptyMap();
+    }
+
+    // rows go to the stations owning their partition key, or each to every station if the table is not partitioned
+    private Map<Participant, List<List<Object>>> routeRows(Transaction tx, String table, List<String> columns, List<List<Object>> rows) {
+        PartitionMap map = partitionMap;
+        String column = map == null ? null : map.getKeyColumn(table);
+        Map<Participant, List<List<Object>>> routes = new LinkedHashMap<>();
+        if (column == null) {
+            for (Participant client : targets()) routes.put(client, rows);
+            return healthy(tx, routes.keySet()) ? routes : Collections.emptyMap();
+        }
+        int index = -1;
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).equalsIgnoreCase(column)) index = i;
+        }
+        if (index < 0) {
+            LOG.error("Rows of transaction " + tx.id + " lack the partition key " + column + " of " + table);
+            tx.exceptions.add("rows lack the partition key " + column + " of " + table);
+            return Collections.emptyMap();
+        }
+        Map<String, Participant> owners = new HashMap<>();
+        for (List<Object> row : rows) {
+            String key = StatementInfo.key(row.get(index));
+            if (key == null) {
+                LOG.error("A row of transaction " + tx.id + " has no partition key");
+                tx.exceptions.add("a row has no partition key " + column);
+                return Collections.emptyMap();
+            }
+            for (String owner : map.owners(table, key)) {
+                Participant client = owners.computeIfAbsent(owner, this::target);
+                if (client == null) {
+                    LOG.error("Station " + owner + " owning rows of transaction " + tx.id + " is not connected");
+                    tx.exceptions.add("station " + owner + " is not connected");
+                    tx.stationErrors.put(owner, "is not connected");
+                    return Collections.emptyMap();
                 }
-                rollbackOrCommitCheck(clients, exceptions, timeout, callback, triggered);
-                lock.unlock();
+                routes.computeIfAbsent(client, (c) -> new ArrayList<>()).add(row);
             }
+        }
+        return healthy(tx, routes.keySet()) ? routes : Collections.emptyMap();
+    }
 
-            public void onClientTimeout(SocketIOClient client) {
-                lock.lock();
-                clients.remove(client);
-                LOG.error("client " + client.get("name") + " timed out");
-                exceptions.add("client " + client.get("name") + " timed out");
-                rollbackOrCommitCheck(clients, exceptions, timeout, callback, triggered);
-                lock.unlock();
+    // waiting for a station that already failed to answer would only hold the locks on every other one until the timeout
+    private boolean healthy(Transaction tx, Collection<Participant> clients) {
+        for (Participant client : clients) {
+            if (catchingUp.containsKey(client.getName())) continue;
+            StationHealth station = health.get(client.getName());
+            if (station != null && !station.isHealthy()) {
+                LOG.error("Aborting transaction " + tx.id + " right away, station " + client.getName() + " is " + station.getState());
+                tx.fail(client.getName(), "is " + station.getState().name().toLowerCase(Locale.ROOT));
+                return false;
             }
+        }
+        return true;
+    }
+
+    public QueryResult query(int timeout, String statement) {
+        return query(timeout, statement, null, null);
+    }
+
+    public QueryResult query(int timeout, String statement, Comparator<List<Object>> order) {
+        return query(timeout, statement, null, order);
+    }
+
+    // rows of all stations are merged in the given order, which only holds if every station returns its rows in that order as well
+    public QueryResult query(int timeout, String statement, List<Object> parameters, Comparator<List<Object>> order) {
+        long id = nextId();
+        QueryCache cache = queryCache;
+        QueryCache.Key key = cache == null ? null : cache.key(statement, parameters, order);
+        if (key != null) {
+            QueryCache.Entry cached = cache.get(key);
+            if (cached != null) {
+                LOG.info("Answered query " + id + " \"" + statement + "\" from the cache");
+                return QueryResult.cached(id, cached.columns, cached.rows);
+            }
+        }
+        Map<Participant, Map<String, Object>> targets;
+        String error = null;
+        try {
+            targets = scatter(statement, parameters);
+            if (targets.isEmpty()) error = "no stations connected";
+        } catch (IllegalStateException e) {
+            targets = Collections.emptyMap();
+            error = e.getMessage();
+        }
+        List<String> stations = new ArrayList<>();
+        targets.keySet().forEach((client) -> stations.add(client.getName()));
+        int chunk = queryChunkSize;
+        QueryResult result = new QueryResult(id, timeout, order, chunk * 2, stations, () -> queries.remove(id));
+        if (error != null) {
+            LOG.error("Could not start query " + id + ": " + error);
+            result.failed("", error);
+            return result;
+        }
+        if (key != null) result.fill(cache.fill(key));
+        queries.put(id, result);
+        Map<Participant, Map<String, Object>> filters = targets;
+        send(targets.keySet(), "query", (client) -> {
+            Map<String, Object> data = Maps.of("id", id, "timeout", timeout, "statement", statement, "chunk", chunk);
+            if (parameters != null) data.put("parameters", parameters);
+            if (filters.get(client) != null) data.put("filter", filters.get(client));
+            return data;
+        }, timeout, false, (client, response) -> {
+            if (response == null) {
+                result.failed(client.getName(), "timed out");
+            } else if (response.containsKey("error")) {
+                result.failed(client.getName(), "responded with an exception: " + response.get("error"));
+            } else {
+                @SuppressWarnings("unchecked")
+                List<String> columns = (List<String>) response.get("columns");
+                result.opened(client.getName(), columns);
+            }
+        }, () -> {
         });
-        clients.forEach((client) -> {
-            LOG.info("Sent Statement \"" + statement + "\" to " + client.get("name"));
+        LOG.info("Sent query " + id + " \"" + statement + "\" to " + stations);
+        return result;
+    }
+
+    private Map<Participant, Map<String, Object>> scatter(String statement, List<Object> parameters) {
+        Map<Participant, Map<String, Object>> targets = new LinkedHashMap<>();
+        PartitionMap map = partitionMap;
+        List<String> available = new ArrayList<>(clients.size());
+        clients.forEach((name, client) -> {
+            StationHealth station = health.get(name);
+            if (!catchingUp.containsKey(name) && (station == null || station.isHealthy())) available.add(name);
+        });
+        Map<String, Map<String, Object>> partitions = map == null ? null : map.scatter(StatementInfo.parse(statement, parameters), available);
+        if (partitions == null) {
+            // every station holds a full copy of unpartitioned tables, so one of them is enough
+            ReadBalancing balancing = readBalancing;
+            String station = available.isEmpty() ? null : balancing == null ? available.get(0) : pick(available, balancing);
+            if (station != null) targets.put(clients.get(station), null);
+            return targets;
+        }
+        partitions.forEach((station, filter) -> {
+            Participant client = clients.get(station);
+            if (client == null) throw new IllegalStateException("station " + station + " is not connected");
+            targets.put(client, filter);
         });
+        return targets;
+    }
+
+    private void onRows(Participant participant, Map<String, Object> data, Consumer<Map<String, Object>> reply) {
+        long id = ((Number) data.get("id")).longValue();
+        QueryResult result = queries.get(id);
+        if (result == null) {
+            if (reply != null) reply.accept(Maps.of("cancel", true));
+            return;
+        }
+        result.receive(participant.getName(), data, reply);
+    }
+
+    public void setQueryChunkSize(int rows) {
+        if (rows < 1) throw new IllegalArgumentException("query chunk size must be positive");
+        queryChunkSize = rows;
+    }
+
+    public int getQueryChunkSize() {
+        return queryChunkSize;
+    }
+
+    // null turns caching off, which is the default. a manager sharing its stations with other coordinators can not cache
+    public synchronized void setQueryCache(QueryCache queryCache) {
+        if (queryCache != null && shared) throw new IllegalStateException("the stations are shared with other managers, whose writes the query cache would miss");
+        this.queryCache = queryCache;
+    }
+
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    public void setPartitionMap(PartitionMap partitionMap) {
+        this.partitionMap = partitionMap;
+    }
+
+    public PartitionMap getPartitionMap() {
+        return partitionMap;
     }
 
-    private synchronized void rollbackOrCommitCheck(Set<SocketIOClient> clients, List<String> exceptions, int timeout, Callback.NoParamsWithStringError callback, AtomicBoolean triggered) {
-        if (!triggered.get() && clients.isEmpty()) {
-            triggered.set(true);
-            if (!exceptions.isEmpty()) {
-                LOG.info("Executing Rollback on all stations");
-                rollback(timeout, callback, exceptions);
-            } else if (exceptions.isEmpty()) {
-                LOG.info("Executing Commit on all stations");
-                commit(timeout, callback, exceptions);
+    // null turns locking off and leaves every conflict to the stations
+    public void setLockManager(LockManager lockManager) {
+        this.lockManager = lockManager;
+    }
+
+    public LockManager getLockManager() {
+        return lockManager;
+    }
+
+    private void rollbackOrCommit(Transaction tx) {
+        // the votes are in, the next writer of its stations may execute while this one commits or rolls back
+        if (tx.locks != null) tx.locks.releaseStations(tx.id);
+        if (tx.path == TransactionResult.Path.ONE_PHASE) {
+            if (tx.exceptions.isEmpty()) {
+                complete(tx, true);
+            } else if (!tx.phaseTwo.isEmpty()) {
+                LOG.info("Executing Rollback of one-phase transaction " + tx.id + " after timeout");
+                rollback(tx);
+            } else {
+                complete(tx, false);
             }
+        } else if (!tx.exceptions.isEmpty()) {
+            LOG.info("Executing Rollback of transaction " + tx.id + " on " + tx.phaseTwo.size() + " stations");
+            rollback(tx);
+        } else if (tx.phaseTwo.isEmpty()) {
+            if (tx.path == TransactionResult.Path.TWO_PHASE) tx.path = TransactionResult.Path.READ_ONLY;
+            complete(tx, true);
+        } else {
+            decide(tx, () -> {
+                if (groupCommitWindow > 0) {
+                    // committed right away so the next writer of its stations goes on, made durable with its group
+                    LOG.info("Executing Commit of transaction " + tx.id + " on " + tx.phaseTwo.size() + " stations, synced with its group");
+                    commit(tx, false, () -> enqueueCommit(tx));
+                } else {
+                    LOG.info("Executing Commit of transaction " + tx.id + " on " + tx.phaseTwo.size() + " stations");
+                    commit(tx);
+                }
+            });
         }
     }
 
-    private synchronized void callbackCheck(Set<SocketIOClient> clients, List<String> exceptions, Callback.NoParamsWithStringError callback, AtomicBoolean triggered, List<String> prev) {
-        if (!triggered.get() && clients.isEmpty()) {
-            triggered.set(true);
-            if (exceptions.isEmpty()) {
-                callback.execute(prev.isEmpty() ? null : prev.toArray(new String[prev.size()]));
-            } else if (!exceptions.isEmpty()) {
-                List<String> all = new ArrayList<>(exceptions);
-                all.addAll(prev);
-                callback.execute(all.toArray(new String[all.size()]));
+    private void decide(Transaction tx, Runnable phaseTwo) {
+        DecisionLog log = decisionLog;
+        if (log != null) {
+            List<String> participants = new ArrayList<>(tx.phaseTwo.size());
+            tx.phaseTwo.forEach((client) -> participants.add(client.getName()));
+            log.commit(tx.id, participants, phaseTwo);
+        } else {
+            phaseTwo.run();
+        }
+    }
+
+    private void ended(long id) {
+        DecisionLog log = decisionLog;
+        if (log != null) log.end(id);
+    }
+
+    // starts out at the wall clock so a restarted coordinator does not count as older than everything it sent before
+    private long tick() {
+        long now = System.currentTimeMillis();
+        return clock.updateAndGet((last) -> Math.max(last + 1, now));
+    }
+
+    private void observe(long stamp) {
+        clock.accumulateAndGet(stamp, Math::max);
+    }
+
+    private long nextId() {
+        long id = transactionIds.incrementAndGet();
+        DecisionLog log = decisionLog;
+        if (log != null) log.reserve(id);
+        return id;
+    }
+
+    private void complete(Transaction tx, boolean committed) {
+        // in-doubt commits stay open in the decision log and are sent again to the stations that did not confirm them
+        if (committed && !tx.inDoubt) ended(tx.id);
+        if (committed && tx.inDoubt && tx.path == TransactionResult.Path.TWO_PHASE && decisionLog != null) unconfirmed(tx);
+        // recorded before the locks go, so the log of a station catching up is in commit order
+        if (committed && tx.catchUp != null && tx.path != TransactionResult.Path.READ_ONLY) tx.catchUp.forEach(CatchUp::record);
+        // a write in doubt may have committed on some stations, so cached rows of its tables go either way
+        QueryCache cache = queryCache;
+        if (cache != null && !tx.read && (committed || tx.inDoubt) && tx.path != TransactionResult.Path.READ_ONLY) cache.invalidate(tx.writes);
+        if (tx.locks != null) tx.locks.release(tx.id);
+        // the next transaction is let in before this one's callback runs
+        if (tx.admission != null) tx.admission.release(tx.ticket, System.nanoTime() - tx.admitted);
+        TransactionResult result = tx.result(committed);
+        inFlight.decrementAndGet();
+        transactionLatency.recordNanos(System.nanoTime() - tx.started);
+        switch (result.getOutcome()) {
+            case COMMITTED:
+                committedTransactions.increment();
+                break;
+            case ABORTED:
+                abortedTransactions.increment();
+                break;
+            case IN_DOUBT:
+                inDoubtTransactions.increment();
+                break;
+        }
+        if (tx.path == TransactionResult.Path.REPLICA_READ) replicaReads.increment();
+        LOG.info("Transaction " + tx.id + " " + result.getOutcome() + " via " + tx.path);
+        tx.callback.execute(tx.exceptions.isEmpty() ? null : tx.exceptions.toArray(new String[tx.exceptions.size()]), result);
+    }
+
+    private void rollback(Transaction tx) {
+        List<Participant> waiting = new ArrayList<>(tx.phaseTwo.size());
+        for (Participant client : tx.phaseTwo) {
+            StationHealth station = health.get(client.getName());
+            if (station == null || station.isHealthy()) {
+                waiting.add(client);
+                continue;
             }
+            // the rollback is applied once the station catches up again, the abort does not have to wait for that
+            client.send("rollback", Maps.of("id", tx.id), tx.timeout, (result) -> {
+                if (result == null) LOG.error("client " + client.getName() + " timed out while rolling back");
+            });
         }
+        send(waiting, "rollback", Maps.of("id", tx.id), tx.timeout, (client, result) -> {
+            if (result == null) {
+                tx.fail(client.getName(), "timed out while rolling back");
+                LOG.error("client " + client.getName() + " timed out while rolling back");
+            } else if (result.containsKey("error")) {
+                LOG.error("client " + client.getName() + " responded with an exception while rolling back: " + result.get("error"));
+                tx.fail(client.getName(), "responded with an exception while rolling back: " + result.get("error"));
+            } else {
+                LOG.info("client " + client.getName() + " response after rollback was ok");
+            }
+        }, () -> complete(tx, false));
     }
 
-    private void rollback(int timeout, Callback.NoParamsWithStringError callback, List<String> prev) {
-        Lock lock = new ReentrantLock();
-        Set<SocketIOClient> clients = fetch();
-        List<String> exceptions = new ArrayList<>();
-        AtomicBoolean triggered = new AtomicBoolean(false);
-        server.getBroadcastOperations().sendEvent("rollback", null, new BroadcastAckCallback<Map>(Map.class, timeout) {
-            public void onClientSuccess(SocketIOClient client, Map resultMap) {
-                lock.lock();
-                Map<String, Object> result = resultMap;
-                if (result == null) result = new HashMap<>();
-                clients.remove(client);
-                if (result.containsKey("error")) {
-                    LOG.error("client " + client.get("name") + " responded with an exception while rolling back: " + result.get("error"));
-                    exceptions.add("client " + client.get("name") + " responded with an exception while rolling back: " + result.get("error"));
-                } else {
-                    LOG.info("client " + client.get("name") + " response after rollback was ok");
+    private void commit(Transaction tx) {
+        commit(tx, true, () -> complete(tx, true));
+    }
+
+    private void commit(Transaction tx, boolean sync, Runnable done) {
+        send(tx.phaseTwo, "commit", sync ? Maps.of("id", tx.id) : Maps.of("id", tx.id, "sync", false), tx.timeout, (client, result) -> {
+            if (result == null) {
+                tx.fail(client.getName(), "timed out while committing");
+                tx.inDoubt = true;
+                LOG.error("client " + client.getName() + " timed out while committing");
+            } else if (result.containsKey("error")) {
+                tx.fail(client.getName(), "responded with an exception while committing: " + result.get("error"));
+                tx.inDoubt = true;
+                LOG.error("client " + client.getName() + " responded with an exception while committing: " + result.get("error"));
+            } else {
+                LOG.info("client " + client.getName() + " response after commit was ok");
+            }
+        }, done);
+    }
+
+    private void send(Collection<Participant> clients, String event, Map<String, Object> data, int timeout, BiConsumer<Participant, Map<String, Object>> response, Runnable done) {
+        send(clients, event, (client) -> data, timeout, false, response, done);
+    }
+
+    // the response handler gets null on timeout and may run concurrently for different stations,
+    // done runs once after the last response and sees everything the handlers did.
+    // adaptive rounds give up on a station once it took clearly longer than it usually does, which is only safe while voting
+    private void send(Collection<Participant> clients, String event, Function<Participant, Map<String, Object>> data, int timeout, boolean adaptive, BiConsumer<Participant, Map<String, Object>> response, Runnable done) {
+        if (clients.isEmpty()) {
+            done.run();
+            return;
+        }
+        AtomicInteger remaining = new AtomicInteger(clients.size());
+        for (Participant client : clients) {
+            StationMetrics station = stationMetrics.get(client.getName());
+            StationHealth stationHealth = health.get(client.getName());
+            long start = System.nanoTime();
+            AtomicBoolean answered = new AtomicBoolean();
+            if (stationHealth != null) stationHealth.started();
+            Consumer<Map<String, Object>> answer = (result) -> {
+                if (!answered.compareAndSet(false, true)) return;
+                if (stationHealth != null) stationHealth.finished();
+                if (station != null) station.record(event, System.nanoTime() - start, result);
+                response.accept(client, result);
+                if (remaining.decrementAndGet() == 0) done.run();
+            };
+            Timeout deadline = null;
+            if (adaptive && stationHealth != null) {
+                long millis = stationHealth.timeout(TimeUnit.SECONDS.toMillis(timeout), minimumTimeout);
+                if (millis < TimeUnit.SECONDS.toMillis(timeout)) {
+                    deadline = timer.newTimeout((t) -> {
+                        if (answered.get()) return;
+                        LOG.error("client " + client.getName() + " did not answer " + event + " within its adaptive timeout of " + millis + "ms");
+                        timedOut(client, stationHealth, start);
+                        answer.accept(null);
+                    }, millis, TimeUnit.MILLISECONDS);
                 }
-                callbackCheck(clients, exceptions, callback, triggered, prev);
-                lock.unlock();
-            }
-
-            public void onClientTimeout(SocketIOClient client) {
-                lock.lock();
-                clients.remove(client);
-                exceptions.add("client " + client.get("name") + " timed out while rolling back");
-                LOG.error("client " + client.get("name") + " timed out while rolling back");
-                callbackCheck(clients, exceptions, callback, triggered, prev);
-                lock.unlock();
-            }
-        });
-    }
-
-    private void commit(int timeout, Callback.NoParamsWithStringError callback, List<String> prev) {
-        Lock lock = new ReentrantLock();
-        Set<SocketIOClient> clients = fetch();
-        List<String> exceptions = new ArrayList<>();
-        AtomicBoolean triggered = new AtomicBoolean(false);
-        server.getBroadcastOperations().sendEvent("commit", null, new BroadcastAckCallback<Map>(Map.class, timeout) {
-            public void onClientSuccess(SocketIOClient client, Map resultMap) {
-                lock.lock();
-                Map<String, Object> result = resultMap;
-                if (result == null) result = new HashMap<>();
-                clients.remove(client);
-                if (result.containsKey("error")) {
-                    exceptions.add("client " + client.get("name") + " responded with an exception while committing: " + result.get("error"));
-                    LOG.error("client " + client.get("name") + " responded with an exception while committing: " + result.get("error"));
-                } else {
-                    LOG.info("client " + client.get("name") + " response after commit was ok");
+            }
+            Timeout cancel = deadline;
+            client.send(event, data.apply(client), timeout, (result) -> {
+                if (cancel != null) cancel.cancel();
+                if (stationHealth != null) {
+                    if (result != null) {
+                        if (adaptive) stationHealth.sample(System.nanoTime() - start);
+                        responded(client, stationHealth);
+                    } else if (!answered.get()) {
+                        timedOut(client, stationHealth, start);
+                    }
+                }
+                answer.accept(result);
+            });
+        }
+    }
+
+    private void responded(Participant client, StationHealth station) {
+        if (station.responded()) LOG.info("Station " + client.getName() + " responded again and is healthy");
+    }
+
+    private void timedOut(Participant client, StationHealth station, long sent) {
+        StationHealth.State state = station.timedOut(sent);
+        LOG.error("Station " + client.getName() + " is " + state + " after failing to answer");
+        probe(client, station, state == StationHealth.State.QUARANTINED ? PROBE_INTERVAL : 0);
+    }
+
+    // keeps probing a station that stopped answering until it does again or disconnects
+    private void probe(Participant client, StationHealth station, long delay) {
+        if (!station.startProbe()) return;
+        timer.newTimeout((t) -> {
+            if (health.get(client.getName()) != station) {
+                station.probeDone();
+                return;
+            }
+            long sent = System.nanoTime();
+            client.send("probe", new HashMap<>(), PROBE_TIMEOUT, (result) -> {
+                station.probeDone();
+                if (result != null && !result.containsKey("error")) {
+                    responded(client, station);
+                    return;
                 }
-                callbackCheck(clients, exceptions, callback, triggered, prev);
-                lock.unlock();
+                StationHealth.State state = station.timedOut(sent);
+                if (state == StationHealth.State.QUARANTINED) LOG.error("Station " + client.getName() + " still does not answer probes and stays quarantined");
+                probe(client, station, PROBE_INTERVAL);
+            });
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    public void setMinimumTimeout(int millis) {
+        if (millis < 1) throw new IllegalArgumentException("minimum timeout must be positive");
+        minimumTimeout = millis;
+    }
+
+    public int getMinimumTimeout() {
+        return minimumTimeout;
+    }
+
+    // consecutive unanswered requests or probes after which a station is quarantined instead of just unhealthy
+    public void setQuarantineAfter(int failures) {
+        if (failures < 1) throw new IllegalArgumentException("quarantine threshold must be positive");
+        quarantineAfter = failures;
+    }
+
+    public int getQuarantineAfter() {
+        return quarantineAfter;
+    }
+
+    // null admits every transaction right away, which is the default
+    public void setAdmissionController(AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    // null sends reads to every station a write would reach
+    public void setReadBalancing(ReadBalancing readBalancing) {
+        this.readBalancing = readBalancing;
+    }
+
+    public ReadBalancing getReadBalancing() {
+        return readBalancing;
+    }
+
+    public Map<String, String> getStationHealth() {
+        Map<String, String> states = new TreeMap<>();
+        health.forEach((name, station) -> states.put(name, station.getState().name()));
+        return states;
+    }
+
+    // a station joins with its own database, or asks for a copy of a peer's, resuming one it did not finish if that is still around
+    private void onJoin(Participant participant, Map<String, Object> data, Consumer<Map<String, Object>> reply) {
+        String name = participant.getName();
+        Object managers = data.get("managers");
+        if (managers instanceof Number && ((Number) managers).intValue() > 1) shared(name);
+        CatchUp catchUp = catchingUp.get(name);
+        if (!Boolean.TRUE.equals(data.get("snapshot"))) {
+            if (catchUp != null && catchingUp.remove(name, catchUp)) dropSnapshot(catchUp);
+            LOG.info("Station " + name + " joined with its own database");
+            reply.accept(new HashMap<>());
+            return;
+        }
+        Object resume = data.get("resume");
+        if (catchUp != null && catchUp.phase == CatchUp.Phase.COPYING && resume instanceof Number && ((Number) resume).longValue() == catchUp.snapshot && !catchUp.isOverflowed()) {
+            LOG.info("Station " + name + " resumes copying snapshot " + catchUp.snapshot + " of " + catchUp.donor);
+            reply.accept(Maps.of("snapshot", catchUp.snapshot, "donor", catchUp.donor, "resumed", true));
+            return;
+        }
+        if (catchUp != null) dropSnapshot(catchUp);
+        CatchUp fresh = new CatchUp(participant, catchUpLimit);
+        catchingUp.put(name, fresh);
+        snapshot(fresh, (String) data.get("donor"), reply);
+    }
+
+    // other coordinators commit on the station without this manager knowing, so cached rows could be stale for good
+    private synchronized void shared(String station) {
+        if (shared) return;
+        shared = true;
+        LOG.info("Station " + station + " is shared with other managers");
+        if (queryCache != null) {
+            LOG.error("Turned the query cache off, station " + station + " is shared with other managers whose writes it would miss");
+            queryCache = null;
+        }
+    }
+
+    public synchronized boolean isShared() {
+        return shared;
+    }
+
+    private void snapshot(CatchUp catchUp, String requested, Consumer<Map<String, Object>> reply) {
+        String donor = requested;
+        if (donor == null) {
+            for (String station : getStations()) {
+                StationHealth stationHealth = health.get(station);
+                if (!station.equals(catchUp.station) && (stationHealth == null || stationHealth.isHealthy())) {
+                    donor = station;
+                    break;
+                }
+            }
+            if (donor == null) {
+                // nothing to copy, so its own database is what everyone else starts from
+                LOG.info("No station to copy for " + catchUp.station + ", it joins with its own database");
+                catchingUp.remove(catchUp.station, catchUp);
+                reply.accept(new HashMap<>());
+                return;
+            }
+        } else if (donor.equals(catchUp.station) || !getStations().contains(donor)) {
+            reply.accept(Maps.of("error", "station " + donor + " can not be copied, it is not connected or catching up itself"));
+            return;
+        }
+        LockManager locks = lockManager;
+        if (locks == null) {
+            reply.accept(Maps.of("error", "copying a station needs the lock manager"));
+            return;
+        }
+        long id = snapshotIds.incrementAndGet();
+        String from = donor;
+        catchUp.snapshot = id;
+        catchUp.donor = from;
+        catchUp.phase = CatchUp.Phase.COPYING;
+        fence(locks, catchUp, (release) -> {
+            catchUp.startRecording();
+            Participant client = clients.get(from);
+            if (client == null) {
+                release.run();
+                abandon(catchUp);
+                reply.accept(Maps.of("error", "station " + from + " disconnected"));
+                return;
+            }
+            // the donor answers once its copy is pinned to this point, taking the copy does not hold anyone up
+            client.send("snapshot", Maps.of("snapshot", id), SNAPSHOT_TIMEOUT, (result) -> {
+                release.run();
+                if (result == null || result.containsKey("error")) {
+                    String error = result == null ? "timed out" : String.valueOf(result.get("error"));
+                    LOG.error("Station " + from + " could not take snapshot " + id + " for " + catchUp.station + ": " + error);
+                    abandon(catchUp);
+                    reply.accept(Maps.of("error", "station " + from + " could not take a snapshot: " + error));
+                    return;
+                }
+                LOG.info("Station " + from + " took snapshot " + id + " for " + catchUp.station);
+                reply.accept(Maps.of("snapshot", id, "donor", from));
+            });
+        });
+    }
+
+    private void onSnapshotChunk(Participant participant, Map<String, Object> data, Consumer<Map<String, Object>> reply) {
+        CatchUp catchUp = copying(participant, data, reply);
+        if (catchUp == null) return;
+        Participant donor = clients.get(catchUp.donor);
+        if (donor == null) {
+            reply.accept(Maps.of("error", "station " + catchUp.donor + " is not connected"));
+            return;
+        }
+        int length = Math.min(MAX_SNAPSHOT_CHUNK, ((Number) data.get("length")).intValue());
+        donor.send("snapshotChunk", Maps.of("snapshot", catchUp.snapshot, "offset", data.get("offset"), "length", length), SNAPSHOT_TIMEOUT, (result) -> {
+            reply.accept(result == null ? Maps.of("error", "station " + catchUp.donor + " timed out") : result);
+        });
+    }
+
+    private void onSnapshotRestored(Participant participant, Map<String, Object> data, Consumer<Map<String, Object>> reply) {
+        CatchUp catchUp = copying(participant, data, reply);
+        if (catchUp == null) return;
+        catchUp.phase = CatchUp.Phase.REPLAYING;
+        dropSnapshot(catchUp);
+        LOG.info("Station " + catchUp.station + " restored snapshot " + catchUp.snapshot + ", replaying what committed since");
+        replay(catchUp, null, reply);
+    }
+
+    private CatchUp copying(Participant participant, Map<String, Object> data, Consumer<Map<String, Object>> reply) {
+        CatchUp catchUp = catchingUp.get(participant.getName());
+        Object id = data.get("snapshot");
+        if (catchUp == null || catchUp.phase != CatchUp.Phase.COPYING || !(id instanceof Number) || ((Number) id).longValue() != catchUp.snapshot) {
+            reply.accept(Maps.of("error", "snapshot " + id + " is no longer available"));
+            return null;
+        }
+        if (catchUp.isOverflowed()) {
+            LOG.error("Station " + catchUp.station + " fell more than " + catchUpLimit + " transactions behind while copying");
+            abandon(catchUp);
+            reply.accept(Maps.of("error", "fell too far behind while copying"));
+            return null;
+        }
+        return catchUp;
+    }
+
+    // replays the log until it is empty, the rest then while nothing commits, so the station joins exactly where its peers are
+    private void replay(CatchUp catchUp, Runnable release, Consumer<Map<String, Object>> reply) {
+        Consumer<String> failed = (error) -> {
+            if (release != null) release.run();
+            LOG.error("Station " + catchUp.station + " could not catch up: " + error);
+            abandon(catchUp);
+            reply.accept(Maps.of("error", "could not catch up: " + error));
+        };
+        if (catchUp.isOverflowed()) {
+            failed.accept("fell more than " + catchUpLimit + " transactions behind");
+            return;
+        }
+        List<CatchUp.Replay> pending = catchUp.drain();
+        if (!pending.isEmpty()) {
+            LOG.info("Replaying " + pending.size() + " transactions on " + catchUp.station);
+            replay(catchUp, pending.iterator(), () -> replay(catchUp, release, reply), failed);
+            return;
+        }
+        if (release == null) {
+            LockManager locks = lockManager;
+            if (locks == null) {
+                failed.accept("the lock manager was turned off");
+                return;
             }
+            fence(locks, catchUp, (fenced) -> replay(catchUp, fenced, reply));
+            return;
+        }
+        if (!catchingUp.remove(catchUp.station, catchUp)) {
+            failed.accept("it rejoined meanwhile");
+            return;
+        }
+        release.run();
+        LOG.info("Station " + catchUp.station + " caught up and joined");
+        reply.accept(new HashMap<>());
+    }
+
+    private void replay(CatchUp catchUp, Iterator<CatchUp.Replay> pending, Runnable done, Consumer<String> failed) {
+        if (!pending.hasNext()) {
+            done.run();
+            return;
+        }
+        CatchUp.Replay next = pending.next();
+        catchUp.participant.send(next.event, next.data, SNAPSHOT_TIMEOUT, (result) -> {
+            if (result == null) {
+                failed.accept("timed out replaying transaction " + next.data.get("id"));
+            } else if (result.containsKey("error")) {
+                failed.accept("transaction " + next.data.get("id") + " failed: " + result.get("error"));
+            } else {
+                replay(catchUp, pending, done, failed);
+            }
+        });
+    }
+
+    // every transaction writing the station's rows holds its station's fence until it completed, catching up or not, and every one
+    // writing the donor's holds the donor's, which covers those routed before the station connected. while both are held none of them is running
+    private void fence(LockManager locks, CatchUp catchUp, Consumer<Runnable> granted) {
+        long id = fenceIds.decrementAndGet();
+        locks.acquire(id, new Locks().fence(catchUp.station).fence(catchUp.donor), () -> granted.accept(() -> locks.release(id)));
+    }
+
+    // the station stays out of transactions until it asks for a new copy
+    private void abandon(CatchUp catchUp) {
+        dropSnapshot(catchUp);
+        catchingUp.replace(catchUp.station, catchUp, new CatchUp(catchUp.participant, catchUpLimit));
+    }
+
+    private void dropSnapshot(CatchUp catchUp) {
+        Participant donor = catchUp.donor == null ? null : clients.get(catchUp.donor);
+        if (donor == null) return;
+        donor.send("snapshotDone", Maps.of("snapshot", catchUp.snapshot), SNAPSHOT_TIMEOUT, (result) -> {
+            if (result == null || result.containsKey("error")) LOG.error("Station " + catchUp.donor + " could not drop snapshot " + catchUp.snapshot);
+        });
+    }
+
+    // transactions a station may fall behind while it copies a peer before it has to start over
+    public void setCatchUpLimit(int transactions) {
+        if (transactions < 1) throw new IllegalArgumentException("catch up limit must be positive");
+        catchUpLimit = transactions;
+    }
+
+    public int getCatchUpLimit() {
+        return catchUpLimit;
+    }
+
+    public Map<String, String> getCatchingUp() {
+        Map<String, String> phases = new TreeMap<>();
+        catchingUp.forEach((name, catchUp) -> phases.put(name, catchUp.phase.name()));
+        return phases;
+    }
+
+    public void setDecisionLog(DecisionLog log) {
+        long reserved = log.getRecoveredReserved();
+        if (reserved != 0 && !TransactionIds.belongsTo(reserved, coordinator)) {
+            throw new IllegalArgumentException("the decision log holds transactions of coordinator " + TransactionIds.coordinator(reserved) + ", not " + coordinator);
+        }
+        synchronized (recovered) {
+            log.getRecovered().forEach((id, stations) -> recovered.put(id, new LinkedHashSet<>(stations)));
+            recoveredBefore = Math.max(recoveredBefore, log.getRecoveredReserved());
+        }
+        transactionIds.accumulateAndGet(log.getRecoveredReserved(), Math::max);
+        decisionLog = log;
+        fetch().forEach(this::recover);
+    }
+
+    public DecisionLog getDecisionLog() {
+        return decisionLog;
+    }
+
+    public int getCoordinator() {
+        return coordinator;
+    }
+
+    // the commit is resent to the participants that failed to confirm it, right away and whenever they connect again
+    private void unconfirmed(Transaction tx) {
+        Set<Long> stations = new LinkedHashSet<>();
+        for (Participant client : tx.phaseTwo) {
+            if (tx.stationErrors.containsKey(client.getName())) stations.add(DecisionLog.station(client.getName()));
+        }
+        if (stations.isEmpty()) return;
+        synchronized (recovered) {
+            recovered.put(tx.id, stations);
+        }
+        for (Participant client : tx.phaseTwo) {
+            Participant connected = clients.get(client.getName());
+            if (tx.stationErrors.containsKey(client.getName()) && connected != null) recover(connected);
+        }
+    }
 
-            public void onClientTimeout(SocketIOClient client) {
-                lock.lock();
-                clients.remove(client);
-                exceptions.add("client " + client.get("name") + " timed out while committing");
-                LOG.error("client " + client.get("name") + " timed out while committing");
-                callbackCheck(clients, exceptions, callback, triggered, prev);
-                lock.unlock();
+    // each station only gets the commits it has not confirmed yet. everything else of the coordinator it holds from
+    // before the restart is rolled back, commits it confirmed end in the decision log once every participant did
+    private void recover(Participant client) {
+        long station = DecisionLog.station(client.getName());
+        List<Long> commit = new ArrayList<>();
+        long before;
+        synchronized (recovered) {
+            recovered.forEach((id, stations) -> {
+                if (stations.contains(station)) commit.add(id);
+            });
+            before = recoveredBefore;
+        }
+        if (before == 0 && commit.isEmpty()) return;
+        LOG.info("Sending recovery with " + commit.size() + " in-doubt commits to " + client.getName());
+        // a station connected to several coordinators only hands this one its own transactions
+        client.send("recover", Maps.of("commit", commit, "before", before, "coordinator", coordinator), 30, (result) -> {
+            if (result == null) {
+                LOG.error("client " + client.getName() + " timed out while recovering");
+            } else if (result.containsKey("error")) {
+                LOG.error("client " + client.getName() + " responded with an exception while recovering: " + result.get("error"));
+            } else {
+                LOG.info("client " + client.getName() + " response after recovery was ok");
+                confirmed(station, commit);
             }
         });
     }
 
+    private void confirmed(long station, List<Long> commit) {
+        List<Long> done = new ArrayList<>();
+        synchronized (recovered) {
+            for (long id : commit) {
+                Set<Long> stations = recovered.get(id);
+                if (stations == null) continue;
+                stations.remove(station);
+                if (stations.isEmpty()) {
+                    recovered.remove(id);
+                    done.add(id);
+                }
+            }
+        }
+        if (!done.isEmpty()) LOG.info("Every participant confirmed " + done.size() + " in-doubt commits");
+        done.forEach(this::ended);
+    }
+
+    // with a window the stations commit as soon as the votes are in but leave the sync to the group commit at the end of
+    // the window, which makes every commit of it durable with one sync per station before their callbacks run
+    public synchronized void setGroupCommitWindow(int millis) {
+        if (millis < 0) throw new IllegalArgumentException("group commit window must not be negative");
+        if (millis > 0 && groupCommitScheduler == null) {
+            groupCommitScheduler = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+                Thread thread = new Thread(runnable, "group-commit");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        groupCommitWindow = millis;
+        LOG.info(millis > 0 ? "Group commit enabled with a window of " + millis + "ms" : "Group commit disabled");
+    }
+
+    public int getGroupCommitWindow() {
+        return groupCommitWindow;
+    }
+
+    private void enqueueCommit(Transaction tx) {
+        pendingCommits.add(tx);
+        if (flushScheduled.compareAndSet(false, true)) {
+            groupCommitScheduler.schedule(this::flushCommits, groupCommitWindow, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flushCommits() {
+        // cleared before draining, a commit queued meanwhile is either drained now or schedules the next flush
+        flushScheduled.set(false);
+        List<Transaction> group = new ArrayList<>();
+        Transaction next;
+        while ((next = pendingCommits.poll()) != null) group.add(next);
+        if (group.isEmpty()) return;
+        Map<Participant, List<Transaction>> byClient = new HashMap<>();
+        int timeout = 0;
+        for (Transaction tx : group) {
+            for (Participant client : tx.phaseTwo) {
+                byClient.computeIfAbsent(client, (c) -> new ArrayList<>()).add(tx);
+            }
+            timeout = Math.max(timeout, tx.timeout);
+        }
+        LOG.info("Syncing group of " + group.size() + " transactions on " + byClient.size() + " stations");
+        send(byClient.keySet(), "commit", (client) -> {
+            List<Long> ids = new ArrayList<>();
+            for (Transaction tx : byClient.get(client)) ids.add(tx.id);
+            return Maps.of("ids", ids);
+        }, timeout, false, (client, result) -> {
+            List<Transaction> transactions = byClient.get(client);
+            if (result == null) {
+                LOG.error("client " + client.getName() + " timed out while group committing");
+                for (Transaction tx : transactions) {
+                    tx.fail(client.getName(), "timed out while committing");
+                    tx.inDoubt = true;
+                }
+                return;
+            }
+            Map<?, ?> errors = result.containsKey("errors") ? (Map<?, ?>) result.get("errors") : Collections.emptyMap();
+            for (Transaction tx : transactions) {
+                Object error = result.containsKey("error") ? result.get("error") : errors.get(String.valueOf(tx.id));
+                if (error != null) {
+                    LOG.error("client " + client.getName() + " responded with an exception while committing transaction " + tx.id + ": " + error);
+                    tx.fail(client.getName(), "responded with an exception while committing: " + error);
+                    tx.inDoubt = true;
+                }
+            }
+            LOG.info("client " + client.getName() + " response after group commit of " + transactions.size() + " transactions was " + (errors.isEmpty() && !result.containsKey("error") ? "ok" : "not ok"));
+        }, () -> group.forEach((tx) -> complete(tx, true)));
+    }
+
     public void onDisconnect(SocketIOClient client) {
-        clients.remove(client.get("name"));
-        LOG.info("Client " + client.get("name") + " disconnected!");
+        disconnected(clients.get(client.<String>get("name")));
+    }
+
+    private void disconnected(Participant participant) {
+        if (participant == null) return;
+        if (clients.remove(participant.getName(), participant)) health.remove(participant.getName());
+        // a copy in progress is kept, the station resumes it when it reconnects
+        CatchUp catchUp = catchingUp.get(participant.getName());
+        if (catchUp != null && catchUp.participant == participant && catchUp.phase == CatchUp.Phase.JOINING) catchingUp.remove(participant.getName(), catchUp);
+        LOG.info("Client " + participant.getName() + " disconnected!");
+    }
+
+    private void received(Participant participant, String event, Map<String, Object> data, Consumer<Map<String, Object>> reply) {
+        if (event.equals("rows")) {
+            onRows(participant, data, reply);
+        } else if (event.equals("join")) {
+            onJoin(participant, data, reply != null ? reply : (response) -> {
+            });
+        } else if (event.equals("snapshotChunk") && reply != null) {
+            onSnapshotChunk(participant, data, reply);
+        } else if (event.equals("snapshotRestored") && reply != null) {
+            onSnapshotRestored(participant, data, reply);
+        } else {
+            LOG.error("Recieved unknown event " + event + " from " + participant.getName());
+        }
     }
 
     public boolean isAuthorized(HandshakeData data) {
@@ -177,8 +1491,44 @@ public class Manager implements AuthorizationListener {
         return !(name == null || name.isEmpty()) && !clients.containsKey(name);
     }
 
-    private Set<SocketIOClient> fetch() {
-        return new HashSet<>(server.getAllClients());
+    // the stations that take part in transactions, not the ones still joining or catching up
+    public Set<String> getStations() {
+        Set<String> stations = new TreeSet<>(clients.keySet());
+        stations.removeAll(catchingUp.keySet());
+        return stations;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public synchronized void close() {
+        metrics.close();
+        if (server != null) server.stop();
+        if (binaryServer != null) binaryServer.stop();
+        if (groupCommitScheduler != null) groupCommitScheduler.shutdown();
+        timer.stop();
+        LOG.info("Transaction Manager stopped");
+    }
+
+    private List<Participant> fetch() {
+        return new ArrayList<>(clients.values());
+    }
+
+    // stations catching up are routed to while they are disconnected as well, so their log misses nothing that commits meanwhile
+    private List<Participant> targets() {
+        List<Participant> targets = fetch();
+        catchingUp.forEach((name, catchUp) -> {
+            if (catchUp.phase != CatchUp.Phase.JOINING && !clients.containsKey(name)) targets.add(catchUp.participant);
+        });
+        return targets;
+    }
+
+    private Participant target(String name) {
+        Participant client = clients.get(name);
+        if (client != null) return client;
+        CatchUp catchUp = catchingUp.get(name);
+        return catchUp == null || catchUp.phase == CatchUp.Phase.JOINING ? null : catchUp.participant;
     }
 
 }
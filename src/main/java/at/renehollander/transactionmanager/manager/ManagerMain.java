@@ -1,17 +1,29 @@
 package at.renehollander.transactionmanager.manager;
 
+import at.renehollander.transactionmanager.Transport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Scanner;
-import java.util.stream.Stream;
+import java.util.concurrent.TimeUnit;
 
 public class ManagerMain {
 
     private static Logger LOG = LoggerFactory.getLogger(ManagerMain.class);
 
-    public static void main(String[] args) throws InterruptedException {
-        Manager manager = new Manager(Integer.parseInt(args[0]));
+    public static void main(String[] args) throws InterruptedException, IOException {
+        Transport transport = args.length > 3 ? Transport.parse(args[3]) : Transport.SOCKET_IO;
+        // coordinators sharing stations are numbered, each with its own decision log
+        int coordinator = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+        Manager manager = new Manager(Integer.parseInt(args[0]), transport, coordinator);
+        if (args.length > 1 && !args[1].equals("-")) manager.setDecisionLog(new DecisionLog(new File(args[1])));
+        if (args.length > 2 && !args[2].equals("-")) manager.setPartitionMap(PartitionMap.load(new File(args[2])));
+        // milliseconds of commits the stations sync together
+        if (args.length > 5) manager.setGroupCommitWindow(Integer.parseInt(args[5]));
+
+        manager.getMetrics().startReporting(60, TimeUnit.SECONDS);
 
         Thread.sleep(200);
 
@@ -19,14 +31,17 @@ public class ManagerMain {
         LOG.info("Example: CREATE TABLE test(id INTEGER PRIMARY KEY, name STRING)");
         LOG.info("Example: INSERT INTO test VALUES(1, 'Hello World')");
 
+        Session session = manager.session(64);
         Scanner sc = new Scanner(System.in);
         while (true) {
             String line = sc.nextLine();
-            manager.execute(30, line, (err) -> {
+            session.execute(30, line).whenComplete((result, err) -> {
                 if (err != null) {
-                    Stream.of(err).forEach(LOG::error);
+                    LOG.error("Could not execute statement " + line, err);
+                    return;
                 }
-                LOG.info("Finished statement " + line);
+                result.getErrors().forEach(LOG::error);
+                LOG.info("Finished statement " + line + ": " + result.getOutcome());
             });
         }
     }
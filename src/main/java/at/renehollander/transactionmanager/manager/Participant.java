@@ -0,0 +1,14 @@
+package at.renehollander.transactionmanager.manager;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+// a connected station, independent of the transport it uses
+public interface Participant {
+
+    String getName();
+
+    // the response is null if the station did not answer within the timeout
+    void send(String event, Map<String, Object> data, int timeout, Consumer<Map<String, Object>> response);
+
+}
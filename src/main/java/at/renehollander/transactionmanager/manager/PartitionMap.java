@@ -0,0 +1,214 @@
+package at.renehollander.transactionmanager.manager;
+
+import at.renehollander.transactionmanager.Maps;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// changes are serialized, lookups run without a lock since every transaction routes through them
+public class PartitionMap {
+
+    private final Map<String, Table> tables = new ConcurrentHashMap<>();
+
+    public synchronized PartitionMap hash(String table, String keyColumn, int replicas, String... stations) {
+        if (stations.length == 0) throw new IllegalArgumentException("at least one station is required");
+        if (replicas < 1 || replicas > stations.length) throw new IllegalArgumentException("replicas must be between 1 and " + stations.length);
+        Table partitioned = table(table, keyColumn);
+        if (!partitioned.ranges.isEmpty()) throw new IllegalArgumentException("table " + table + " is already range partitioned");
+        partitioned.replicas = replicas;
+        partitioned.hashStations = Arrays.asList(stations);
+        return this;
+    }
+
+    public synchronized PartitionMap range(String table, String keyColumn, long from, long to, String... stations) {
+        if (stations.length == 0) throw new IllegalArgumentException("at least one station is required");
+        if (from >= to) throw new IllegalArgumentException("empty range " + from + " to " + to);
+        Table partitioned = table(table, keyColumn);
+        if (partitioned.hashStations != null) throw new IllegalArgumentException("table " + table + " is already hash partitioned");
+        for (Range range : partitioned.ranges) {
+            if (from < range.to && range.from < to) throw new IllegalArgumentException("range " + from + " to " + to + " overlaps " + range.from + " to " + range.to);
+        }
+        partitioned.ranges.add(new Range(from, to, Arrays.asList(stations)));
+        return this;
+    }
+
+    private Table table(String table, String keyColumn) {
+        Table partitioned = tables.computeIfAbsent(table.toLowerCase(Locale.ROOT), (t) -> new Table(keyColumn));
+        if (!partitioned.keyColumn.equalsIgnoreCase(keyColumn)) throw new IllegalArgumentException("table " + table + " is already partitioned by " + partitioned.keyColumn);
+        return partitioned;
+    }
+
+    public boolean isPartitioned(String table) {
+        return table != null && tables.containsKey(table.toLowerCase(Locale.ROOT));
+    }
+
+    public String getKeyColumn(String table) {
+        Table partitioned = table == null ? null : tables.get(table.toLowerCase(Locale.ROOT));
+        return partitioned == null ? null : partitioned.keyColumn;
+    }
+
+    // null means the statement is not restricted to a partition and has to reach every station
+    public Set<String> owners(StatementInfo info) {
+        Table table = info.getTable() == null ? null : tables.get(info.getTable());
+        if (table == null) return null;
+        List<String> keys = info.keys(table.keyColumn);
+        if (keys == null) return table.stations();
+        Set<String> owners = new LinkedHashSet<>();
+        for (String key : keys) {
+            owners.addAll(table.owners(key));
+        }
+        return owners;
+    }
+
+    // the stations that hold every row the statement touches, null means any station does as the table is not partitioned
+    public Set<String> holders(StatementInfo info) {
+        Table table = info.getTable() == null ? null : tables.get(info.getTable());
+        if (table == null) return null;
+        List<String> keys = info.keys(table.keyColumn);
+        if (keys == null || keys.isEmpty()) return new LinkedHashSet<>();
+        Set<String> holders = new LinkedHashSet<>(table.owners(keys.get(0)));
+        for (String key : keys) {
+            holders.retainAll(table.owners(key));
+        }
+        return holders;
+    }
+
+    public Set<String> owners(String table, String key) {
+        Table partitioned = tables.get(table.toLowerCase(Locale.ROOT));
+        if (partitioned == null) return null;
+        return new LinkedHashSet<>(partitioned.owners(key));
+    }
+
+    // picks one connected station per partition and the row filter it needs so replicas do not return the same rows twice,
+    // null means the table is not partitioned
+    public Map<String, Map<String, Object>> scatter(StatementInfo info, Collection<String> connected) {
+        Table table = info.getTable() == null ? null : tables.get(info.getTable());
+        if (table == null) return null;
+        Map<String, Map<String, Object>> targets = new LinkedHashMap<>();
+        List<String> keys = info.keys(table.keyColumn);
+        if (keys != null) {
+            for (String key : keys) {
+                targets.put(first(table.owners(key), connected, "key " + key), null);
+            }
+            return targets;
+        }
+        Map<String, List<Object>> assigned = new LinkedHashMap<>();
+        Map<String, Integer> held = new HashMap<>();
+        if (table.hashStations != null) {
+            int size = table.hashStations.size();
+            for (int slot = 0; slot < size; slot++) {
+                List<String> owners = table.slot(slot);
+                owners.forEach((station) -> held.merge(station, 1, Integer::sum));
+                assigned.computeIfAbsent(first(owners, connected, "hash slot " + slot), (s) -> new ArrayList<>()).add(slot);
+            }
+        } else {
+            for (Range range : table.ranges) {
+                range.stations.forEach((station) -> held.merge(station, 1, Integer::sum));
+                assigned.computeIfAbsent(first(range.stations, connected, "range " + range.from + " to " + range.to), (s) -> new ArrayList<>()).add(Arrays.asList(range.from, range.to));
+            }
+        }
+        assigned.forEach((station, partitions) -> {
+            if (partitions.size() == held.get(station)) {
+                targets.put(station, null);
+            } else if (table.hashStations != null) {
+                targets.put(station, Maps.of("column", table.keyColumn, "modulus", table.hashStations.size(), "slots", partitions));
+            } else {
+                targets.put(station, Maps.of("column", table.keyColumn, "ranges", partitions));
+            }
+        });
+        return targets;
+    }
+
+    private static String first(List<String> owners, Collection<String> connected, String partition) {
+        for (String owner : owners) {
+            if (connected.contains(owner)) return owner;
+        }
+        throw new IllegalStateException("no station holding " + partition + " is connected");
+    }
+
+    // one rule per line: "hash <table> <key column> <replicas> <station>..." or "range <table> <key column> <from> <to> <station>..."
+    public static PartitionMap load(File file) throws IOException {
+        PartitionMap map = new PartitionMap();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] parts = line.split("\\s+");
+            if (parts[0].equals("hash") && parts.length >= 5) {
+                map.hash(parts[1], parts[2], Integer.parseInt(parts[3]), Arrays.copyOfRange(parts, 4, parts.length));
+            } else if (parts[0].equals("range") && parts.length >= 6) {
+                map.range(parts[1], parts[2], Long.parseLong(parts[3]), Long.parseLong(parts[4]), Arrays.copyOfRange(parts, 5, parts.length));
+            } else {
+                throw new IOException("Invalid partition rule: " + line);
+            }
+        }
+        return map;
+    }
+
+    private static class Table {
+        private final String keyColumn;
+        private volatile List<String> hashStations;
+        private volatile int replicas;
+        private final List<Range> ranges = new CopyOnWriteArrayList<>();
+
+        private Table(String keyColumn) {
+            this.keyColumn = keyColumn;
+        }
+
+        private Set<String> stations() {
+            Set<String> stations = new LinkedHashSet<>();
+            if (hashStations != null) stations.addAll(hashStations);
+            for (Range range : ranges) stations.addAll(range.stations);
+            return stations;
+        }
+
+        private List<String> slot(int first) {
+            List<String> owners = new ArrayList<>(replicas);
+            for (int i = 0; i < replicas; i++) {
+                owners.add(hashStations.get((first + i) % hashStations.size()));
+            }
+            return owners;
+        }
+
+        private List<String> owners(String key) {
+            if (hashStations != null) return slot(Math.floorMod(key.hashCode(), hashStations.size()));
+            long value;
+            try {
+                value = Long.parseLong(key);
+            } catch (NumberFormatException e) {
+                return Collections.emptyList();
+            }
+            for (Range range : ranges) {
+                if (value >= range.from && value < range.to) return range.stations;
+            }
+            return Collections.emptyList();
+        }
+    }
+
+    private static class Range {
+        private final long from;
+        private final long to;
+        private final List<String> stations;
+
+        private Range(long from, long to, List<String> stations) {
+            this.from = from;
+            this.to = to;
+            this.stations = stations;
+        }
+    }
+
+}
@@ -0,0 +1,336 @@
+package at.renehollander.transactionmanager.manager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+// rows of queries the caller read to the end, kept until a committed write touches one of the tables they read.
+// entries are evicted least recently used first, but a new one only replaces them if it was asked for more often (tinylfu)
+public class QueryCache {
+
+    // functions that return something else on every call, queries using them are never cached
+    private static final Pattern VOLATILE = Pattern.compile("\\b(?:random|randomblob|changes|total_changes|last_insert_rowid)\\s*\\(|'now'|\\bcurrent_(?:date|time|timestamp)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SELECT = Pattern.compile("^\\s*(?:SELECT|WITH)\\b", Pattern.CASE_INSENSITIVE);
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, List<Key>> readers = new HashMap<>();
+    private final Map<String, Long> versions = new HashMap<>();
+    private final FrequencySketch sketch = new FrequencySketch();
+    private long version;
+    private long cleared;
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public QueryCache(long maxBytes) {
+        if (maxBytes < 1) throw new IllegalArgumentException("cache size must be positive");
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.max(1, maxBytes / 4);
+    }
+
+    // null if the query can not be cached
+    Key key(String sql, List<Object> parameters, Comparator<List<Object>> order) {
+        if (!SELECT.matcher(sql).find() || VOLATILE.matcher(sql).find()) return null;
+        Set<String> tables = StatementInfo.reads(sql);
+        if (tables.isEmpty()) return null;
+        return new Key(normalize(sql), parameters == null ? Collections.emptyList() : new ArrayList<>(parameters), order, tables);
+    }
+
+    synchronized Entry get(Key key) {
+        sketch.increment(key.hashCode());
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return entry;
+    }
+
+    // taken before the query is sent, so rows read before a write committed are not stored after it invalidated the tables
+    synchronized Fill fill(Key key) {
+        Map<String, Long> seen = new HashMap<>();
+        for (String table : key.tables) {
+            seen.put(table, versions.getOrDefault(table, 0L));
+        }
+        return new Fill(key, seen, cleared);
+    }
+
+    private synchronized void put(Fill fill, List<String> columns) {
+        if (fill.cleared != cleared) return;
+        for (Map.Entry<String, Long> seen : fill.versions.entrySet()) {
+            if (!seen.getValue().equals(versions.getOrDefault(seen.getKey(), 0L))) return;
+        }
+        Key key = fill.key;
+        // the key and the entry itself cost something even without rows
+        long size = fill.bytes + 64 + 2L * key.sql.length();
+        Entry entry = new Entry(columns, Collections.unmodifiableList(fill.rows), size);
+        Entry previous = entries.get(key);
+        long needed = bytes + entry.bytes - (previous == null ? 0 : previous.bytes) - maxBytes;
+        List<Key> victims = new ArrayList<>();
+        if (needed > 0) {
+            int frequency = sketch.frequency(key.hashCode());
+            long freed = 0;
+            for (Map.Entry<Key, Entry> eldest : entries.entrySet()) {
+                if (freed >= needed) break;
+                if (eldest.getKey().equals(key)) continue;
+                if (sketch.frequency(eldest.getKey().hashCode()) > frequency) {
+                    rejections.incrementAndGet();
+                    return;
+                }
+                victims.add(eldest.getKey());
+                freed += eldest.getValue().bytes;
+            }
+        }
+        for (Key victim : victims) {
+            remove(victim);
+            evictions.incrementAndGet();
+        }
+        remove(key);
+        entries.put(key, entry);
+        bytes += entry.bytes;
+        for (String table : key.tables) {
+            readers.computeIfAbsent(table, (t) -> new ArrayList<>()).add(key);
+        }
+    }
+
+    private void remove(Key key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) return;
+        bytes -= entry.bytes;
+        for (String table : key.tables) {
+            List<Key> keys = readers.get(table);
+            if (keys == null) continue;
+            keys.remove(key);
+            if (keys.isEmpty()) readers.remove(table);
+        }
+    }
+
+    // null means the tables are not known and everything goes
+    synchronized void invalidate(Set<String> tables) {
+        if (tables == null) {
+            invalidateAll();
+            return;
+        }
+        version++;
+        for (String table : tables) {
+            versions.put(table, version);
+            List<Key> keys = readers.remove(table);
+            if (keys == null) continue;
+            for (Key key : new ArrayList<>(keys)) {
+                if (entries.containsKey(key)) invalidations.incrementAndGet();
+                remove(key);
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        cleared++;
+        invalidations.addAndGet(entries.size());
+        entries.clear();
+        readers.clear();
+        bytes = 0;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    // in percent of all lookups
+    public long getHitRate() {
+        long hit = hits.get();
+        long total = hit + misses.get();
+        return total == 0 ? 0 : hit * 100 / total;
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    // new entries that were not stored as they were asked for less often than the ones they would have evicted
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int getEntries() {
+        return entries.size();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    // whitespace and case outside of quotes do not change what a query returns
+    static String normalize(String sql) {
+        String trimmed = sql.trim();
+        if (trimmed.endsWith(";")) trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+        StringBuilder normalized = new StringBuilder(trimmed.length());
+        char quote = 0;
+        boolean space = false;
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (quote != 0) {
+                normalized.append(c);
+                if (c == quote) quote = 0;
+            } else if (Character.isWhitespace(c)) {
+                space = true;
+            } else {
+                if (space) normalized.append(' ');
+                space = false;
+                if (c == '\'' || c == '"' || c == '`') quote = c;
+                normalized.append(quote == 0 ? Character.toLowerCase(c) : c);
+            }
+        }
+        return normalized.toString();
+    }
+
+    // rough heap size of a row, only used to keep the cache within its budget
+    private static long size(List<Object> row) {
+        long size = 16 + 8L * row.size();
+        for (Object value : row) {
+            if (value instanceof String) {
+                size += 40 + 2L * ((String) value).length();
+            } else if (value != null) {
+                size += 16;
+            }
+        }
+        return size;
+    }
+
+    static class Key {
+        private final String sql;
+        private final List<Object> parameters;
+        private final Comparator<List<Object>> order;
+        private final Set<String> tables;
+        private final int hash;
+
+        private Key(String sql, List<Object> parameters, Comparator<List<Object>> order, Set<String> tables) {
+            this.sql = sql;
+            this.parameters = parameters;
+            this.order = order;
+            this.tables = tables;
+            this.hash = Objects.hash(sql, parameters, order);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return sql.equals(key.sql) && parameters.equals(key.parameters) && Objects.equals(order, key.order);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    static class Entry {
+        final List<String> columns;
+        final List<List<Object>> rows;
+        private final long bytes;
+
+        private Entry(List<String> columns, List<List<Object>> rows, long bytes) {
+            this.columns = columns;
+            this.rows = rows;
+            this.bytes = bytes;
+        }
+    }
+
+    // collects the rows while the caller reads them, stored once it read the last one
+    class Fill {
+        private final Key key;
+        private final Map<String, Long> versions;
+        private final long cleared;
+        private final List<List<Object>> rows = new ArrayList<>();
+        private long bytes;
+        private boolean abandoned;
+
+        private Fill(Key key, Map<String, Long> versions, long cleared) {
+            this.key = key;
+            this.versions = versions;
+            this.cleared = cleared;
+        }
+
+        void add(List<Object> row) {
+            if (abandoned) return;
+            bytes += size(row);
+            if (bytes > maxEntryBytes) {
+                abandoned = true;
+                rows.clear();
+                return;
+            }
+            rows.add(Collections.unmodifiableList(new ArrayList<>(row)));
+        }
+
+        void done(List<String> columns) {
+            if (!abandoned && columns != null) put(this, columns);
+        }
+    }
+
+    // count-min sketch of how often keys were asked for, halved now and then so old popularity fades
+    private static class FrequencySketch {
+        private static final int WIDTH = 4096;
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+        private static final int MAX = 15;
+
+        private final byte[][] counters = new byte[SEEDS.length][WIDTH];
+        private int additions;
+
+        void increment(int hash) {
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = index(hash, i);
+                if (counters[i][index] < MAX) counters[i][index]++;
+            }
+            if (++additions >= 10 * WIDTH) {
+                for (byte[] row : counters) {
+                    for (int j = 0; j < row.length; j++) row[j] >>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(int hash) {
+            int frequency = MAX;
+            for (int i = 0; i < SEEDS.length; i++) {
+                frequency = Math.min(frequency, counters[i][index(hash, i)]);
+            }
+            return frequency;
+        }
+
+        private static int index(int hash, int row) {
+            int h = hash * SEEDS[row];
+            h ^= h >>> 16;
+            return h & (WIDTH - 1);
+        }
+    }
+
+}
@@ -0,0 +1,300 @@
+package at.renehollander.transactionmanager.manager;
+
+import at.renehollander.transactionmanager.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class QueryResult implements Iterator<List<Object>>, Closeable {
+
+    private static Logger LOG = LoggerFactory.getLogger(QueryResult.class);
+
+    private final long id;
+    private final long timeout;
+    private final Comparator<List<Object>> order;
+    private final int capacity;
+    private final Runnable unregister;
+
+    private final Map<String, Stream> streams = new LinkedHashMap<>();
+    private List<String> columns;
+    private String error;
+    private boolean registered = true;
+    private boolean closed;
+    private Stream next;
+    private QueryCache.Fill fill;
+
+    QueryResult(long id, int timeout, Comparator<List<Object>> order, int capacity, Collection<String> stations, Runnable unregister) {
+        this.id = id;
+        this.timeout = TimeUnit.SECONDS.toNanos(timeout);
+        this.order = order;
+        this.capacity = capacity;
+        this.unregister = unregister;
+        for (String station : stations) {
+            streams.put(station, new Stream());
+        }
+        if (stations.isEmpty()) unregister();
+    }
+
+    // answered from the cache without asking any station
+    static QueryResult cached(long id, List<String> columns, List<List<Object>> rows) {
+        QueryResult result = new QueryResult(id, 0, null, Integer.MAX_VALUE, Collections.singletonList(""), () -> {
+        });
+        result.columns = columns;
+        Stream stream = result.streams.get("");
+        stream.rows.addAll(rows);
+        stream.finished = true;
+        result.registered = false;
+        return result;
+    }
+
+    synchronized void fill(QueryCache.Fill fill) {
+        this.fill = fill;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public synchronized List<String> getColumns() {
+        long deadline = System.nanoTime() + timeout;
+        while (columns == null) {
+            if (error != null) throw new IllegalStateException("Query " + id + " failed: " + error);
+            if (closed || streams.isEmpty()) return null;
+            await(deadline);
+        }
+        return columns;
+    }
+
+    synchronized void opened(String station, List<String> columns) {
+        if (this.columns == null) this.columns = columns;
+        notifyAll();
+    }
+
+    synchronized void failed(String station, String message) {
+        LOG.error("Query " + id + " failed on " + station + ": " + message);
+        if (error == null) error = "station " + station + " " + message;
+        Stream stream = streams.get(station);
+        if (stream != null) stream.finished = true;
+        cancel();
+        notifyAll();
+    }
+
+    @SuppressWarnings("unchecked")
+    synchronized void receive(String station, Map<String, Object> data, Consumer<Map<String, Object>> ack) {
+        Stream stream = streams.get(station);
+        if (stream == null || closed || error != null) {
+            if (ack != null) ack.accept(Maps.of("cancel", true));
+            return;
+        }
+        if (data.containsKey("error")) {
+            failed(station, "responded with an exception: " + data.get("error"));
+            return;
+        }
+        List<List<Object>> rows = (List<List<Object>>) data.get("rows");
+        if (rows != null) stream.rows.addAll(rows);
+        if (Boolean.TRUE.equals(data.get("last"))) {
+            stream.finished = true;
+            if (streams.values().stream().allMatch((s) -> s.finished)) unregister();
+        }
+        if (ack != null) {
+            if (stream.rows.size() < capacity) {
+                ack.accept(null);
+            } else {
+                stream.pending = ack;
+            }
+        }
+        notifyAll();
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+        if (next != null) return true;
+        long deadline = System.nanoTime() + timeout;
+        while (true) {
+            if (error != null) throw new IllegalStateException("Query " + id + " failed: " + error);
+            if (closed) return false;
+            boolean waiting = false;
+            Stream best = null;
+            for (Stream stream : streams.values()) {
+                if (stream.rows.isEmpty()) {
+                    waiting |= !stream.finished;
+                } else if (order == null) {
+                    next = stream;
+                    return true;
+                } else if (best == null || order.compare(stream.rows.peek(), best.rows.peek()) < 0) {
+                    best = stream;
+                }
+            }
+            // an ordered merge can only emit a row once every running station has shown its smallest remaining row
+            if (!waiting) {
+                next = best;
+                if (best == null && fill != null) {
+                    fill.done(columns);
+                    fill = null;
+                }
+                return best != null;
+            }
+            await(deadline);
+        }
+    }
+
+    @Override
+    public synchronized List<Object> next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        Stream stream = next;
+        next = null;
+        List<Object> row = stream.rows.poll();
+        if (fill != null) fill.add(row);
+        if (stream.pending != null && stream.rows.size() <= capacity / 2) {
+            stream.pending.accept(null);
+            stream.pending = null;
+        }
+        return row;
+    }
+
+    public long count() {
+        long count = 0;
+        while (hasNext()) {
+            next();
+            count++;
+        }
+        return count;
+    }
+
+    public Number sum(int column) {
+        long longSum = 0;
+        double doubleSum = 0;
+        boolean integral = true;
+        while (hasNext()) {
+            Object value = next().get(column);
+            if (!(value instanceof Number)) continue;
+            if (integral && (value instanceof Integer || value instanceof Long)) {
+                longSum += ((Number) value).longValue();
+            } else {
+                if (integral) doubleSum = longSum;
+                integral = false;
+                doubleSum += ((Number) value).doubleValue();
+            }
+        }
+        return integral ? (Number) longSum : (Number) doubleSum;
+    }
+
+    public Object min(int column) {
+        return extreme(column, -1);
+    }
+
+    public Object max(int column) {
+        return extreme(column, 1);
+    }
+
+    private Object extreme(int column, int sign) {
+        Object extreme = null;
+        while (hasNext()) {
+            Object value = next().get(column);
+            if (value != null && (extreme == null || sign * compare(value, extreme) > 0)) extreme = value;
+        }
+        return extreme;
+    }
+
+    // orders by the same column compare equal, so the cache finds their rows again
+    public static Comparator<List<Object>> byColumn(int column) {
+        return new ByColumn(column);
+    }
+
+    // same ordering sqlite uses: null first, then numbers, then text
+    public static int compare(Object a, Object b) {
+        if (a == null || b == null) return a == null ? (b == null ? 0 : -1) : 1;
+        if (a instanceof Number && b instanceof Number) {
+            if ((a instanceof Integer || a instanceof Long) && (b instanceof Integer || b instanceof Long)) {
+                return Long.compare(((Number) a).longValue(), ((Number) b).longValue());
+            }
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        if (a instanceof Number || b instanceof Number) return a instanceof Number ? -1 : 1;
+        return a.toString().compareTo(b.toString());
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        cancel();
+        streams.values().forEach((stream) -> stream.rows.clear());
+        next = null;
+        notifyAll();
+    }
+
+    private void cancel() {
+        for (Stream stream : streams.values()) {
+            if (stream.pending != null) {
+                stream.pending.accept(Maps.of("cancel", true));
+                stream.pending = null;
+            }
+        }
+        unregister();
+    }
+
+    private void unregister() {
+        if (!registered) return;
+        registered = false;
+        unregister.run();
+    }
+
+    private void await(long deadline) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            LOG.error("Query " + id + " timed out waiting for rows");
+            if (error == null) error = "timed out waiting for rows";
+            cancel();
+            throw new IllegalStateException("Query " + id + " failed: " + error);
+        }
+        try {
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for query " + id, e);
+        }
+    }
+
+    private static class ByColumn implements Comparator<List<Object>> {
+        private final int column;
+
+        private ByColumn(int column) {
+            this.column = column;
+        }
+
+        @Override
+        public int compare(List<Object> a, List<Object> b) {
+            return QueryResult.compare(a.get(column), b.get(column));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ByColumn && ((ByColumn) o).column == column;
+        }
+
+        @Override
+        public int hashCode() {
+            return column;
+        }
+    }
+
+    private static class Stream {
+        private final ArrayDeque<List<Object>> rows = new ArrayDeque<>();
+        private Consumer<Map<String, Object>> pending;
+        private boolean finished;
+    }
+
+}
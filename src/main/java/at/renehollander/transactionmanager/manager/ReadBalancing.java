@@ -0,0 +1,9 @@
+package at.renehollander.transactionmanager.manager;
+
+// how the manager picks the one station a read runs on
+public enum ReadBalancing {
+    // the station with the fewest requests in flight
+    LEAST_OUTSTANDING,
+    // the station with the lowest smoothed round trip, stations nobody measured yet go first
+    LOWEST_LATENCY
+}
@@ -0,0 +1,127 @@
+package at.renehollander.transactionmanager.manager;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+// pipelines transactions of one caller, the ones above the in-flight limit wait in order without blocking a thread
+public class Session {
+
+    private final Manager manager;
+    private final int maxInFlight;
+    private final boolean pinReads;
+
+    private final Queue<Runnable> queued = new ArrayDeque<>();
+    private int inFlight;
+    private volatile String pinned;
+    private volatile AdmissionController.Priority priority = AdmissionController.Priority.NORMAL;
+
+    Session(Manager manager, int maxInFlight, boolean pinReads) {
+        if (maxInFlight < 1) throw new IllegalArgumentException("at least one transaction has to be allowed in flight");
+        this.manager = manager;
+        this.maxInFlight = maxInFlight;
+        this.pinReads = pinReads;
+    }
+
+    public CompletionStage<TransactionResult> execute(int timeout, String statement) {
+        return execute(timeout, statement, null);
+    }
+
+    public CompletionStage<TransactionResult> execute(int timeout, String statement, List<Object> parameters) {
+        return execute(timeout, statement, parameters, null);
+    }
+
+    public CompletionStage<TransactionResult> executeBatch(int timeout, List<String> statements) {
+        return executeBatch(timeout, statements, null);
+    }
+
+    public CompletionStage<TransactionResult> execute(int timeout, String statement, List<Object> parameters, Locks locks) {
+        return submit(() -> manager.executeAsync(timeout, statement, parameters, locks, false, pinned, priority));
+    }
+
+    public CompletionStage<TransactionResult> executeBatch(int timeout, List<String> statements, Locks locks) {
+        return submit(() -> manager.executeBatchAsync(timeout, statements, locks, pinned, priority));
+    }
+
+    public CompletionStage<TransactionResult> read(int timeout, String statement) {
+        return read(timeout, statement, null);
+    }
+
+    public CompletionStage<TransactionResult> read(int timeout, String statement, List<Object> parameters) {
+        return submit(() -> manager.executeAsync(timeout, statement, parameters, null, true, pinned, priority));
+    }
+
+    // reads stay on the station they last ran on as long as it has every write of the session
+    private void pin(TransactionResult result) {
+        if (!pinReads || result == null) return;
+        Set<String> confirmed = new LinkedHashSet<>(result.getStations());
+        confirmed.removeAll(result.getStationErrors().keySet());
+        if (confirmed.isEmpty()) return;
+        if (result.getPath() == TransactionResult.Path.REPLICA_READ || pinned == null || !confirmed.contains(pinned)) {
+            pinned = confirmed.iterator().next();
+        }
+    }
+
+    // the order in which transactions of this session are admitted when the manager is overloaded
+    public void setPriority(AdmissionController.Priority priority) {
+        if (priority == null) throw new IllegalArgumentException("priority must not be null");
+        this.priority = priority;
+    }
+
+    public AdmissionController.Priority getPriority() {
+        return priority;
+    }
+
+    public String getPinned() {
+        return pinned;
+    }
+
+    private CompletionStage<TransactionResult> submit(Supplier<CompletionStage<TransactionResult>> transaction) {
+        CompletableFuture<TransactionResult> future = new CompletableFuture<>();
+        Runnable start = () -> transaction.get().whenComplete((result, err) -> {
+            pin(result);
+            finished();
+            if (err != null) {
+                future.completeExceptionally(err);
+            } else {
+                future.complete(result);
+            }
+        });
+        synchronized (this) {
+            if (inFlight >= maxInFlight) {
+                queued.add(start);
+                return future;
+            }
+            inFlight++;
+        }
+        start.run();
+        return future;
+    }
+
+    private void finished() {
+        Runnable next;
+        synchronized (this) {
+            next = queued.poll();
+            if (next == null) inFlight--;
+        }
+        if (next != null) next.run();
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return queued.size();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+}
@@ -0,0 +1,48 @@
+package at.renehollander.transactionmanager.manager;
+
+import com.corundumstudio.socketio.AckCallback;
+import com.corundumstudio.socketio.SocketIOClient;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+class SocketIOParticipant implements Participant {
+
+    private final String name;
+    private final SocketIOClient client;
+
+    SocketIOParticipant(String name, SocketIOClient client) {
+        this.name = name;
+        this.client = client;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void send(String event, Map<String, Object> data, int timeout, Consumer<Map<String, Object>> response) {
+        client.sendEvent(event, new AckCallback<Payload>(Payload.class, timeout) {
+            public void onSuccess(Payload result) {
+                response.accept(result == null ? new HashMap<>() : result);
+            }
+
+            public void onTimeout() {
+                response.accept(null);
+            }
+        }, data);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    // what acks and events are read into, a class of its own so they are typed without a raw map
+    static class Payload extends HashMap<String, Object> {
+        private static final long serialVersionUID = 1L;
+    }
+
+}
@@ -0,0 +1,229 @@
+package at.renehollander.transactionmanager.manager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class StatementInfo {
+
+    public enum Type {
+        SELECT, INSERT, UPDATE, DELETE, OTHER
+    }
+
+    private static final String NAME = "[\"`\\[]?(\\w+)[\"`\\]]?";
+
+    private static final Pattern INSERT = Pattern.compile("^(?:INSERT|REPLACE)(?:\\s+OR\\s+\\w+)?\\s+INTO\\s+" + NAME + "\\s*(?:\\(([^)]*)\\))?\\s*VALUES\\s*(.*)$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern UPDATE = Pattern.compile("^UPDATE(?:\\s+OR\\s+\\w+)?\\s+" + NAME + "\\s+SET\\s+(.*?)(?:\\s+WHERE\\s+(.*))?$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern DELETE = Pattern.compile("^DELETE\\s+FROM\\s+" + NAME + "(?:\\s+WHERE\\s+(.*))?$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern SELECT = Pattern.compile("^SELECT\\s+.*?\\s+FROM\\s+" + NAME + "(.*)$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern WHERE = Pattern.compile("\\s+WHERE\\s+(.*?)(?:\\s+(?:GROUP|ORDER|LIMIT|HAVING)\\s+.*)?$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern CLAUSE = Pattern.compile("\\s+(?:WHERE|GROUP|ORDER|LIMIT|HAVING)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern OR = Pattern.compile("\\bOR\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern JOIN = Pattern.compile("\\bJOIN\\b|,", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SOURCE = Pattern.compile("(?:\\bFROM|\\bJOIN|,)\\s*(?:[\"`\\[]?\\w+[\"`\\]]?\\.)?" + NAME, Pattern.CASE_INSENSITIVE);
+
+    private final String sql;
+    private final Type type;
+    private final String table;
+    private final List<String> columns;
+    private final List<List<String>> rows;
+    private final String where;
+
+    private StatementInfo(String sql, Type type, String table, List<String> columns, List<List<String>> rows, String where) {
+        this.sql = sql;
+        this.type = type;
+        this.table = table == null ? null : table.toLowerCase(Locale.ROOT);
+        this.columns = columns;
+        this.rows = rows;
+        this.where = where;
+    }
+
+    public static StatementInfo parse(String sql) {
+        String trimmed = sql.trim();
+        if (trimmed.endsWith(";")) trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+        Matcher matcher = INSERT.matcher(trimmed);
+        if (matcher.matches()) {
+            List<String> columns = matcher.group(2) == null ? null : split(matcher.group(2));
+            return new StatementInfo(sql, Type.INSERT, matcher.group(1), columns, tuples(matcher.group(3)), null);
+        }
+        matcher = UPDATE.matcher(trimmed);
+        if (matcher.matches()) {
+            return new StatementInfo(sql, Type.UPDATE, matcher.group(1), null, null, matcher.group(3));
+        }
+        matcher = DELETE.matcher(trimmed);
+        if (matcher.matches()) {
+            return new StatementInfo(sql, Type.DELETE, matcher.group(1), null, null, matcher.group(2));
+        }
+        matcher = SELECT.matcher(trimmed);
+        if (matcher.matches()) {
+            String rest = matcher.group(2);
+            Matcher clause = CLAUSE.matcher(rest);
+            String from = clause.find() ? rest.substring(0, clause.start()) : rest;
+            // joins read more than one table, those are not attributed to a single table
+            if (JOIN.matcher(from).find()) return new StatementInfo(sql, Type.SELECT, null, null, null, null);
+            Matcher where = WHERE.matcher(rest);
+            return new StatementInfo(sql, Type.SELECT, matcher.group(1), null, null, where.find() ? where.group(1) : null);
+        }
+        return new StatementInfo(sql, Type.OTHER, null, null, null, null);
+    }
+
+    // every name following FROM, JOIN or a comma, more than the tables the statement reads but never less,
+    // unless it reads them through a view
+    public static Set<String> reads(String sql) {
+        Set<String> tables = new LinkedHashSet<>();
+        Matcher matcher = SOURCE.matcher(sql);
+        while (matcher.find()) {
+            tables.add(matcher.group(1).toLowerCase(Locale.ROOT));
+        }
+        return tables;
+    }
+
+    // placeholders are replaced by their parameters for the analysis only, getSql still returns the statement as given
+    public static StatementInfo parse(String sql, List<Object> parameters) {
+        if (parameters == null || parameters.isEmpty()) return parse(sql);
+        StatementInfo bound = parse(bind(sql, parameters));
+        return new StatementInfo(sql, bound.type, bound.table, bound.columns, bound.rows, bound.where);
+    }
+
+    private static String bind(String sql, List<Object> parameters) {
+        StringBuilder bound = new StringBuilder(sql.length());
+        boolean quoted = false;
+        int index = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') quoted = !quoted;
+            if (!quoted && c == '?' && index < parameters.size()) {
+                Object value = parameters.get(index++);
+                if (value == null) {
+                    bound.append("NULL");
+                } else if (value instanceof Number) {
+                    bound.append(value);
+                } else {
+                    bound.append('\'').append(value.toString().replace("'", "''")).append('\'');
+                }
+            } else {
+                bound.append(c);
+            }
+        }
+        return bound.toString();
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public boolean isReadOnly() {
+        return type == Type.SELECT;
+    }
+
+    // returns the literal values the statement uses for the given column, or null if they cannot be determined
+    public List<String> keys(String column) {
+        if (type == Type.INSERT) {
+            int index = columns == null ? 0 : indexOf(columns, column);
+            if (index < 0 || rows == null) return null;
+            List<String> keys = new ArrayList<>(rows.size());
+            for (List<String> row : rows) {
+                if (index >= row.size()) return null;
+                String key = literal(row.get(index));
+                if (key == null) return null;
+                keys.add(key);
+            }
+            return keys;
+        }
+        if (where == null || OR.matcher(where).find()) return null;
+        Pattern equals = Pattern.compile("(?:^|[\\s(.])" + Pattern.quote(column) + "\\s*=\\s*('(?:[^']|'')*'|-?\\d+(?:\\.\\d+)?)", Pattern.CASE_INSENSITIVE);
+        Matcher matcher = equals.matcher(where);
+        if (!matcher.find()) return null;
+        return Collections.singletonList(literal(matcher.group(1)));
+    }
+
+    private static int indexOf(List<String> columns, String column) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).replaceAll("[\"`\\[\\]]", "").equalsIgnoreCase(column)) return i;
+        }
+        return -1;
+    }
+
+    // the key a bound parameter stands for, written the way a literal of the same value in a statement would be
+    static String key(Object value) {
+        if (value == null) return null;
+        if (value instanceof Number) {
+            String key = literal(value.toString());
+            return key == null ? value.toString() : key;
+        }
+        return value.toString();
+    }
+
+    private static String literal(String value) {
+        String trimmed = value.trim();
+        if (trimmed.length() >= 2 && trimmed.startsWith("'") && trimmed.endsWith("'")) {
+            return trimmed.substring(1, trimmed.length() - 1).replace("''", "'");
+        }
+        if (trimmed.matches("-?\\d+")) return String.valueOf(Long.parseLong(trimmed));
+        if (trimmed.matches("-?\\d+\\.\\d+")) return trimmed;
+        return null;
+    }
+
+    private static List<List<String>> tuples(String values) {
+        List<List<String>> rows = new ArrayList<>();
+        int depth = 0;
+        boolean quoted = false;
+        int start = -1;
+        for (int i = 0; i < values.length(); i++) {
+            char c = values.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && c == '(') {
+                if (depth == 0) start = i + 1;
+                depth++;
+            } else if (!quoted && c == ')') {
+                depth--;
+                if (depth == 0) rows.add(split(values.substring(start, i)));
+            }
+        }
+        return rows.isEmpty() ? null : rows;
+    }
+
+    private static List<String> split(String list) {
+        List<String> parts = new ArrayList<>();
+        int depth = 0;
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i < list.length(); i++) {
+            char c = list.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && c == '(') {
+                depth++;
+            } else if (!quoted && c == ')') {
+                depth--;
+            } else if (!quoted && depth == 0 && c == ',') {
+                parts.add(list.substring(start, i).trim());
+                start = i + 1;
+            }
+        }
+        parts.add(list.substring(start).trim());
+        return parts;
+    }
+
+    @Override
+    public String toString() {
+        return "StatementInfo{" +
+                "type=" + type +
+                ", table='" + table + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,106 @@
+package at.renehollander.transactionmanager.manager;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// rolling latency estimate and failure streak of one connected station,
+// the timeout follows the smoothed round trip plus four times its deviation like a tcp retransmission timer
+class StationHealth {
+
+    enum State {
+        HEALTHY, UNHEALTHY, QUARANTINED
+    }
+
+    // samples needed before the estimate is trusted to shorten a timeout
+    private static final int WARMUP = 20;
+
+    private final int quarantineAfter;
+
+    private long samples;
+    private double smoothed;
+    private double deviation;
+    private int failures;
+    private long lastFailure;
+    private State state = State.HEALTHY;
+    private boolean probing;
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    StationHealth(int quarantineAfter) {
+        this.quarantineAfter = quarantineAfter;
+    }
+
+    // timeout in milliseconds for the next request, never longer than the one the caller asked for
+    synchronized long timeout(long requested, long minimum) {
+        if (samples < WARMUP) return requested;
+        long adaptive = (long) Math.ceil((smoothed + 4 * deviation) / TimeUnit.MILLISECONDS.toNanos(1));
+        return Math.min(requested, Math.max(minimum, adaptive));
+    }
+
+    synchronized void sample(long nanos) {
+        if (samples++ == 0) {
+            smoothed = nanos;
+            deviation = nanos / 2.0;
+        } else {
+            deviation += (Math.abs(nanos - smoothed) - deviation) / 4;
+            smoothed += (nanos - smoothed) / 8;
+        }
+    }
+
+    // any answer proves the station is alive again, even one that arrives after its request timed out
+    synchronized boolean responded() {
+        failures = 0;
+        boolean recovered = state != State.HEALTHY;
+        state = State.HEALTHY;
+        return recovered;
+    }
+
+    // requests that were already in flight when the last failure was noticed fail together, they only count once
+    synchronized State timedOut(long sent) {
+        if (failures > 0 && sent - lastFailure < 0) return state;
+        failures++;
+        lastFailure = System.nanoTime();
+        state = failures >= quarantineAfter ? State.QUARANTINED : State.UNHEALTHY;
+        return state;
+    }
+
+    synchronized boolean isHealthy() {
+        return state == State.HEALTHY;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    synchronized long getLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis((long) smoothed);
+    }
+
+    synchronized long getLatencyNanos() {
+        return (long) smoothed;
+    }
+
+    // requests sent to the station that are neither answered nor timed out yet
+    void started() {
+        outstanding.incrementAndGet();
+    }
+
+    void finished() {
+        outstanding.decrementAndGet();
+    }
+
+    int getOutstanding() {
+        return outstanding.get();
+    }
+
+    // only one probe is in flight per station
+    synchronized boolean startProbe() {
+        if (probing || state == State.HEALTHY) return false;
+        probing = true;
+        return true;
+    }
+
+    synchronized void probeDone() {
+        probing = false;
+    }
+
+}
@@ -0,0 +1,51 @@
+package at.renehollander.transactionmanager.manager;
+
+import at.renehollander.transactionmanager.metrics.Counter;
+import at.renehollander.transactionmanager.metrics.Histogram;
+import at.renehollander.transactionmanager.metrics.Metrics;
+
+import java.util.Map;
+
+// round trip latencies the manager sees for one station
+class StationMetrics {
+
+    final Histogram prepare;
+    final Histogram commit;
+    final Histogram rollback;
+    final Histogram other;
+    final Counter timeouts;
+    final Counter errors;
+
+    StationMetrics(Metrics metrics, String station) {
+        String prefix = "station." + station + ".";
+        prepare = metrics.histogram(prefix + "prepare");
+        commit = metrics.histogram(prefix + "commit");
+        rollback = metrics.histogram(prefix + "rollback");
+        other = metrics.histogram(prefix + "other");
+        timeouts = metrics.counter(prefix + "timeouts");
+        errors = metrics.counter(prefix + "errors");
+    }
+
+    void record(String event, long nanos, Map<String, Object> result) {
+        switch (event) {
+            case "execute":
+            case "executeBatch":
+                prepare.recordNanos(nanos);
+                break;
+            case "commit":
+                commit.recordNanos(nanos);
+                break;
+            case "rollback":
+                rollback.recordNanos(nanos);
+                break;
+            default:
+                other.recordNanos(nanos);
+        }
+        if (result == null) {
+            timeouts.increment();
+        } else if (result.containsKey("error") || result.containsKey("errors")) {
+            errors.increment();
+        }
+    }
+
+}
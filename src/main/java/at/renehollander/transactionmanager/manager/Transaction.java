@@ -0,0 +1,64 @@
+package at.renehollander.transactionmanager.manager;
+
+import at.renehollander.transactionmanager.Callback;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// responses of the participants are handled concurrently, so everything they touch is safe to update without a lock
+class Transaction {
+
+    final long id;
+    final int timeout;
+    final String description;
+    final Callback.OneParamWithStringError<TransactionResult> callback;
+    final long started = System.nanoTime();
+
+    volatile TransactionResult.Path path = TransactionResult.Path.TWO_PHASE;
+    Set<Participant> participants;
+    final Set<Participant> phaseTwo = ConcurrentHashMap.newKeySet();
+    final Set<String> readOnly = ConcurrentHashMap.newKeySet();
+    final List<String> exceptions = new CopyOnWriteArrayList<>();
+    final Map<String, String> stationErrors = new ConcurrentSkipListMap<>();
+    volatile boolean inDoubt;
+    // run and rolled back on every participant, never committed
+    boolean read;
+    // tables the transaction writes, null if they are not known
+    Set<String> writes;
+    // sent to its stations as a writer, they keep writers of different coordinators apart
+    boolean write;
+    // logical time it was sent at as a writer, the stations tell by it which of two writers of different coordinators is older
+    long stamp;
+    LockManager locks;
+    AdmissionController.Priority priority = AdmissionController.Priority.NORMAL;
+    AdmissionController admission;
+    AdmissionController.Ticket ticket;
+    long admitted;
+    // what the stations catching up would have been sent, recorded for them once the transaction committed
+    Map<CatchUp, CatchUp.Replay> catchUp;
+
+    Transaction(long id, int timeout, String description, Callback.OneParamWithStringError<TransactionResult> callback) {
+        this.id = id;
+        this.timeout = timeout;
+        this.description = description;
+        this.callback = callback;
+    }
+
+    void fail(String station, String message) {
+        exceptions.add("client " + station + " " + message);
+        stationErrors.merge(station, message, (a, b) -> a + "; " + b);
+    }
+
+    TransactionResult result(boolean committed) {
+        TransactionResult.Outcome outcome = inDoubt ? TransactionResult.Outcome.IN_DOUBT : committed ? TransactionResult.Outcome.COMMITTED : TransactionResult.Outcome.ABORTED;
+        Set<String> stations = new LinkedHashSet<>();
+        if (participants != null) participants.forEach((client) -> stations.add(client.getName()));
+        return new TransactionResult(id, path, outcome, exceptions, stationErrors, readOnly, stations);
+    }
+
+}
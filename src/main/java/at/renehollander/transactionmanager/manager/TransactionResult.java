@@ -0,0 +1,89 @@
+package at.renehollander.transactionmanager.manager;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class TransactionResult {
+
+    public enum Path {
+        ONE_PHASE, TWO_PHASE, READ_ONLY,
+        // a read that ran on a single station outside of the two phases
+        REPLICA_READ
+    }
+
+    public enum Outcome {
+        COMMITTED,
+        ABORTED,
+        // the decision did not reach every station, some of them may have committed and others not
+        IN_DOUBT
+    }
+
+    private final long id;
+    private final Path path;
+    private final Outcome outcome;
+    private final List<String> errors;
+    private final Map<String, String> stationErrors;
+    private final Set<String> readOnly;
+    private final Set<String> stations;
+
+    public TransactionResult(long id, Path path, Outcome outcome, List<String> errors, Map<String, String> stationErrors, Set<String> readOnly) {
+        this(id, path, outcome, errors, stationErrors, readOnly, Collections.emptySet());
+    }
+
+    public TransactionResult(long id, Path path, Outcome outcome, List<String> errors, Map<String, String> stationErrors, Set<String> readOnly, Set<String> stations) {
+        this.id = id;
+        this.path = path;
+        this.outcome = outcome;
+        this.errors = Collections.unmodifiableList(errors);
+        this.stationErrors = Collections.unmodifiableMap(stationErrors);
+        this.readOnly = Collections.unmodifiableSet(readOnly);
+        this.stations = Collections.unmodifiableSet(stations);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    public boolean isCommitted() {
+        return outcome == Outcome.COMMITTED;
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public Map<String, String> getStationErrors() {
+        return stationErrors;
+    }
+
+    public Set<String> getReadOnly() {
+        return readOnly;
+    }
+
+    // the stations the transaction was sent to
+    public Set<String> getStations() {
+        return stations;
+    }
+
+    @Override
+    public String toString() {
+        return "TransactionResult{" +
+                "id=" + id +
+                ", path=" + path +
+                ", outcome=" + outcome +
+                ", errors=" + errors +
+                ", readOnly=" + readOnly +
+                ", stations=" + stations +
+                '}';
+    }
+}
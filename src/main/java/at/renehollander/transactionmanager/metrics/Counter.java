@@ -0,0 +1,26 @@
+package at.renehollander.transactionmanager.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class Counter {
+
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long n) {
+        value.add(n);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(get());
+    }
+
+}
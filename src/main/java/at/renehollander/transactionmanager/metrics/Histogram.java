@@ -0,0 +1,83 @@
+package at.renehollander.transactionmanager.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// log-linear buckets with 8 sub-buckets per power of two, so percentiles are within 12.5% of the recorded values
+public class Histogram {
+
+    private static final int LINEAR = 16;
+    private static final int SUB_BUCKETS = 8;
+    private static final int BUCKETS = LINEAR + (63 - 4) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        buckets.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+        }
+    }
+
+    public void recordNanos(long nanos) {
+        record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(percentile / 100 * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= Math.max(rank, 1)) return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    private static int index(long value) {
+        if (value < LINEAR) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exponent - 4) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int index) {
+        if (index < LINEAR) return index;
+        int exponent = (index - LINEAR) / SUB_BUCKETS + 4;
+        int sub = (index - LINEAR) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 3)) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() +
+                " mean=" + String.format("%.1f", getMean()) +
+                " p50=" + getPercentile(50) +
+                " p90=" + getPercentile(90) +
+                " p99=" + getPercentile(99) +
+                " p999=" + getPercentile(99.9) +
+                " max=" + getMax();
+    }
+
+}
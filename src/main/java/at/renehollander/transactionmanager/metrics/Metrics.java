@@ -0,0 +1,111 @@
+package at.renehollander.transactionmanager.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// look metrics up once and keep the reference, recording on a Histogram or Counter does not allocate
+public class Metrics {
+    private static Logger LOG = LoggerFactory.getLogger(Metrics.class);
+
+    private final String name;
+    private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+    private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+
+    private ObjectName objectName;
+    private ScheduledExecutorService reporter;
+
+    public Metrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, (n) -> new Histogram());
+    }
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, (n) -> new Counter());
+    }
+
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    Map<String, Histogram> getHistograms() {
+        return histograms;
+    }
+
+    Map<String, Counter> getCounters() {
+        return counters;
+    }
+
+    Map<String, LongSupplier> getGauges() {
+        return gauges;
+    }
+
+    // latencies are in microseconds
+    public String snapshot() {
+        StringBuilder builder = new StringBuilder("Metrics of ").append(name);
+        gauges.forEach((key, value) -> builder.append("\n  ").append(key).append(" = ").append(value.getAsLong()));
+        counters.forEach((key, value) -> builder.append("\n  ").append(key).append(" = ").append(value));
+        histograms.forEach((key, value) -> builder.append("\n  ").append(key).append(" ").append(value));
+        return builder.toString();
+    }
+
+    public synchronized void register() {
+        if (objectName != null) return;
+        try {
+            ObjectName objectName = new ObjectName("at.renehollander.transactionmanager:type=Metrics,name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                LOG.warn("Metrics " + name + " are already registered over JMX");
+                return;
+            }
+            server.registerMBean(new MetricsMBean(this), objectName);
+            this.objectName = objectName;
+        } catch (JMException e) {
+            LOG.error("An exception occured while registering metrics " + name + " over JMX", e);
+        }
+    }
+
+    public synchronized void startReporting(long period, TimeUnit unit) {
+        if (reporter != null) reporter.shutdown();
+        reporter = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "metrics-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> LOG.info(snapshot()), period, period, unit);
+    }
+
+    public synchronized void close() {
+        if (reporter != null) {
+            reporter.shutdown();
+            reporter = null;
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                LOG.error("An exception occured while unregistering metrics " + name, e);
+            }
+            objectName = null;
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package at.renehollander.transactionmanager.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+// histograms show up as <name>.count, .mean, .p50, .p90, .p99, .p999 and .max
+class MetricsMBean implements DynamicMBean {
+
+    private static final String[] HISTOGRAM_ATTRIBUTES = {"count", "mean", "p50", "p90", "p99", "p999", "max"};
+
+    private final Metrics metrics;
+
+    MetricsMBean(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        LongSupplier gauge = metrics.getGauges().get(attribute);
+        if (gauge != null) return gauge.getAsLong();
+        Counter counter = metrics.getCounters().get(attribute);
+        if (counter != null) return counter.get();
+        int dot = attribute.lastIndexOf('.');
+        Histogram histogram = dot < 0 ? null : metrics.getHistograms().get(attribute.substring(0, dot));
+        if (histogram != null) {
+            switch (attribute.substring(dot + 1)) {
+                case "count":
+                    return (double) histogram.getCount();
+                case "mean":
+                    return histogram.getMean();
+                case "p50":
+                    return (double) histogram.getPercentile(50);
+                case "p90":
+                    return (double) histogram.getPercentile(90);
+                case "p99":
+                    return (double) histogram.getPercentile(99);
+                case "p999":
+                    return (double) histogram.getPercentile(99.9);
+                case "max":
+                    return (double) histogram.getMax();
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only");
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // skipped like the spec asks for
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String gauge : metrics.getGauges().keySet()) {
+            attributes.add(new MBeanAttributeInfo(gauge, "long", "gauge", true, false, false));
+        }
+        for (String counter : metrics.getCounters().keySet()) {
+            attributes.add(new MBeanAttributeInfo(counter, "long", "counter", true, false, false));
+        }
+        for (String histogram : metrics.getHistograms().keySet()) {
+            for (String suffix : HISTOGRAM_ATTRIBUTES) {
+                attributes.add(new MBeanAttributeInfo(histogram + "." + suffix, "double", "latency in microseconds", true, false, false));
+            }
+        }
+        return new MBeanInfo(Metrics.class.getName(), "Metrics of " + metrics.getName(), attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, new MBeanOperationInfo[0], null);
+    }
+
+}
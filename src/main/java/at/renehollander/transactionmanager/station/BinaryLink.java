@@ -0,0 +1,167 @@
+package at.renehollander.transactionmanager.station;
+
+import at.renehollander.transactionmanager.Maps;
+import at.renehollander.transactionmanager.wire.Frame;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.socket.client.Ack;
+import io.socket.client.Socket;
+import io.socket.emitter.Emitter;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// reconnects on its own like the socket.io client does and fires the same connection events
+public class BinaryLink implements Link {
+    private static Logger LOG = LoggerFactory.getLogger(BinaryLink.class);
+
+    private static final int RECONNECT_DELAY = 1000;
+
+    private final String name;
+    private final String hostname;
+    private final int port;
+
+    private final Map<String, List<Emitter.Listener>> listeners = new ConcurrentHashMap<>();
+    private final Map<Long, Ack> pending = new ConcurrentHashMap<>();
+    private final AtomicLong requestIds = new AtomicLong();
+
+    private final EventLoopGroup group;
+    private final Bootstrap bootstrap;
+    private volatile Channel channel;
+    private volatile boolean closed;
+
+    public BinaryLink(String name, String hostname, int port) {
+        this.name = name;
+        this.hostname = hostname;
+        this.port = port;
+        this.group = new NioEventLoopGroup(1, new DefaultThreadFactory("binary-link-" + name, true));
+        this.bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        Frame.install(channel.pipeline());
+                        channel.pipeline().addLast(new FrameHandler());
+                    }
+                });
+    }
+
+    @Override
+    public void on(String event, Emitter.Listener listener) {
+        listeners.computeIfAbsent(event, (e) -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    @Override
+    public void emit(String event, Object data) {
+        write(new Frame(Frame.EVENT, 0, event, data));
+    }
+
+    @Override
+    public void emit(String event, Object data, Ack ack) {
+        long id = requestIds.incrementAndGet();
+        pending.put(id, ack);
+        if (!write(new Frame(Frame.REQUEST, id, event, data))) pending.remove(id);
+    }
+
+    private boolean write(Frame frame) {
+        Channel current = channel;
+        if (current == null || !current.isActive()) {
+            LOG.error("Dropping " + frame.getEvent() + " because the Transaction Manager is not connected");
+            return false;
+        }
+        current.writeAndFlush(frame.encode(current.alloc()));
+        return true;
+    }
+
+    @Override
+    public void connect() {
+        if (closed) return;
+        bootstrap.connect(hostname, port).addListener((ChannelFuture future) -> {
+            if (future.isSuccess()) {
+                channel = future.channel();
+                channel.writeAndFlush(new Frame(Frame.EVENT, 0, Frame.HELLO, Maps.of("name", name)).encode(channel.alloc()));
+                fire(Socket.EVENT_CONNECT);
+            } else {
+                fire(Socket.EVENT_CONNECT_ERROR, future.cause());
+                reconnect();
+            }
+        });
+    }
+
+    private void reconnect() {
+        if (!closed) group.schedule(this::connect, RECONNECT_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Channel current = channel;
+        if (current != null) current.close();
+        group.shutdownGracefully();
+    }
+
+    private void fire(String event, Object... args) {
+        List<Emitter.Listener> registered = listeners.get(event);
+        if (registered == null) return;
+        for (Emitter.Listener listener : registered) {
+            listener.call(args);
+        }
+    }
+
+    private class FrameHandler extends SimpleChannelInboundHandler<ByteBuf> {
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf buf) {
+            Frame frame = Frame.decode(buf, true);
+            if (frame.getType() == Frame.REPLY) {
+                Ack ack = pending.remove(frame.getId());
+                if (ack == null) return;
+                if (frame.getPayload() == JSONObject.NULL) {
+                    ack.call();
+                } else {
+                    ack.call(frame.getPayload());
+                }
+            } else if (frame.getType() == Frame.REQUEST) {
+                Channel channel = ctx.channel();
+                Ack ack = (args) -> channel.writeAndFlush(new Frame(Frame.REPLY, frame.getId(), null, args.length > 0 ? args[0] : null).encode(channel.alloc()));
+                fire(frame.getEvent(), frame.getPayload(), ack);
+            } else {
+                fire(frame.getEvent(), frame.getPayload());
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            pending.clear();
+            fire(Socket.EVENT_DISCONNECT);
+            reconnect();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            LOG.error("An exception occured on the connection to the Transaction Manager", cause);
+            ctx.close();
+        }
+    }
+
+}
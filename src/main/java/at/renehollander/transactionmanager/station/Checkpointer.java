@@ -0,0 +1,117 @@
+package at.renehollander.transactionmanager.station;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// copies the write-ahead log into the database on its own connection, so commits do not pay for it. it never waits for a
+// busy database, a checkpoint that can not finish now is tried again on the next tick instead of stalling the writers
+class Checkpointer {
+    private static Logger LOG = LoggerFactory.getLogger(Checkpointer.class);
+
+    private final File wal;
+    private final StorageProfile profile;
+    private final Connection connection;
+    private final ScheduledExecutorService executor;
+
+    private final AtomicLong checkpoints = new AtomicLong();
+    private final AtomicLong truncations = new AtomicLong();
+    private final AtomicLong busy = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong lastMillis = new AtomicLong();
+
+    Checkpointer(File file, Connection connection, StorageProfile profile) throws SQLException {
+        this.wal = new File(file.getPath() + "-wal");
+        this.profile = profile;
+        this.connection = connection;
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA busy_timeout=0");
+        }
+        this.executor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "checkpoint-" + file.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::checkpoint, profile.getCheckpointInterval(), profile.getCheckpointInterval(), TimeUnit.MILLISECONDS);
+    }
+
+    private void checkpoint() {
+        long start = System.nanoTime();
+        try {
+            // a passive checkpoint copies what no reader still needs, the log is only truncated once it grew too large
+            boolean truncate = wal.length() > profile.getMaxWalBytes();
+            boolean done = run(truncate ? "TRUNCATE" : "PASSIVE");
+            checkpoints.incrementAndGet();
+            if (truncate && done) {
+                truncations.incrementAndGet();
+                LOG.info("Truncated write-ahead log " + wal + " after it grew beyond " + profile.getMaxWalBytes() + " bytes");
+            } else if (truncate) {
+                busy.incrementAndGet();
+            }
+        } catch (SQLException e) {
+            LOG.error("An exception occured while checkpointing " + wal, e);
+        }
+        lastMillis.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    // false if readers or the writer kept it from copying the whole log
+    private boolean run(String mode) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("PRAGMA wal_checkpoint(" + mode + ")")) {
+            if (!result.next()) return false;
+            int log = result.getInt(2);
+            int copied = result.getInt(3);
+            if (copied > 0) frames.addAndGet(copied);
+            return result.getInt(1) == 0 && copied == log;
+        }
+    }
+
+    long getCheckpoints() {
+        return checkpoints.get();
+    }
+
+    long getTruncations() {
+        return truncations.get();
+    }
+
+    // truncations that had to wait for the next tick
+    long getBusy() {
+        return busy.get();
+    }
+
+    long getFrames() {
+        return frames.get();
+    }
+
+    long getLastMillis() {
+        return lastMillis.get();
+    }
+
+    long getWalBytes() {
+        return wal.length();
+    }
+
+    void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) executor.shutdownNow();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LOG.error("An exception occured while closing the checkpoint connection", e);
+        }
+    }
+
+}
@@ -0,0 +1,148 @@
+package at.renehollander.transactionmanager.station;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sqlite.SQLiteConfig;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ConnectionPool {
+    private static Logger LOG = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private final File file;
+    private final int size;
+    private final StorageProfile profile;
+    private final boolean readOnly;
+
+    private final BlockingQueue<Connection> idle;
+    private final List<Connection> all;
+    private final Map<Connection, StatementCache> caches;
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    public ConnectionPool(File file, int size) {
+        this(file, size, StorageProfile.DURABLE, false);
+    }
+
+    // connections of a read-only pool refuse to write, so a read can not change anything even by mistake
+    public ConnectionPool(File file, int size, StorageProfile profile, boolean readOnly) {
+        if (size < 1) throw new IllegalArgumentException("pool size must be at least 1");
+        this.file = file;
+        this.size = size;
+        this.profile = profile;
+        this.readOnly = readOnly;
+        this.idle = new LinkedBlockingQueue<>();
+        this.all = new ArrayList<>();
+        this.caches = new ConcurrentHashMap<>();
+    }
+
+    public Connection tryAcquire() throws SQLException {
+        Connection connection = idle.poll();
+        if (connection != null) return connection;
+        synchronized (all) {
+            if (all.size() < size) {
+                connection = open();
+                all.add(connection);
+                caches.put(connection, new StatementCache(connection, StatementCache.DEFAULT_SIZE, cacheHits, cacheMisses));
+                LOG.info("Opened pooled connection " + all.size() + "/" + size);
+                return connection;
+            }
+        }
+        return null;
+    }
+
+    public void release(Connection connection) {
+        idle.offer(connection);
+    }
+
+    public Connection open() throws SQLException {
+        Connection connection = open(false);
+        connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        return connection;
+    }
+
+    // the journal mode is stored in the database, it is switched once before any pooled connection is opened
+    public void useWriteAheadLog() throws SQLException {
+        try (Connection connection = open(true); Statement statement = connection.createStatement();
+             ResultSet mode = statement.executeQuery("PRAGMA journal_mode=WAL")) {
+            if (!mode.next() || !mode.getString(1).equalsIgnoreCase("wal")) {
+                throw new SQLException("could not switch " + file + " to the write-ahead log");
+            }
+        }
+    }
+
+    Connection open(boolean autoCommit) throws SQLException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            LOG.error("An exception occured while opening db connection", e);
+            throw new RuntimeException(e);
+        }
+        SQLiteConfig config = new SQLiteConfig();
+        config.setBusyTimeout("30000");
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath(), config.toProperties());
+        // set before the first transaction starts, some of them can not be changed within one
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA synchronous=" + profile.getSynchronous());
+            statement.execute("PRAGMA cache_size=-" + profile.getCacheKiB());
+            statement.execute("PRAGMA mmap_size=" + profile.getMmapBytes());
+            statement.execute("PRAGMA journal_size_limit=" + profile.getMaxWalBytes());
+            // checkpoints are left to the background, a commit only runs one if the log grew far beyond its limit
+            statement.execute("PRAGMA wal_autocheckpoint=" + 4 * profile.getMaxWalBytes() / 4096);
+            if (readOnly) statement.execute("PRAGMA query_only=1");
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        connection.setAutoCommit(autoCommit);
+        return connection;
+    }
+
+    public boolean owns(Connection connection) {
+        return caches.containsKey(connection);
+    }
+
+    public StatementCache getStatementCache(Connection connection) {
+        return caches.get(connection);
+    }
+
+    public long getStatementCacheHits() {
+        return cacheHits.get();
+    }
+
+    public long getStatementCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getIdle() {
+        return idle.size();
+    }
+
+    public void close() throws SQLException {
+        synchronized (all) {
+            for (Connection connection : all) {
+                connection.close();
+            }
+            all.clear();
+            idle.clear();
+            caches.clear();
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package at.renehollander.transactionmanager.station;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+public class Cursor {
+
+    private final long id;
+    private final Statement statement;
+    private final ResultSet resultSet;
+    private final List<String> columns;
+    private final RowFilter filter;
+    private final int filterColumn;
+    private boolean done;
+
+    Cursor(long id, Statement statement, ResultSet resultSet, RowFilter filter) throws SQLException {
+        this.id = id;
+        this.statement = statement;
+        this.resultSet = resultSet;
+        this.filter = filter;
+        ResultSetMetaData meta = resultSet.getMetaData();
+        List<String> columns = new ArrayList<>(meta.getColumnCount());
+        int filterColumn = -1;
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            columns.add(meta.getColumnLabel(i));
+            if (filter != null && meta.getColumnLabel(i).equalsIgnoreCase(filter.getColumn())) filterColumn = i;
+        }
+        if (filter != null && filterColumn < 0) {
+            throw new SQLException("The partition key column " + filter.getColumn() + " has to be selected when querying a partitioned table");
+        }
+        this.columns = Collections.unmodifiableList(columns);
+        this.filterColumn = filterColumn;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    List<List<Object>> fetch(int max) throws SQLException {
+        List<List<Object>> rows = new ArrayList<>(Math.min(max, 1024));
+        while (rows.size() < max) {
+            if (!resultSet.next()) {
+                done = true;
+                break;
+            }
+            if (filter != null && !filter.accept(resultSet.getString(filterColumn))) continue;
+            List<Object> row = new ArrayList<>(columns.size());
+            for (int i = 1; i <= columns.size(); i++) {
+                Object value = resultSet.getObject(i);
+                row.add(value instanceof byte[] ? Base64.getEncoder().encodeToString((byte[]) value) : value);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    void close() throws SQLException {
+        done = true;
+        statement.close();
+    }
+
+}
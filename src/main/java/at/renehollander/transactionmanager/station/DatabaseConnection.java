@@ -1,23 +1,80 @@
 package at.renehollander.transactionmanager.station;
 
 import at.renehollander.transactionmanager.Callback;
+import at.renehollander.transactionmanager.TransactionIds;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class DatabaseConnection {
     private static Logger LOG = LoggerFactory.getLogger(DatabaseConnection.class);
 
+    public static final int DEFAULT_POOL_SIZE = 16;
+
     private final File file;
+    private final int poolSize;
+    private final ExecutionEngine engine;
+    private final StorageProfile profile;
+
     private Connection connection;
+    private ConnectionPool pool;
+    // reads run on connections of their own, next to the writer instead of waiting for a connection it holds
+    private ConnectionPool readPool;
+    private Checkpointer checkpointer;
+    private final Map<Long, Connection> transactions;
+    private final Map<Long, Waiter> waiting;
+    // the transaction writing right now, guarded by waiting. sqlite lets one transaction at a time write, the next writer
+    // waits here until it committed instead of sleeping on sqlite's busy lock on a worker. a coordinator lets it in once
+    // the votes of the previous one are in. writers of several coordinators would wait for each other across stations
+    // until they time out, so between them the older one waits for the slot and the younger one gives up right away
+    private Connection writing;
+    private long writer;
+    private long writerStamp;
+    // the write-ahead log, synced by the station itself after commits if the profile asks for it
+    private FileChannel log;
+    private final Object syncLock = new Object();
+    private final AtomicLong syncs = new AtomicLong();
 
     public DatabaseConnection(File file) {
+        this(file, DEFAULT_POOL_SIZE);
+    }
+
+    public DatabaseConnection(File file, int poolSize) {
+        this(file, poolSize, ExecutionEngine.bounded(poolSize, ExecutionEngine.DEFAULT_QUEUE_LIMIT));
+    }
+
+    public DatabaseConnection(File file, int poolSize, ExecutionEngine engine) {
+        this(file, poolSize, engine, StorageProfile.DURABLE);
+    }
+
+    public DatabaseConnection(File file, int poolSize, ExecutionEngine engine, StorageProfile profile) {
         this.file = file;
+        this.poolSize = poolSize;
+        this.engine = engine;
+        this.profile = profile;
+        this.transactions = new ConcurrentHashMap<>();
+        this.waiting = new LinkedHashMap<>();
     }
 
     public Connection getConnection() {
@@ -25,54 +82,635 @@ public class DatabaseConnection {
         return connection;
     }
 
-    public void execute(int timeout, String stmt, Callback.OneParamWithError<Boolean> callback) {
+    public void execute(long id, int timeout, String stmt, Callback.OneParamWithError<StatementResult> callback) {
+        execute(id, timeout, stmt, null, callback);
+    }
+
+    public void execute(long id, int timeout, String stmt, List<Object> parameters, Callback.OneParamWithError<StatementResult> callback) {
+        execute(id, timeout, stmt, parameters, false, callback);
+    }
+
+    // a read gets a connection of the read pool, which refuses to write
+    public void execute(long id, int timeout, String stmt, List<Object> parameters, boolean read, Callback.OneParamWithError<StatementResult> callback) {
+        execute(id, timeout, stmt, parameters, read, 0, false, callback);
+    }
+
+    // writer is when a writing transaction started, in milliseconds, or 0 if it does not take the writer slot.
+    // one writing on this station alone holds nothing elsewhere, so it waits for the slot whatever its age
+    public void execute(long id, int timeout, String stmt, List<Object> parameters, boolean read, long writer, boolean alone, Callback.OneParamWithError<StatementResult> callback) {
         checkOpen();
-        Thread thread = new Thread(() -> {
+        execute(id, System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout), stmt, parameters, read, writer, alone, callback, true);
+    }
+
+    private void execute(long id, long deadline, String stmt, List<Object> parameters, boolean read, long writer, boolean alone, Callback.OneParamWithError<StatementResult> callback, boolean mayReject) {
+        submit(id, mayReject, callback::execute, () -> {
             try {
-                LOG.info("Executing statement " + stmt);
-                Statement statement = connection.createStatement();
-                statement.setQueryTimeout(timeout);
-                statement.closeOnCompletion();
-                boolean ret = statement.execute(stmt);
-                callback.execute(ret);
+                Connection connection = transactionConnection(id, deadline, read, writer, alone, () -> execute(id, deadline, stmt, parameters, read, writer, alone, callback, false), callback::execute);
+                if (connection == null) return;
+                LOG.info("Executing statement " + stmt + (parameters == null ? "" : " with " + parameters) + " in transaction " + id);
+                if (parameters != null) {
+                    callback.execute(executePrepared(connection, deadline, stmt, parameters));
+                    return;
+                }
+                StatementResult result;
+                // closed right away like the prepared ones, an open result set would hold on to the shared lock
+                try (Statement statement = connection.createStatement()) {
+                    statement.setQueryTimeout(remainingSeconds(deadline));
+                    boolean ret = statement.execute(stmt);
+                    result = new StatementResult(stmt, ret, ret ? -1 : statement.getUpdateCount());
+                }
+                callback.execute(result);
             } catch (Exception e) {
                 LOG.error("An exception occured while executing statement", e);
                 callback.execute(e);
             }
+        });
+    }
+
+    private StatementResult executePrepared(Connection connection, long deadline, String stmt, List<Object> parameters) throws SQLException {
+        StatementCache cache = statementCache(connection);
+        PreparedStatement statement = cache.prepare(stmt);
+        try {
+            statement.setQueryTimeout(remainingSeconds(deadline));
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.setObject(i + 1, parameters.get(i));
+            }
+            boolean ret = statement.execute();
+            int updateCount = ret ? -1 : statement.getUpdateCount();
+            // an open result set would keep the statement reading and hold on to the shared lock
+            if (ret) statement.getResultSet().close();
+            statement.clearParameters();
+            return new StatementResult(stmt, ret, updateCount);
+        } catch (SQLException e) {
+            cache.invalidate(stmt);
+            throw e;
+        }
+    }
 
+    public void executeBatch(long id, int timeout, List<String> stmts, Callback.OneParamWithError<int[]> callback) {
+        executeBatch(id, timeout, stmts, false, callback);
+    }
+
+    public void executeBatch(long id, int timeout, List<String> stmts, boolean read, Callback.OneParamWithError<int[]> callback) {
+        executeBatch(id, timeout, stmts, read, 0, false, callback);
+    }
+
+    public void executeBatch(long id, int timeout, List<String> stmts, boolean read, long writer, boolean alone, Callback.OneParamWithError<int[]> callback) {
+        checkOpen();
+        executeBatch(id, System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout), stmts, read, writer, alone, callback, true);
+    }
+
+    private void executeBatch(long id, long deadline, List<String> stmts, boolean read, long writer, boolean alone, Callback.OneParamWithError<int[]> callback, boolean mayReject) {
+        submit(id, mayReject, callback::execute, () -> {
+            try {
+                Connection connection = transactionConnection(id, deadline, read, writer, alone, () -> executeBatch(id, deadline, stmts, read, writer, alone, callback, false), callback::execute);
+                if (connection == null) return;
+                LOG.info("Executing batch of " + stmts.size() + " statements in transaction " + id);
+                try (Statement statement = connection.createStatement()) {
+                    statement.setQueryTimeout(remainingSeconds(deadline));
+                    for (String stmt : stmts) {
+                        statement.addBatch(stmt);
+                    }
+                    callback.execute(statement.executeBatch());
+                }
+            } catch (Exception e) {
+                LOG.error("An exception occured while executing batch", e);
+                callback.execute(e);
+            }
         });
-        thread.start();
     }
 
-    public void commit(Callback.NoParamsWithError callback) {
+    // all rows go through one prepared insert, conflict is null, "ignore" or "replace" and picks what happens to rows that
+    // collide with a unique key. the callback gets the number of rows written
+    public void insertRows(long id, int timeout, String table, List<String> columns, List<List<Object>> rows, String conflict, Callback.OneParamWithError<Integer> callback) {
+        insertRows(id, timeout, table, columns, rows, conflict, 0, false, callback);
+    }
+
+    public void insertRows(long id, int timeout, String table, List<String> columns, List<List<Object>> rows, String conflict, long writer, boolean alone, Callback.OneParamWithError<Integer> callback) {
         checkOpen();
-        Thread thread = new Thread(() -> {
+        String stmt = insert(table, columns, conflict);
+        insertRows(id, System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout), stmt, rows, writer, alone, callback, true);
+    }
+
+    private void insertRows(long id, long deadline, String stmt, List<List<Object>> rows, long writer, boolean alone, Callback.OneParamWithError<Integer> callback, boolean mayReject) {
+        submit(id, mayReject, callback::execute, () -> {
             try {
-                LOG.info("Comitting");
-                connection.commit();
-                callback.execute(null);
+                Connection connection = transactionConnection(id, deadline, false, writer, alone, () -> insertRows(id, deadline, stmt, rows, writer, alone, callback, false), callback::execute);
+                if (connection == null) return;
+                LOG.info("Inserting " + rows.size() + " rows with " + stmt + " in transaction " + id);
+                StatementCache cache = statementCache(connection);
+                PreparedStatement statement = cache.prepare(stmt);
+                try {
+                    statement.setQueryTimeout(remainingSeconds(deadline));
+                    for (List<Object> row : rows) {
+                        for (int i = 0; i < row.size(); i++) {
+                            statement.setObject(i + 1, row.get(i));
+                        }
+                        statement.addBatch();
+                    }
+                    int written = 0;
+                    for (int count : statement.executeBatch()) {
+                        if (count > 0) written += count;
+                    }
+                    callback.execute(written);
+                } catch (SQLException e) {
+                    cache.invalidate(stmt);
+                    throw e;
+                }
             } catch (Exception e) {
-                LOG.error("An exception occured while committing", e);
+                LOG.error("An exception occured while inserting rows", e);
                 callback.execute(e);
             }
+        });
+    }
+
+    private static String insert(String table, List<String> columns, String conflict) {
+        if (columns.isEmpty()) throw new IllegalArgumentException("at least one column has to be inserted");
+        StringBuilder stmt = new StringBuilder("INSERT");
+        if (conflict != null) {
+            if (!conflict.equals("ignore") && !conflict.equals("replace")) throw new IllegalArgumentException("unknown conflict resolution " + conflict);
+            stmt.append(" OR ").append(conflict.toUpperCase());
+        }
+        stmt.append(" INTO ").append(quote(table)).append(" (");
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                stmt.append(", ");
+                values.append(", ");
+            }
+            stmt.append(quote(columns.get(i)));
+            values.append('?');
+        }
+        return stmt.append(") VALUES (").append(values).append(')').toString();
+    }
 
+    private static String quote(String identifier) {
+        return '"' + identifier.replace("\"", "\"\"") + '"';
+    }
+
+    public void query(long id, int timeout, String stmt, RowFilter filter, Callback.OneParamWithError<Cursor> callback) {
+        query(id, timeout, stmt, null, filter, callback);
+    }
+
+    public void query(long id, int timeout, String stmt, List<Object> parameters, RowFilter filter, Callback.OneParamWithError<Cursor> callback) {
+        checkOpen();
+        query(id, System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout), stmt, parameters, filter, callback, true);
+    }
+
+    private void query(long id, long deadline, String stmt, List<Object> parameters, RowFilter filter, Callback.OneParamWithError<Cursor> callback, boolean mayReject) {
+        submit(id, mayReject, callback::execute, () -> {
+            try {
+                Connection connection = transactionConnection(id, deadline, true, 0, false, () -> query(id, deadline, stmt, parameters, filter, callback, false), callback::execute);
+                if (connection == null) return;
+                LOG.info("Opening cursor for query " + stmt + (parameters == null ? "" : " with " + parameters) + " in transaction " + id);
+                // the cursor owns its statement and closes it, so prepared ones are not taken from the cache
+                Statement statement = parameters == null ? connection.createStatement() : connection.prepareStatement(stmt);
+                try {
+                    statement.setQueryTimeout(remainingSeconds(deadline));
+                    ResultSet resultSet;
+                    if (parameters == null) {
+                        resultSet = statement.executeQuery(stmt);
+                    } else {
+                        PreparedStatement prepared = (PreparedStatement) statement;
+                        for (int i = 0; i < parameters.size(); i++) {
+                            prepared.setObject(i + 1, parameters.get(i));
+                        }
+                        resultSet = prepared.executeQuery();
+                    }
+                    callback.execute(new Cursor(id, statement, resultSet, filter));
+                } catch (SQLException e) {
+                    statement.close();
+                    throw e;
+                }
+            } catch (Exception e) {
+                LOG.error("An exception occured while opening cursor", e);
+                callback.execute(e);
+            }
         });
-        thread.start();
     }
 
-    public void rollback(Callback.NoParamsWithError callback) {
-        Thread thread = new Thread(() -> {
+    public void fetch(Cursor cursor, int max, Callback.OneParamWithError<List<List<Object>>> callback) {
+        checkOpen();
+        submit(cursor.getId(), false, callback::execute, () -> {
             try {
-                LOG.info("Rolling Back");
-                connection.rollback();
-                callback.execute(null);
+                callback.execute(cursor.fetch(max));
             } catch (Exception e) {
-                LOG.error("An exception occured while rolling back", e);
+                LOG.error("An exception occured while fetching rows", e);
                 callback.execute(e);
             }
+        });
+    }
+
+    // closes the cursor and rolls its transaction back in one task, the callback runs once either way
+    public void close(Cursor cursor, Callback.NoParamsWithError callback) {
+        checkOpen();
+        submit(cursor.getId(), false, callback::execute, () -> {
+            try {
+                cursor.close();
+            } catch (SQLException e) {
+                LOG.error("An exception occured while closing cursor", e);
+            }
+            callback.execute(rollbackNow(cursor.getId()));
+        });
+    }
+
+    public void commit(long id, Callback.NoParamsWithError callback) {
+        commit(id, true, callback);
+    }
 
+    // without sync the commit is left to be made durable by a group commit naming it later
+    public void commit(long id, boolean sync, Callback.NoParamsWithError callback) {
+        checkOpen();
+        submit(id, false, callback::execute, () -> {
+            Exception error = commitNow(id);
+            if (error == null && sync) error = syncNow();
+            callback.execute(error);
         });
-        thread.start();
+    }
+
+    // commits what is still open of the group, each after the work already queued for its transaction, then syncs the log
+    // once for all of them. the callback gets the transactions that failed to commit
+    public void commit(List<Long> ids, Callback.OneParamWithError<Map<Long, Exception>> callback) {
+        checkOpen();
+        Map<Long, Exception> errors = new ConcurrentHashMap<>();
+        AtomicInteger remaining = new AtomicInteger(ids.size() + 1);
+        Runnable committed = () -> {
+            if (remaining.decrementAndGet() > 0) return;
+            LOG.info("Syncing group of " + ids.size() + " transactions");
+            Exception error = syncNow();
+            if (error != null) {
+                callback.execute(error);
+            } else {
+                callback.execute(errors);
+            }
+        };
+        for (long id : ids) {
+            submit(id, false, (e) -> {
+                errors.put(id, e);
+                committed.run();
+            }, () -> {
+                Exception error = commitNow(id);
+                if (error != null) errors.put(id, error);
+                committed.run();
+            });
+        }
+        committed.run();
+    }
+
+    // runs on a worker, null once the transaction is committed or if there was nothing to commit
+    private Exception commitNow(long id) {
+        Connection connection = finish(id);
+        if (connection == null) {
+            LOG.info("Nothing to commit for transaction " + id);
+            return null;
+        }
+        Exception error = null;
+        try {
+            LOG.info("Comitting transaction " + id);
+            connection.commit();
+        } catch (Exception e) {
+            LOG.error("An exception occured while committing transaction " + id, e);
+            discard(connection);
+            error = e;
+        } finally {
+            // released before syncing, the next writer waiting for the slot goes on meanwhile
+            release(connection);
+        }
+        return error;
+    }
+
+    // sqlite does not sync the log on commit itself, one sync makes every commit written to it so far durable
+    private Exception syncNow() {
+        if (!profile.isSyncingCommits()) return null;
+        try {
+            synchronized (syncLock) {
+                if (log == null) log = FileChannel.open(new File(file.getPath() + "-wal").toPath(), StandardOpenOption.READ);
+                log.force(false);
+            }
+            syncs.incrementAndGet();
+            return null;
+        } catch (IOException e) {
+            LOG.error("An exception occured while syncing the write-ahead log", e);
+            return e;
+        }
+    }
+
+    public void rollback(long id, Callback.NoParamsWithError callback) {
+        checkOpen();
+        submit(id, false, callback::execute, () -> callback.execute(rollbackNow(id)));
+    }
+
+    // runs on a worker, null once the transaction is rolled back or if there was nothing to roll back
+    private Exception rollbackNow(long id) {
+        Connection connection = finish(id);
+        if (connection == null) {
+            LOG.info("Nothing to roll back for transaction " + id);
+            return null;
+        }
+        Exception error = null;
+        try {
+            LOG.info("Rolling Back transaction " + id);
+            connection.rollback();
+        } catch (Exception e) {
+            LOG.error("An exception occured while rolling back", e);
+            error = e;
+        } finally {
+            release(connection);
+        }
+        return error;
+    }
+
+    public void recover(Set<Long> commit, long before, Callback.NoParamsWithError callback) {
+        recover(commit, 0, before, callback);
+    }
+
+    // only transactions of the coordinator are touched, the ones of others sharing the station are still running.
+    // the ones to commit may be younger than before, they ended in doubt while the coordinator kept running
+    public void recover(Set<Long> commit, int coordinator, long before, Callback.NoParamsWithError callback) {
+        checkOpen();
+        Set<Long> held = new HashSet<>(transactions.keySet());
+        synchronized (waiting) {
+            held.addAll(waiting.keySet());
+        }
+        held.removeIf((id) -> !TransactionIds.belongsTo(id, coordinator) || id > before && !commit.contains(id));
+        LOG.info("Recovering " + held.size() + " transactions left open by Transaction Manager " + coordinator);
+        if (held.isEmpty()) {
+            callback.execute(null);
+            return;
+        }
+        AtomicInteger remaining = new AtomicInteger(held.size());
+        AtomicReference<Exception> error = new AtomicReference<>();
+        Callback.NoParamsWithError done = (err) -> {
+            if (err != null) error.compareAndSet(null, err);
+            if (remaining.decrementAndGet() == 0) callback.execute(error.get());
+        };
+        for (long id : held) {
+            if (commit.contains(id)) {
+                commit(id, done);
+            } else {
+                rollback(id, done);
+            }
+        }
+    }
+
+    // answers once a worker picks it up, so a station whose workers are stuck does not look alive
+    public void probe(Callback.NoParamsWithError callback) {
+        checkOpen();
+        engine.submit(this, () -> callback.execute(null), false);
+    }
+
+    // sqlite's online backup, taken from a read transaction that is opened first, so the copy is the database as of when pinned runs
+    public void snapshot(File target, Callback.NoParamsWithError pinned, Callback.NoParamsWithError done) {
+        checkOpen();
+        try {
+            engine.submit(target, () -> {
+                Connection snapshot = null;
+                try {
+                    snapshot = pool.open();
+                    try (Statement statement = snapshot.createStatement()) {
+                        statement.executeQuery("SELECT count(*) FROM sqlite_master").close();
+                    }
+                } catch (SQLException e) {
+                    LOG.error("An exception occured while starting snapshot", e);
+                    closeQuietly(snapshot);
+                    pinned.execute(e);
+                    return;
+                }
+                pinned.execute(null);
+                try (Statement statement = snapshot.createStatement()) {
+                    LOG.info("Copying database to " + target);
+                    statement.executeUpdate("backup to \"" + target.getAbsolutePath() + "\"");
+                    done.execute(null);
+                } catch (Exception e) {
+                    LOG.error("An exception occured while taking snapshot", e);
+                    done.execute(e);
+                } finally {
+                    closeQuietly(snapshot);
+                }
+            }, false);
+        } catch (RejectedExecutionException e) {
+            pinned.execute(e);
+        }
+    }
+
+    // replaces the whole database with a snapshot, nothing may run on the station meanwhile
+    public void restore(File source, Callback.NoParamsWithError callback) {
+        checkOpen();
+        try {
+            engine.submit(source, () -> {
+                Connection restore = null;
+                try {
+                    restore = pool.open();
+                    restore.setAutoCommit(true);
+                    try (Statement statement = restore.createStatement()) {
+                        LOG.info("Restoring database from " + source);
+                        statement.executeUpdate("restore from \"" + source.getAbsolutePath() + "\"");
+                    }
+                    callback.execute(null);
+                } catch (Exception e) {
+                    LOG.error("An exception occured while restoring snapshot", e);
+                    callback.execute(e);
+                } finally {
+                    closeQuietly(restore);
+                }
+            }, false);
+        } catch (RejectedExecutionException e) {
+            callback.execute(e);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) return;
+        try {
+            if (!connection.getAutoCommit()) connection.rollback();
+            connection.close();
+        } catch (SQLException e) {
+            LOG.error("An exception occured while closing connection", e);
+        }
+    }
+
+    private void submit(long id, boolean mayReject, Callback.NoParamsWithError rejected, Runnable task) {
+        try {
+            engine.submit(id, task, mayReject);
+        } catch (RejectedExecutionException e) {
+            rejected.execute(e);
+        }
+    }
+
+    public int getOpenTransactions() {
+        return transactions.size();
+    }
+
+    public int getWaitingTransactions() {
+        synchronized (waiting) {
+            return waiting.size();
+        }
+    }
+
+    public long getStatementCacheHits() {
+        return pool == null ? 0 : pool.getStatementCacheHits() + readPool.getStatementCacheHits();
+    }
+
+    public long getStatementCacheMisses() {
+        return pool == null ? 0 : pool.getStatementCacheMisses() + readPool.getStatementCacheMisses();
+    }
+
+    public StorageProfile getProfile() {
+        return profile;
+    }
+
+    public long getCheckpoints() {
+        Checkpointer checkpointer = this.checkpointer;
+        return checkpointer == null ? 0 : checkpointer.getCheckpoints();
+    }
+
+    public long getCheckpointTruncations() {
+        Checkpointer checkpointer = this.checkpointer;
+        return checkpointer == null ? 0 : checkpointer.getTruncations();
+    }
+
+    public long getCheckpointBusy() {
+        Checkpointer checkpointer = this.checkpointer;
+        return checkpointer == null ? 0 : checkpointer.getBusy();
+    }
+
+    public long getCheckpointedFrames() {
+        Checkpointer checkpointer = this.checkpointer;
+        return checkpointer == null ? 0 : checkpointer.getFrames();
+    }
+
+    public long getLastCheckpointMillis() {
+        Checkpointer checkpointer = this.checkpointer;
+        return checkpointer == null ? 0 : checkpointer.getLastMillis();
+    }
+
+    public long getSyncs() {
+        return syncs.get();
+    }
+
+    public long getWalBytes() {
+        Checkpointer checkpointer = this.checkpointer;
+        return checkpointer == null ? 0 : checkpointer.getWalBytes();
+    }
+
+    public ExecutionEngine getEngine() {
+        return engine;
+    }
+
+    // a transaction keeps the connection it got first, so a read followed by a write in it stays on the read pool and fails
+    private Connection transactionConnection(long id, long deadline, boolean read, long writer, boolean alone, Runnable retry, Callback.NoParamsWithError failed) throws SQLException {
+        Connection connection = transactions.get(id);
+        if (connection != null) return connection;
+        Map<Long, Waiter> yielding = new LinkedHashMap<>();
+        synchronized (waiting) {
+            if (writer != 0 && writing != null) {
+                // wait-die between coordinators, only the older one waits, so two stations never hold writers of different
+                // managers waiting for each other. the locks of a manager already order its own writers, they queue as before
+                if (!alone && TransactionIds.coordinator(id) != TransactionIds.coordinator(this.writer) && !older(writer, id, writerStamp, this.writer)) {
+                    throw new SQLException("Transaction " + id + " gave way to the older transaction " + this.writer + " writing on this station");
+                }
+                LOG.info("Transaction " + id + " waits for transaction " + this.writer + " writing on this station");
+                waiting.put(id, new Waiter(deadline, read, writer, alone, retry, failed));
+                return null;
+            }
+            connection = (read ? readPool : pool).tryAcquire();
+            if (connection == null) {
+                LOG.info("No " + (read ? "read " : "") + "connection available for transaction " + id + ", waiting");
+                waiting.put(id, new Waiter(deadline, read, 0, false, retry, failed));
+                return null;
+            }
+            if (writer != 0) {
+                writing = connection;
+                this.writer = id;
+                writerStamp = writer;
+                // the ones of other coordinators waiting behind a writer of their own now wait for this one, the younger give way
+                Iterator<Map.Entry<Long, Waiter>> iterator = waiting.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<Long, Waiter> entry = iterator.next();
+                    Waiter waiter = entry.getValue();
+                    if (waiter.writer == 0 || waiter.alone || TransactionIds.coordinator(entry.getKey()) == TransactionIds.coordinator(id)) continue;
+                    if (older(waiter.writer, entry.getKey(), writer, id)) continue;
+                    iterator.remove();
+                    yielding.put(entry.getKey(), waiter);
+                }
+            }
+        }
+        yielding.forEach((other, waiter) -> waiter.failed.execute(new SQLException("Transaction " + other + " gave way to the older transaction " + id + " writing on this station")));
+        transactions.put(id, connection);
+        return connection;
+    }
+
+    // stamps are logical times of the coordinators, equal ones are ordered by the id, whose top bits are the coordinator.
+    // every station compares two writers the same way, so the same one of them waits everywhere
+    static boolean older(long stamp, long id, long otherStamp, long otherId) {
+        return stamp < otherStamp || stamp == otherStamp && id < otherId;
+    }
+
+    private Connection finish(long id) {
+        Waiter waiter;
+        synchronized (waiting) {
+            waiter = waiting.remove(id);
+        }
+        if (waiter != null) {
+            waiter.failed.execute(new SQLException("Transaction " + id + " ended while waiting for " + (waiter.writer != 0 ? "the writer slot" : "a connection")));
+        }
+        return transactions.remove(id);
+    }
+
+    private void release(Connection connection) {
+        Waiter next = null;
+        Waiter nextWriter = null;
+        Map<Long, Waiter> expired = new LinkedHashMap<>();
+        synchronized (waiting) {
+            boolean read = readPool.owns(connection);
+            (read ? readPool : pool).release(connection);
+            // the slot is given up once the writer committed or rolled back, not before
+            if (connection == writing) {
+                writing = null;
+                long nextId = 0;
+                for (Map.Entry<Long, Waiter> entry : waiting.entrySet()) {
+                    Waiter waiter = entry.getValue();
+                    if (waiter.writer == 0 || waiter.deadline - System.nanoTime() <= 0) continue;
+                    if (nextWriter == null || older(waiter.writer, entry.getKey(), nextWriter.writer, nextId)) {
+                        nextWriter = waiter;
+                        nextId = entry.getKey();
+                    }
+                }
+                if (nextWriter != null) waiting.remove(nextId);
+            }
+            Iterator<Map.Entry<Long, Waiter>> iterator = waiting.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, Waiter> entry = iterator.next();
+                boolean live = entry.getValue().deadline - System.nanoTime() > 0;
+                // the connection is only handed to a transaction waiting for one of its pool, not for the writer slot
+                if (live && (entry.getValue().read != read || entry.getValue().writer != 0)) continue;
+                iterator.remove();
+                if (live) {
+                    next = entry.getValue();
+                    break;
+                }
+                expired.put(entry.getKey(), entry.getValue());
+            }
+        }
+        expired.forEach((id, waiter) -> waiter.failed.execute(new SQLException("No database connection available for transaction " + id + " before its timeout")));
+        if (nextWriter != null) nextWriter.retry.run();
+        if (next != null) next.retry.run();
+    }
+
+    private static int remainingSeconds(long deadline) {
+        return (int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(deadline - System.nanoTime()));
+    }
+
+    private StatementCache statementCache(Connection connection) {
+        return readPool.owns(connection) ? readPool.getStatementCache(connection) : pool.getStatementCache(connection);
+    }
+
+    private void discard(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            LOG.error("An exception occured while discarding failed transaction", e);
+        }
     }
 
     private void checkOpen() {
@@ -81,24 +719,58 @@ public class DatabaseConnection {
 
     public void open() throws SQLException {
         if (connection == null) {
-            try {
-                LOG.info("Opening db connection");
-                Class.forName("org.sqlite.JDBC");
-                connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
-                connection.setAutoCommit(false);
-                connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
-            } catch (ClassNotFoundException e) {
-                LOG.error("An exception occured while opening db connection", e);
-                throw new RuntimeException(e);
-            }
+            LOG.info("Opening db connection with storage profile " + profile);
+            pool = new ConnectionPool(file, poolSize, profile, false);
+            pool.useWriteAheadLog();
+            readPool = new ConnectionPool(file, poolSize, profile, true);
+            connection = pool.open();
+            checkpointer = new Checkpointer(file, pool.open(true), profile);
         }
     }
 
     public void close() throws SQLException {
         if (connection != null) {
             LOG.info("Closing db connection");
+            checkpointer.close();
+            checkpointer = null;
             connection.close();
             connection = null;
+            pool.close();
+            pool = null;
+            readPool.close();
+            readPool = null;
+            transactions.clear();
+            writing = null;
+            synchronized (syncLock) {
+                if (log != null) {
+                    try {
+                        log.close();
+                    } catch (IOException e) {
+                        LOG.error("An exception occured while closing the write-ahead log", e);
+                    }
+                    log = null;
+                }
+            }
+            engine.shutdown();
+        }
+    }
+
+    private static class Waiter {
+        private final long deadline;
+        private final boolean read;
+        // when the writer started if it waits for the writer slot, otherwise it waits for a connection
+        private final long writer;
+        private final boolean alone;
+        private final Runnable retry;
+        private final Callback.NoParamsWithError failed;
+
+        private Waiter(long deadline, boolean read, long writer, boolean alone, Runnable retry, Callback.NoParamsWithError failed) {
+            this.deadline = deadline;
+            this.read = read;
+            this.writer = writer;
+            this.alone = alone;
+            this.retry = retry;
+            this.failed = failed;
         }
     }
 
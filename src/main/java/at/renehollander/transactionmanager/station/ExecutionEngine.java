@@ -0,0 +1,183 @@
+package at.renehollander.transactionmanager.station;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ExecutionEngine {
+    private static Logger LOG = LoggerFactory.getLogger(ExecutionEngine.class);
+
+    public static final int DEFAULT_QUEUE_LIMIT = 1024;
+
+    public enum Mode {
+        BOUNDED, VIRTUAL
+    }
+
+    private final Mode mode;
+    private final ExecutorService executor;
+    private final int queueLimit;
+
+    // tasks sharing a key run one after another, the head of each deque is the running task
+    private final Map<Object, ArrayDeque<Task>> queues;
+
+    private final AtomicInteger pending;
+    private final AtomicLong executed;
+    private final AtomicLong rejected;
+    private final AtomicLong waitNanos;
+    private final AtomicLong maxWaitNanos;
+
+    private ExecutionEngine(Mode mode, ExecutorService executor, int queueLimit) {
+        if (queueLimit < 1) throw new IllegalArgumentException("queue limit must be at least 1");
+        this.mode = mode;
+        this.executor = executor;
+        this.queueLimit = queueLimit;
+        this.queues = new ConcurrentHashMap<>();
+        this.pending = new AtomicInteger();
+        this.executed = new AtomicLong();
+        this.rejected = new AtomicLong();
+        this.waitNanos = new AtomicLong();
+        this.maxWaitNanos = new AtomicLong();
+    }
+
+    public static ExecutionEngine bounded(int threads, int queueLimit) {
+        if (threads < 1) throw new IllegalArgumentException("thread count must be at least 1");
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = (runnable) -> {
+            Thread thread = new Thread(runnable, "station-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), factory);
+        LOG.info("Using bounded execution engine with " + threads + " threads and a queue limit of " + queueLimit);
+        return new ExecutionEngine(Mode.BOUNDED, executor, queueLimit);
+    }
+
+    public static ExecutionEngine virtual(int queueLimit) {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            LOG.info("Using virtual thread execution engine with a queue limit of " + queueLimit);
+            return new ExecutionEngine(Mode.VIRTUAL, executor, queueLimit);
+        } catch (ReflectiveOperationException e) {
+            int threads = Runtime.getRuntime().availableProcessors() * 2;
+            LOG.warn("Virtual threads are not available on this JVM, falling back to " + threads + " platform threads");
+            return bounded(threads, queueLimit);
+        }
+    }
+
+    public void submit(Object key, Runnable runnable) {
+        submit(key, runnable, true);
+    }
+
+    public void submit(Object key, Runnable runnable, boolean mayReject) {
+        int depth = pending.incrementAndGet();
+        if (mayReject && depth > queueLimit) {
+            pending.decrementAndGet();
+            rejected.incrementAndGet();
+            LOG.warn("Rejecting work, " + (depth - 1) + " tasks are queued (limit " + queueLimit + ")");
+            throw new RejectedExecutionException("Station is overloaded, " + (depth - 1) + " tasks are queued");
+        }
+        Task task = new Task(runnable);
+        boolean[] first = new boolean[1];
+        queues.compute(key, (k, tasks) -> {
+            if (tasks == null) tasks = new ArrayDeque<>();
+            tasks.add(task);
+            first[0] = tasks.size() == 1;
+            return tasks;
+        });
+        if (first[0]) schedule(key, task);
+    }
+
+    private void schedule(Object key, Task task) {
+        executor.execute(() -> run(key, task));
+    }
+
+    private void run(Object key, Task task) {
+        long waited = System.nanoTime() - task.enqueued;
+        waitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        try {
+            task.runnable.run();
+        } catch (Exception e) {
+            LOG.error("An exception occured while running task", e);
+        } finally {
+            pending.decrementAndGet();
+            executed.incrementAndGet();
+            Task[] next = new Task[1];
+            queues.compute(key, (k, tasks) -> {
+                tasks.poll();
+                next[0] = tasks.peek();
+                return tasks.isEmpty() ? null : tasks;
+            });
+            if (next[0] != null) schedule(key, next[0]);
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getQueueLimit() {
+        return queueLimit;
+    }
+
+    public int getQueueDepth() {
+        return pending.get();
+    }
+
+    public long getExecuted() {
+        return executed.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public double getAverageWaitMillis() {
+        long count = executed.get();
+        return count == 0 ? 0 : waitNanos.get() / (double) count / 1_000_000;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000d;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutionEngine{" +
+                "mode=" + mode +
+                ", queueDepth=" + getQueueDepth() +
+                ", queueLimit=" + queueLimit +
+                ", executed=" + getExecuted() +
+                ", rejected=" + getRejected() +
+                ", averageWaitMillis=" + String.format("%.3f", getAverageWaitMillis()) +
+                ", maxWaitMillis=" + String.format("%.3f", getMaxWaitMillis()) +
+                '}';
+    }
+
+    private static class Task {
+        private final Runnable runnable;
+        private final long enqueued;
+
+        private Task(Runnable runnable) {
+            this.runnable = runnable;
+            this.enqueued = System.nanoTime();
+        }
+    }
+
+}
@@ -0,0 +1,19 @@
+package at.renehollander.transactionmanager.station;
+
+import io.socket.client.Ack;
+import io.socket.emitter.Emitter;
+
+// the connection to the Transaction Manager, listeners get the JSONObject payload first and an Ack last if a reply is expected
+public interface Link {
+
+    void on(String event, Emitter.Listener listener);
+
+    void emit(String event, Object data);
+
+    void emit(String event, Object data, Ack ack);
+
+    void connect();
+
+    void close();
+
+}
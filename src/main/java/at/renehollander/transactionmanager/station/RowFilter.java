@@ -0,0 +1,67 @@
+package at.renehollander.transactionmanager.station;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class RowFilter {
+
+    private final String column;
+    private final int modulus;
+    private final Set<Integer> slots;
+    private final List<long[]> ranges;
+
+    private RowFilter(String column, int modulus, Set<Integer> slots, List<long[]> ranges) {
+        this.column = column;
+        this.modulus = modulus;
+        this.slots = slots;
+        this.ranges = ranges;
+    }
+
+    public static RowFilter parse(JSONObject filter) throws JSONException {
+        if (filter == null) return null;
+        String column = filter.getString("column");
+        if (filter.has("slots")) {
+            JSONArray array = filter.getJSONArray("slots");
+            Set<Integer> slots = new HashSet<>();
+            for (int i = 0; i < array.length(); i++) {
+                slots.add(array.getInt(i));
+            }
+            return new RowFilter(column, filter.getInt("modulus"), slots, null);
+        }
+        JSONArray array = filter.getJSONArray("ranges");
+        List<long[]> ranges = new ArrayList<>();
+        for (int i = 0; i < array.length(); i++) {
+            JSONArray range = array.getJSONArray(i);
+            ranges.add(new long[]{range.getLong(0), range.getLong(1)});
+        }
+        return new RowFilter(column, 0, null, ranges);
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    // keys are normalized the same way the manager's partition map reads them from statements
+    public boolean accept(String key) {
+        if (key == null) return false;
+        if (key.matches("-?\\d+")) key = String.valueOf(Long.parseLong(key));
+        if (slots != null) return slots.contains(Math.floorMod(key.hashCode(), modulus));
+        long value;
+        try {
+            value = Long.parseLong(key);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        for (long[] range : ranges) {
+            if (value >= range[0] && value < range[1]) return true;
+        }
+        return false;
+    }
+
+}
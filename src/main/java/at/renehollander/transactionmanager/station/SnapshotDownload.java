@@ -0,0 +1,215 @@
+package at.renehollander.transactionmanager.station;
+
+import at.renehollander.transactionmanager.Maps;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// joins by copying a peer: the snapshot is pulled through the manager one chunk at a time, throttled to the configured rate, into a
+// file next to the database. what arrived survives a reconnect or restart and is resumed while the manager still has the snapshot.
+// once complete the copy replaces the database and the manager replays what committed since before the station takes part
+class SnapshotDownload {
+    private static Logger LOG = LoggerFactory.getLogger(SnapshotDownload.class);
+
+    private static final long RETRY_DELAY = 1000;
+    private static final long PENDING_DELAY = 100;
+
+    private final String name;
+    private final Link link;
+    private final DatabaseConnection databaseConnection;
+    private final SnapshotOptions options;
+    private final File file;
+    private final File progress;
+    private final ScheduledExecutorService executor;
+
+    // bumped on every join so answers to an earlier one are ignored
+    private final AtomicInteger generation = new AtomicInteger();
+    private long started;
+    private long transferred;
+
+    SnapshotDownload(String name, File folder, Link link, DatabaseConnection databaseConnection, SnapshotOptions options) {
+        this.name = name;
+        this.link = link;
+        this.databaseConnection = databaseConnection;
+        this.options = options;
+        this.file = new File(folder, name + ".db.snapshot");
+        this.progress = new File(folder, name + ".db.snapshot.properties");
+        this.executor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "snapshot-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void join() {
+        int current = generation.incrementAndGet();
+        Map<String, Object> data = Maps.of("snapshot", true);
+        if (options.getDonor() != null) data.put("donor", options.getDonor());
+        Properties resume = load();
+        if (resume != null) data.put("resume", Long.parseLong(resume.getProperty("snapshot")));
+        link.emit("join", data, (args) -> later(current, () -> {
+            JSONObject response = response(args);
+            try {
+                if (response.has("error")) {
+                    LOG.error("Could not start copying a peer: " + response.getString("error"));
+                    retry(current, false);
+                } else if (!response.has("snapshot")) {
+                    LOG.info("Joined with the own database, there is no peer to copy");
+                    discard();
+                } else {
+                    start(current, response.getLong("snapshot"), response.getString("donor"), response.optBoolean("resumed", false));
+                }
+            } catch (JSONException | IOException e) {
+                LOG.error("An exception occured while starting to copy a peer", e);
+                retry(current, true);
+            }
+        }));
+    }
+
+    private void start(int current, long snapshot, String donor, boolean resumed) throws IOException {
+        long offset = resumed && file.exists() ? file.length() : 0;
+        if (offset == 0) {
+            try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                out.setLength(0);
+            }
+            Properties properties = new Properties();
+            properties.setProperty("snapshot", String.valueOf(snapshot));
+            properties.setProperty("donor", donor);
+            try (OutputStream out = new FileOutputStream(progress)) {
+                properties.store(out, "snapshot copied by " + name);
+            }
+        }
+        LOG.info((offset > 0 ? "Resuming" : "Starting") + " to copy snapshot " + snapshot + " of " + donor + " at byte " + offset);
+        started = System.nanoTime();
+        transferred = 0;
+        pull(current, snapshot, offset);
+    }
+
+    private void pull(int current, long snapshot, long offset) {
+        link.emit("snapshotChunk", Maps.of("snapshot", snapshot, "offset", offset, "length", options.getChunkSize()), (args) -> later(current, () -> {
+            JSONObject response = response(args);
+            try {
+                if (response.has("error")) {
+                    LOG.error("Could not copy snapshot " + snapshot + ": " + response.getString("error"));
+                    retry(current, false);
+                    return;
+                }
+                if (response.optBoolean("pending", false)) {
+                    executor.schedule(() -> pull(current, snapshot, offset), PENDING_DELAY, TimeUnit.MILLISECONDS);
+                    return;
+                }
+                byte[] data = Base64.getDecoder().decode(response.getString("data"));
+                long size = response.getLong("size");
+                if (data.length == 0 && offset < size) throw new IOException("got no data at byte " + offset + " of " + size);
+                try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                    out.seek(offset);
+                    out.write(data);
+                }
+                long next = offset + data.length;
+                transferred += data.length;
+                if (next >= size) {
+                    finish(current, snapshot, size, response.getLong("checksum"));
+                } else {
+                    executor.schedule(() -> pull(current, snapshot, next), throttle(), TimeUnit.NANOSECONDS);
+                }
+            } catch (JSONException | IOException | IllegalArgumentException e) {
+                LOG.error("An exception occured while copying snapshot " + snapshot, e);
+                retry(current, true);
+            }
+        }));
+    }
+
+    // how long to wait so the transfer so far does not exceed the configured rate
+    private long throttle() {
+        if (options.getBytesPerSecond() == 0) return 0;
+        long due = started + (long) (transferred * (double) TimeUnit.SECONDS.toNanos(1) / options.getBytesPerSecond());
+        return Math.max(0, due - System.nanoTime());
+    }
+
+    private void finish(int current, long snapshot, long size, long checksum) throws IOException {
+        if (file.length() != size || SnapshotStore.checksum(file, size) != checksum) {
+            throw new IOException("snapshot " + snapshot + " arrived damaged");
+        }
+        LOG.info("Copied snapshot " + snapshot + " of " + size + " bytes, restoring it");
+        databaseConnection.restore(file, (err) -> later(current, () -> {
+            if (err != null) {
+                retry(current, true);
+                return;
+            }
+            link.emit("snapshotRestored", Maps.of("snapshot", snapshot), (args) -> later(current, () -> {
+                JSONObject response = response(args);
+                // the copy is in place either way, if catching up failed the next one starts over
+                discard();
+                if (response.has("error")) {
+                    LOG.error("Could not catch up after restoring snapshot " + snapshot + ": " + response.optString("error"));
+                    retry(current, false);
+                } else {
+                    LOG.info("Caught up with snapshot " + snapshot + " and joined");
+                }
+            }));
+        }));
+    }
+
+    private void retry(int current, boolean startOver) {
+        if (startOver) discard();
+        executor.schedule(() -> {
+            if (generation.get() == current) join();
+        }, RETRY_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    private Properties load() {
+        if (!progress.exists() || !file.exists()) return null;
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(progress)) {
+            properties.load(in);
+            Long.parseLong(properties.getProperty("snapshot"));
+            return properties;
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Ignoring unreadable snapshot progress " + progress, e);
+            return null;
+        }
+    }
+
+    private void discard() {
+        if (progress.exists() && !progress.delete()) LOG.error("Could not delete " + progress);
+        if (file.exists() && !file.delete()) LOG.error("Could not delete " + file);
+    }
+
+    // answers arrive on the transport's threads, they are handled one after another here unless a later join replaced theirs
+    private void later(int current, Runnable task) {
+        try {
+            executor.execute(() -> {
+                if (generation.get() == current) task.run();
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.info("Ignoring answer after the station was closed");
+        }
+    }
+
+    private static JSONObject response(Object[] args) {
+        return args.length > 0 && args[0] instanceof JSONObject ? (JSONObject) args[0] : new JSONObject();
+    }
+
+    void close() {
+        generation.incrementAndGet();
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,37 @@
+package at.renehollander.transactionmanager.station;
+
+// how a station that may be behind its peers copies one of them whenever it connects, before it takes part in transactions
+public class SnapshotOptions {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private final String donor;
+    private final long bytesPerSecond;
+    private final int chunkSize;
+
+    // a null donor lets the manager pick one, 0 bytes per second does not throttle
+    public SnapshotOptions(String donor, long bytesPerSecond) {
+        this(donor, bytesPerSecond, DEFAULT_CHUNK_SIZE);
+    }
+
+    public SnapshotOptions(String donor, long bytesPerSecond, int chunkSize) {
+        if (bytesPerSecond < 0) throw new IllegalArgumentException("transfer rate must not be negative");
+        if (chunkSize < 1) throw new IllegalArgumentException("chunk size must be positive");
+        this.donor = donor;
+        this.bytesPerSecond = bytesPerSecond;
+        this.chunkSize = chunkSize;
+    }
+
+    public String getDonor() {
+        return donor;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+}
@@ -0,0 +1,111 @@
+package at.renehollander.transactionmanager.station;
+
+import at.renehollander.transactionmanager.Callback;
+import at.renehollander.transactionmanager.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+// copies of this station's database handed out to stations catching up, one file next to the database per snapshot
+class SnapshotStore {
+    private static Logger LOG = LoggerFactory.getLogger(SnapshotStore.class);
+
+    private final File folder;
+    private final String prefix;
+    private final DatabaseConnection databaseConnection;
+    private final Map<Long, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    SnapshotStore(File folder, String name, DatabaseConnection databaseConnection) {
+        this.folder = folder;
+        this.prefix = name + ".db.snapshot-";
+        this.databaseConnection = databaseConnection;
+        // nobody resumes copying a snapshot of an earlier run, the manager hands out new ones after a restart
+        File[] stale = folder.listFiles((dir, file) -> file.startsWith(prefix));
+        if (stale != null) {
+            for (File file : stale) {
+                if (!file.delete()) LOG.error("Could not delete stale snapshot " + file);
+            }
+        }
+    }
+
+    // pinned runs once the snapshot is fixed to the current state of the database, the copy is written after that
+    void take(long id, Callback.NoParamsWithError pinned) {
+        Snapshot snapshot = new Snapshot(new File(folder, prefix + id));
+        Snapshot previous = snapshots.put(id, snapshot);
+        if (previous != null) previous.file.delete();
+        LOG.info("Taking snapshot " + id + " for a station catching up");
+        databaseConnection.snapshot(snapshot.file, (err) -> {
+            if (err != null) snapshots.remove(id, snapshot);
+            pinned.execute(err);
+        }, (err) -> {
+            try {
+                if (err != null) throw err;
+                snapshot.size = snapshot.file.length();
+                snapshot.checksum = checksum(snapshot.file, snapshot.size);
+                snapshot.ready = true;
+                LOG.info("Snapshot " + id + " of " + snapshot.size + " bytes is ready");
+            } catch (Exception e) {
+                LOG.error("An exception occured while taking snapshot " + id, e);
+                snapshot.error = e.getMessage() == null ? e.toString() : e.getMessage();
+                snapshot.file.delete();
+            }
+        });
+    }
+
+    Map<String, Object> chunk(long id, long offset, int length) throws IOException {
+        Snapshot snapshot = snapshots.get(id);
+        if (snapshot == null) return Maps.of("error", "snapshot " + id + " does not exist");
+        if (snapshot.error != null) return Maps.of("error", snapshot.error);
+        if (!snapshot.ready) return Maps.of("pending", true);
+        if (offset < 0 || offset > snapshot.size) return Maps.of("error", "offset " + offset + " is outside of snapshot " + id);
+        byte[] data = new byte[(int) Math.min(length, snapshot.size - offset)];
+        try (RandomAccessFile file = new RandomAccessFile(snapshot.file, "r")) {
+            file.seek(offset);
+            file.readFully(data);
+        }
+        return Maps.of("data", Base64.getEncoder().encodeToString(data), "size", snapshot.size, "checksum", snapshot.checksum);
+    }
+
+    void drop(long id) {
+        Snapshot snapshot = snapshots.remove(id);
+        if (snapshot == null) return;
+        LOG.info("Dropping snapshot " + id);
+        snapshot.file.delete();
+    }
+
+    static long checksum(File file, long length) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        long remaining = length;
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) > 0) {
+                crc.update(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static class Snapshot {
+        private final File file;
+        private volatile long size;
+        private volatile long checksum;
+        private volatile boolean ready;
+        private volatile String error;
+
+        private Snapshot(File file) {
+            this.file = file;
+        }
+    }
+
+}
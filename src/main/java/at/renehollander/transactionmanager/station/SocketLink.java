@@ -0,0 +1,49 @@
+package at.renehollander.transactionmanager.station;
+
+import io.socket.client.Ack;
+import io.socket.client.IO;
+import io.socket.client.Socket;
+import io.socket.emitter.Emitter;
+
+import java.net.URISyntaxException;
+
+public class SocketLink implements Link {
+
+    private final Socket socket;
+
+    public SocketLink(String name, String hostname, int port) throws URISyntaxException {
+        IO.Options opts = new IO.Options();
+        opts.query = "name=" + name;
+        socket = IO.socket("http://" + hostname + ":" + port, opts);
+    }
+
+    @Override
+    public void on(String event, Emitter.Listener listener) {
+        socket.on(event, listener);
+    }
+
+    @Override
+    public void emit(String event, Object data) {
+        socket.emit(event, data);
+    }
+
+    @Override
+    public void emit(String event, Object data, Ack ack) {
+        socket.emit(event, new Object[]{data}, ack);
+    }
+
+    @Override
+    public void connect() {
+        socket.connect();
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+    }
+
+    public Socket getSocket() {
+        return socket;
+    }
+
+}
@@ -0,0 +1,68 @@
+package at.renehollander.transactionmanager.station;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// only used by the transaction currently holding the connection, so it needs no locking of its own
+public class StatementCache {
+    private static Logger LOG = LoggerFactory.getLogger(StatementCache.class);
+
+    public static final int DEFAULT_SIZE = 64;
+
+    private final Connection connection;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+
+    public StatementCache(Connection connection, int size, AtomicLong hits, AtomicLong misses) {
+        this.connection = connection;
+        this.hits = hits;
+        this.misses = misses;
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= size) return false;
+                close(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement != null) {
+            hits.incrementAndGet();
+            return statement;
+        }
+        misses.incrementAndGet();
+        statement = connection.prepareStatement(sql);
+        statements.put(sql, statement);
+        return statement;
+    }
+
+    // a statement that failed may be left in an unusable state, so it is prepared again next time
+    public void invalidate(String sql) {
+        PreparedStatement statement = statements.remove(sql);
+        if (statement != null) close(statement);
+    }
+
+    public int size() {
+        return statements.size();
+    }
+
+    private static void close(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            LOG.error("An exception occured while closing cached statement", e);
+        }
+    }
+
+}
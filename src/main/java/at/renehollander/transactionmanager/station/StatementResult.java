@@ -0,0 +1,51 @@
+package at.renehollander.transactionmanager.station;
+
+import java.util.Locale;
+
+public class StatementResult {
+
+    private final boolean resultSet;
+    private final int updateCount;
+    private final boolean readOnly;
+
+    public StatementResult(String sql, boolean resultSet, int updateCount) {
+        this.resultSet = resultSet;
+        this.updateCount = updateCount;
+        this.readOnly = isReadOnly(sql, resultSet, updateCount);
+    }
+
+    public boolean isResultSet() {
+        return resultSet;
+    }
+
+    public int getUpdateCount() {
+        return updateCount;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    // DDL also reports an update count of 0, so only plain queries and DML that touched no rows count as read-only
+    public static boolean isReadOnly(String sql, boolean resultSet, int updateCount) {
+        String keyword = firstKeyword(sql);
+        if (resultSet) return keyword.equals("SELECT");
+        return updateCount == 0 && (keyword.equals("INSERT") || keyword.equals("UPDATE") || keyword.equals("DELETE") || keyword.equals("REPLACE"));
+    }
+
+    private static String firstKeyword(String sql) {
+        String trimmed = sql.trim();
+        int end = 0;
+        while (end < trimmed.length() && Character.isLetter(trimmed.charAt(end))) end++;
+        return trimmed.substring(0, end).toUpperCase(Locale.ROOT);
+    }
+
+    @Override
+    public String toString() {
+        return "StatementResult{" +
+                "resultSet=" + resultSet +
+                ", updateCount=" + updateCount +
+                ", readOnly=" + readOnly +
+                '}';
+    }
+}
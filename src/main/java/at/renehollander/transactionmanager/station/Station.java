@@ -1,63 +1,220 @@
 package at.renehollander.transactionmanager.station;
 
 import at.renehollander.transactionmanager.Maps;
+import at.renehollander.transactionmanager.Transport;
+import at.renehollander.transactionmanager.metrics.Counter;
+import at.renehollander.transactionmanager.metrics.Histogram;
+import at.renehollander.transactionmanager.metrics.Metrics;
 import io.socket.client.Ack;
-import io.socket.client.IO;
 import io.socket.client.Socket;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.URISyntaxException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Station {
     private static Logger LOG = LoggerFactory.getLogger(Station.class);
 
+    // a cursor whose last chunk the manager did not acknowledge for this long is closed, like one of a lost link
+    private static final long CURSOR_IDLE_TIMEOUT = TimeUnit.SECONDS.toNanos(60);
+
     private String name;
 
     private DatabaseConnection databaseConnection;
-    private Socket socket;
+
+    private final Metrics metrics;
+    private final Histogram executeLatency;
+    private final Histogram batchLatency;
+    private final Histogram insertLatency;
+    private final Histogram commitLatency;
+    private final Histogram rollbackLatency;
+    private final Counter failedStatements;
+    private final List<Link> links = new ArrayList<>();
+    private final int managers;
+    // the highest writer stamp of any coordinator seen so far
+    private final AtomicLong clock = new AtomicLong();
+    private final SnapshotStore snapshots;
+    private SnapshotDownload download;
+    // cursors streaming rows, each holds a read transaction that pins the write-ahead log until it is closed
+    private final Map<Long, Stream> streams = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper;
 
     public Station(String name, File dbPath, String hostname, int port) {
+        this(name, dbPath, hostname, port, DatabaseConnection.DEFAULT_POOL_SIZE);
+    }
+
+    public Station(String name, File dbPath, String hostname, int port, int poolSize) {
+        this(name, dbPath, hostname, port, poolSize, ExecutionEngine.bounded(poolSize, ExecutionEngine.DEFAULT_QUEUE_LIMIT));
+    }
+
+    public Station(String name, File dbPath, String hostname, int port, int poolSize, ExecutionEngine engine) {
+        this(name, dbPath, hostname, port, poolSize, engine, Transport.SOCKET_IO);
+    }
+
+    public Station(String name, File dbPath, String hostname, int port, int poolSize, ExecutionEngine engine, Transport transport) {
+        this(name, dbPath, hostname, port, poolSize, engine, transport, null);
+    }
+
+    // with snapshot options the station copies a peer every time it connects, otherwise it joins with its own database
+    public Station(String name, File dbPath, String hostname, int port, int poolSize, ExecutionEngine engine, Transport transport, SnapshotOptions snapshot) {
+        this(name, dbPath, hostname, port, poolSize, engine, transport, snapshot, StorageProfile.DURABLE);
+    }
+
+    public Station(String name, File dbPath, String hostname, int port, int poolSize, ExecutionEngine engine, Transport transport, SnapshotOptions snapshot, StorageProfile profile) {
+        this(name, dbPath, Collections.singletonList(InetSocketAddress.createUnresolved(hostname, port)), poolSize, engine, transport, snapshot, profile);
+    }
+
+    // connected to several coordinators the station runs the transactions of each, a copy of a peer needs a single one
+    public Station(String name, File dbPath, List<InetSocketAddress> managers, int poolSize, ExecutionEngine engine, Transport transport, SnapshotOptions snapshot, StorageProfile profile) {
+        if (managers.isEmpty()) throw new IllegalArgumentException("a station needs at least one manager");
+        if (snapshot != null && managers.size() > 1) throw new IllegalArgumentException("a station copying a peer can only connect to one manager");
         this.name = name;
+        this.managers = managers.size();
 
-        this.databaseConnection = new DatabaseConnection(new File(dbPath, name + ".db"));
+        this.databaseConnection = new DatabaseConnection(new File(dbPath, name + ".db"), poolSize, engine, profile);
         try {
             this.databaseConnection.open();
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
 
-        try {
-            LOG.info("Connecting to manager " + hostname + ":" + port);
-            IO.Options opts = new IO.Options();
-            opts.query = "name=" + getName();
-            socket = IO.socket("http://" + hostname + ":" + port, opts);
-
-            socket.on(Socket.EVENT_CONNECT, (args) -> LOG.info("Connected to manager"));
-            socket.on(Socket.EVENT_CONNECT_ERROR, (args) -> LOG.info("Error connecting to manager"));
-            socket.on(Socket.EVENT_CONNECT_TIMEOUT, (args) -> LOG.info("Connection Timed out"));
-            socket.on(Socket.EVENT_DISCONNECT, (args) -> LOG.info("Disconnected from manager"));
-
-            socket.on("execute", this::onExecute);
-            socket.on("commit", this::onCommit);
-            socket.on("rollback", this::onRollback);
-
-            socket.connect();
-        } catch (URISyntaxException e) {
-            throw new RuntimeException(e);
+        metrics = new Metrics("station-" + name);
+        executeLatency = metrics.histogram("execute");
+        batchLatency = metrics.histogram("executeBatch");
+        insertLatency = metrics.histogram("insertRows");
+        commitLatency = metrics.histogram("commit");
+        rollbackLatency = metrics.histogram("rollback");
+        failedStatements = metrics.counter("statements.failed");
+        metrics.gauge("transactions.open", databaseConnection::getOpenTransactions);
+        metrics.gauge("transactions.waiting", databaseConnection::getWaitingTransactions);
+        metrics.gauge("queries.open", streams::size);
+        metrics.gauge("engine.queueDepth", engine::getQueueDepth);
+        metrics.gauge("engine.executed", engine::getExecuted);
+        metrics.gauge("engine.rejected", engine::getRejected);
+        metrics.gauge("statementCache.hits", databaseConnection::getStatementCacheHits);
+        metrics.gauge("statementCache.misses", databaseConnection::getStatementCacheMisses);
+        metrics.gauge("storage.checkpoints", databaseConnection::getCheckpoints);
+        metrics.gauge("storage.checkpointedFrames", databaseConnection::getCheckpointedFrames);
+        metrics.gauge("storage.checkpointMillis", databaseConnection::getLastCheckpointMillis);
+        metrics.gauge("storage.truncations", databaseConnection::getCheckpointTruncations);
+        metrics.gauge("storage.truncationsBusy", databaseConnection::getCheckpointBusy);
+        metrics.gauge("storage.walBytes", databaseConnection::getWalBytes);
+        metrics.gauge("storage.syncs", databaseConnection::getSyncs);
+        metrics.register();
+
+        snapshots = new SnapshotStore(dbPath, name, databaseConnection);
+
+        sweeper = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "cursor-sweeper-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long sweep = TimeUnit.NANOSECONDS.toSeconds(CURSOR_IDLE_TIMEOUT) / 4;
+        sweeper.scheduleWithFixedDelay(this::closeIdle, sweep, sweep, TimeUnit.SECONDS);
+
+        for (InetSocketAddress manager : managers) {
+            String hostname = manager.getHostString();
+            int port = manager.getPort();
+            try {
+                LOG.info("Connecting to manager " + hostname + ":" + port + " using " + transport);
+                Link link = transport == Transport.BINARY ? new BinaryLink(getName(), hostname, port) : new SocketLink(getName(), hostname, port);
+                links.add(link);
+
+                if (snapshot != null) download = new SnapshotDownload(name, dbPath, link, databaseConnection, snapshot);
+
+                link.on(Socket.EVENT_CONNECT, (args) -> {
+                    LOG.info("Connected to manager " + hostname + ":" + port);
+                    join(link);
+                });
+                link.on(Socket.EVENT_CONNECT_ERROR, (args) -> LOG.info("Error connecting to manager " + hostname + ":" + port));
+                link.on(Socket.EVENT_CONNECT_TIMEOUT, (args) -> LOG.info("Connection to manager " + hostname + ":" + port + " Timed out"));
+                link.on(Socket.EVENT_DISCONNECT, (args) -> {
+                    LOG.info("Disconnected from manager " + hostname + ":" + port);
+                    // nobody is left to acknowledge their rows
+                    streams.forEach((id, stream) -> {
+                        if (stream.link == link) closeStream(id);
+                    });
+                });
+
+                link.on("execute", this::onExecute);
+                link.on("executeBatch", this::onExecuteBatch);
+                link.on("insertRows", this::onInsertRows);
+                link.on("commit", this::onCommit);
+                link.on("rollback", this::onRollback);
+                link.on("recover", this::onRecover);
+                link.on("query", (args) -> onQuery(link, args));
+                link.on("probe", this::onProbe);
+                link.on("snapshot", this::onSnapshot);
+                link.on("snapshotChunk", this::onSnapshotChunk);
+                link.on("snapshotDone", this::onSnapshotDone);
+
+                link.connect();
+            } catch (URISyntaxException e) {
+                throw new RuntimeException(e);
+            }
         }
     }
 
     private void onCommit(Object[] datas) {
-        LOG.info("Recieved commit from Transaction Manager");
         Ack ack = (Ack) datas[datas.length - 1];
-        getDatabaseConnection().commit((err) -> {
+        JSONObject data = (JSONObject) datas[0];
+        try {
+            if (data.has("ids")) {
+                onGroupCommit(data.getJSONArray("ids"), ack);
+                return;
+            }
+            long id = data.getLong("id");
+            boolean sync = data.optBoolean("sync", true);
+            LOG.info("Recieved commit for transaction " + id + (sync ? "" : " (synced with its group)") + " from Transaction Manager");
+            long start = System.nanoTime();
+            getDatabaseConnection().commit(id, sync, (err) -> {
+                commitLatency.recordNanos(System.nanoTime() - start);
+                if (err != null) {
+                    ack.call(Maps.of("error", err.getMessage()));
+                } else {
+                    ack.call();
+                }
+            });
+        } catch (JSONException e) {
+            LOG.error("An exception occured while parsing request", e);
+            ack.call(Maps.of("error", e.getMessage()));
+        }
+    }
+
+    private void onGroupCommit(JSONArray array, Ack ack) throws JSONException {
+        List<Long> ids = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            ids.add(array.getLong(i));
+        }
+        LOG.info("Recieved group commit for " + ids.size() + " transactions from Transaction Manager");
+        long start = System.nanoTime();
+        getDatabaseConnection().commit(ids, (err, errors) -> {
+            commitLatency.recordNanos(System.nanoTime() - start);
             if (err != null) {
                 ack.call(Maps.of("error", err.getMessage()));
+            } else if (!errors.isEmpty()) {
+                Map<String, String> messages = new HashMap<>();
+                errors.forEach((id, e) -> messages.put(String.valueOf(id), e.getMessage()));
+                ack.call(Maps.of("errors", messages));
             } else {
                 ack.call();
             }
@@ -65,9 +222,54 @@ public class Station {
     }
 
     private void onRollback(Object[] datas) {
-        LOG.info("Recieved rollback from Transaction Manager");
         Ack ack = (Ack) datas[datas.length - 1];
-        getDatabaseConnection().rollback((err) -> {
+        JSONObject data = (JSONObject) datas[0];
+        try {
+            long id = data.getLong("id");
+            LOG.info("Recieved rollback for transaction " + id + " from Transaction Manager");
+            long start = System.nanoTime();
+            getDatabaseConnection().rollback(id, (err) -> {
+                rollbackLatency.recordNanos(System.nanoTime() - start);
+                if (err != null) {
+                    ack.call(Maps.of("error", err.getMessage()));
+                } else {
+                    ack.call();
+                }
+            });
+        } catch (JSONException e) {
+            LOG.error("An exception occured while parsing request", e);
+            ack.call(Maps.of("error", e.getMessage()));
+        }
+    }
+
+    private void onRecover(Object[] datas) {
+        Ack ack = (Ack) datas[datas.length - 1];
+        JSONObject data = (JSONObject) datas[0];
+        try {
+            JSONArray array = data.getJSONArray("commit");
+            Set<Long> commit = new HashSet<>();
+            for (int i = 0; i < array.length(); i++) {
+                commit.add(array.getLong(i));
+            }
+            long before = data.getLong("before");
+            int coordinator = data.optInt("coordinator", 0);
+            LOG.info("Recieved recovery for transactions up to " + before + " from Transaction Manager " + coordinator);
+            getDatabaseConnection().recover(commit, coordinator, before, (err) -> {
+                if (err != null) {
+                    ack.call(Maps.of("error", err.getMessage()));
+                } else {
+                    ack.call();
+                }
+            });
+        } catch (JSONException e) {
+            LOG.error("An exception occured while parsing request", e);
+            ack.call(Maps.of("error", e.getMessage()));
+        }
+    }
+
+    private void onProbe(Object[] datas) {
+        Ack ack = (Ack) datas[datas.length - 1];
+        getDatabaseConnection().probe((err) -> {
             if (err != null) {
                 ack.call(Maps.of("error", err.getMessage()));
             } else {
@@ -76,20 +278,211 @@ public class Station {
         });
     }
 
+    private void join(Link link) {
+        if (download != null) {
+            download.join();
+            return;
+        }
+        // a manager sharing the station with others does not see all of its writes
+        link.emit("join", Maps.of("managers", managers), (args) -> {
+            JSONObject response = args.length > 0 && args[0] instanceof JSONObject ? (JSONObject) args[0] : null;
+            if (response != null && response.has("error")) {
+                LOG.error("Could not join: " + response.optString("error"));
+            } else {
+                LOG.info("Joined with the own database");
+            }
+        });
+    }
+
+    private void onSnapshot(Object[] datas) {
+        Ack ack = (Ack) datas[datas.length - 1];
+        JSONObject data = (JSONObject) datas[0];
+        try {
+            snapshots.take(data.getLong("snapshot"), (err) -> {
+                if (err != null) {
+                    ack.call(Maps.of("error", err.getMessage()));
+                } else {
+                    ack.call();
+                }
+            });
+        } catch (JSONException e) {
+            LOG.error("An exception occured while parsing request", e);
+            ack.call(Maps.of("error", e.getMessage()));
+        }
+    }
+
+    private void onSnapshotChunk(Object[] datas) {
+        Ack ack = (Ack) datas[datas.length - 1];
+        JSONObject data = (JSONObject) datas[0];
+        try {
+            ack.call(snapshots.chunk(data.getLong("snapshot"), data.getLong("offset"), data.getInt("length")));
+        } catch (JSONException | IOException e) {
+            LOG.error("An exception occured while reading snapshot chunk", e);
+            ack.call(Maps.of("error", e.getMessage()));
+        }
+    }
+
+    private void onSnapshotDone(Object[] datas) {
+        Ack ack = (Ack) datas[datas.length - 1];
+        JSONObject data = (JSONObject) datas[0];
+        try {
+            snapshots.drop(data.getLong("snapshot"));
+            ack.call();
+        } catch (JSONException e) {
+            LOG.error("An exception occured while parsing request", e);
+            ack.call(Maps.of("error", e.getMessage()));
+        }
+    }
+
+    // the rows go back over the link the query came in on, to the coordinator that runs it
+    private void onQuery(Link link, Object[] datas) {
+        Ack ack = (Ack) datas[datas.length - 1];
+        JSONObject data = (JSONObject) datas[0];
+        try {
+            long id = data.getLong("id");
+            int chunk = data.optInt("chunk", 100);
+            RowFilter filter = RowFilter.parse(data.optJSONObject("filter"));
+            LOG.info("Recieved query " + id + " from Transaction Manager");
+            List<Object> parameters = parameters(data.optJSONArray("parameters"));
+            getDatabaseConnection().query(id, data.optInt("timeout", 10), data.getString("statement"), parameters, filter, (err, cursor) -> {
+                if (err != null) {
+                    getDatabaseConnection().rollback(id, (err2) -> ack.call(Maps.of("error", err.getMessage())));
+                } else {
+                    streams.put(id, new Stream(cursor, link));
+                    ack.call(Maps.of("columns", cursor.getColumns()));
+                    stream(link, cursor, chunk);
+                }
+            });
+        } catch (JSONException e) {
+            LOG.error("An exception occured while parsing request", e);
+            ack.call(Maps.of("error", e.getMessage()));
+        }
+    }
+
+    // the next chunk is only read once the manager acknowledged the previous one, so a slow consumer throttles the station
+    private void stream(Link link, Cursor cursor, int chunk) {
+        Stream open = streams.get(cursor.getId());
+        if (open == null) return;
+        open.touched = System.nanoTime();
+        getDatabaseConnection().fetch(cursor, chunk, (err, rows) -> {
+            // closed while the chunk was read, because the link went away or it sat idle
+            if (!streams.containsKey(cursor.getId())) return;
+            Map<String, Object> data;
+            if (err != null) {
+                data = Maps.of("id", cursor.getId(), "error", err.getMessage(), "last", true);
+            } else {
+                data = Maps.of("id", cursor.getId(), "rows", rows, "last", cursor.isDone());
+            }
+            if (err != null || cursor.isDone()) {
+                closeStream(cursor.getId());
+                link.emit("rows", data);
+                return;
+            }
+            link.emit("rows", data, (args) -> {
+                JSONObject response = args.length > 0 && args[0] instanceof JSONObject ? (JSONObject) args[0] : null;
+                if (response != null && response.optBoolean("cancel", false)) {
+                    LOG.info("Query " + cursor.getId() + " was cancelled by the Transaction Manager");
+                    closeStream(cursor.getId());
+                } else {
+                    stream(link, cursor, chunk);
+                }
+            });
+        });
+    }
+
+    // whoever removes it closes it, so a cursor is closed once however it ended
+    private void closeStream(long id) {
+        Stream stream = streams.remove(id);
+        if (stream == null) return;
+        getDatabaseConnection().close(stream.cursor, (err) -> {
+            if (err != null) LOG.error("An exception occured while closing query " + id, err);
+        });
+    }
+
+    private void closeIdle() {
+        long now = System.nanoTime();
+        streams.forEach((id, stream) -> {
+            if (now - stream.touched < CURSOR_IDLE_TIMEOUT) return;
+            LOG.error("Closing query " + id + " whose rows were not acknowledged for " + TimeUnit.NANOSECONDS.toSeconds(CURSOR_IDLE_TIMEOUT) + "s");
+            closeStream(id);
+            stream.link.emit("rows", Maps.of("id", id, "error", "closed after its rows were not acknowledged", "last", true));
+        });
+    }
+
+    public int getOpenCursors() {
+        return streams.size();
+    }
+
     public DatabaseConnection getDatabaseConnection() {
         return databaseConnection;
     }
 
     public void onExecute(Object... datas) {
-        LOG.info("Recieved statement from Transaction Manager");
         Ack ack = (Ack) datas[datas.length - 1];
         JSONObject data = (JSONObject) datas[0];
         try {
-            getDatabaseConnection().execute(data.optInt("timeout", 10), data.getString("statement"), (err, res) -> {
+            long id = data.getLong("id");
+            boolean onePhase = data.optBoolean("commit", false);
+            boolean read = data.optBoolean("read", false);
+            long writer = data.optLong("writer", 0);
+            if (writer != 0) clock.accumulateAndGet(writer, Math::max);
+            LOG.info("Recieved statement for transaction " + id + (onePhase ? " (one-phase)" : read ? " (read)" : "") + " from Transaction Manager");
+            List<Object> parameters = parameters(data.optJSONArray("parameters"));
+            long start = System.nanoTime();
+            getDatabaseConnection().execute(id, data.optInt("timeout", 10), data.getString("statement"), parameters, read, writer, onePhase, (err, res) -> {
+                executeLatency.recordNanos(System.nanoTime() - start);
                 if (err != null) {
-                    ack.call(Maps.of("error", err.getMessage()));
+                    failedStatements.increment();
+                    vote(id, onePhase, read, false, err, null, ack);
+                } else {
+                    vote(id, onePhase, read, res.isReadOnly(), null, res.isResultSet(), ack);
+                }
+            });
+        } catch (JSONException e) {
+            LOG.error("An exception occured while parsing request", e);
+            ack.call(Maps.of("error", e.getMessage()));
+        }
+    }
+
+    private static List<Object> parameters(JSONArray array) throws JSONException {
+        if (array == null) return null;
+        List<Object> parameters = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            Object value = array.get(i);
+            parameters.add(value == JSONObject.NULL ? null : value);
+        }
+        return parameters;
+    }
+
+    public void onExecuteBatch(Object... datas) {
+        Ack ack = (Ack) datas[datas.length - 1];
+        JSONObject data = (JSONObject) datas[0];
+        try {
+            long id = data.getLong("id");
+            boolean onePhase = data.optBoolean("commit", false);
+            boolean read = data.optBoolean("read", false);
+            long writer = data.optLong("writer", 0);
+            if (writer != 0) clock.accumulateAndGet(writer, Math::max);
+            JSONArray array = data.getJSONArray("statements");
+            List<String> statements = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                statements.add(array.getString(i));
+            }
+            LOG.info("Recieved batch of " + statements.size() + " statements for transaction " + id + (onePhase ? " (one-phase)" : read ? " (read)" : "") + " from Transaction Manager");
+            long start = System.nanoTime();
+            getDatabaseConnection().executeBatch(id, data.optInt("timeout", 10), statements, read, writer, onePhase, (err, res) -> {
+                batchLatency.recordNanos(System.nanoTime() - start);
+                if (err != null) {
+                    failedStatements.increment();
+                    vote(id, onePhase, read, false, err, null, ack);
                 } else {
-                    ack.call(Maps.of("res", res));
+                    List<Integer> counts = new ArrayList<>(res.length);
+                    boolean readOnly = true;
+                    for (int i = 0; i < res.length; i++) {
+                        counts.add(res[i]);
+                        readOnly &= StatementResult.isReadOnly(statements.get(i), false, res[i]);
+                    }
+                    vote(id, onePhase, read, readOnly, null, counts, ack);
                 }
             });
         } catch (JSONException e) {
@@ -98,12 +491,112 @@ public class Station {
         }
     }
 
+    public void onInsertRows(Object... datas) {
+        Ack ack = (Ack) datas[datas.length - 1];
+        JSONObject data = (JSONObject) datas[0];
+        try {
+            long id = data.getLong("id");
+            boolean onePhase = data.optBoolean("commit", false);
+            String table = data.getString("table");
+            JSONArray array = data.getJSONArray("columns");
+            List<String> columns = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                columns.add(array.getString(i));
+            }
+            array = data.getJSONArray("rows");
+            List<List<Object>> rows = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                List<Object> row = parameters(array.getJSONArray(i));
+                if (row.size() != columns.size()) throw new JSONException("row " + i + " has " + row.size() + " values for " + columns.size() + " columns");
+                rows.add(row);
+            }
+            String conflict = data.has("conflict") ? data.getString("conflict") : null;
+            long writer = data.optLong("writer", 0);
+            if (writer != 0) clock.accumulateAndGet(writer, Math::max);
+            LOG.info("Recieved " + rows.size() + " rows for table " + table + " in transaction " + id + (onePhase ? " (one-phase)" : "") + " from Transaction Manager");
+            long start = System.nanoTime();
+            getDatabaseConnection().insertRows(id, data.optInt("timeout", 10), table, columns, rows, conflict, writer, onePhase, (err, res) -> {
+                insertLatency.recordNanos(System.nanoTime() - start);
+                if (err != null) {
+                    failedStatements.increment();
+                    vote(id, onePhase, false, false, err, null, ack);
+                } else {
+                    vote(id, onePhase, false, res == 0, null, res, ack);
+                }
+            });
+        } catch (JSONException | IllegalArgumentException e) {
+            LOG.error("An exception occured while parsing request", e);
+            ack.call(Maps.of("error", e.getMessage()));
+        }
+    }
+
+    // a read runs on this station alone and is never committed, the manager sends no rollback for it
+    private void vote(long id, boolean onePhase, boolean read, boolean readOnly, Exception err, Object res, Ack ack) {
+        if (err != null && !onePhase && !read) {
+            reply(ack, Maps.of("error", err.getMessage()));
+        } else if (err != null) {
+            getDatabaseConnection().rollback(id, (err2) -> reply(ack, Maps.of("error", err.getMessage())));
+        } else if (read && !readOnly) {
+            getDatabaseConnection().rollback(id, (err2) -> reply(ack, Maps.of("error", "a read must not change anything")));
+        } else if (onePhase) {
+            getDatabaseConnection().commit(id, (err2) -> {
+                if (err2 != null) {
+                    reply(ack, Maps.of("error", err2.getMessage()));
+                } else {
+                    reply(ack, Maps.of("res", res));
+                }
+            });
+        } else if (readOnly) {
+            getDatabaseConnection().rollback(id, (err2) -> reply(ack, Maps.of("res", res, "vote", "readonly")));
+        } else {
+            reply(ack, Maps.of("res", res));
+        }
+    }
+
+    // the newest writer stamp goes back with every vote, a coordinator whose clock runs behind catches up with it
+    private void reply(Ack ack, Map<String, Object> data) {
+        data.put("clock", clock.get());
+        ack.call(data);
+    }
+
     public String getName() {
         return name;
     }
 
-    public Socket getSocket() {
-        return socket;
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public void close() {
+        metrics.close();
+        sweeper.shutdownNow();
+        if (download != null) download.close();
+        links.forEach(Link::close);
+        try {
+            databaseConnection.close();
+        } catch (SQLException e) {
+            LOG.error("An exception occured while closing the database connection", e);
+        }
+    }
+
+    // the link to the first manager
+    public Link getLink() {
+        return links.get(0);
+    }
+
+    public List<Link> getLinks() {
+        return links;
+    }
+
+    private static class Stream {
+        private final Cursor cursor;
+        private final Link link;
+        private volatile long touched = System.nanoTime();
+
+        private Stream(Cursor cursor, Link link) {
+            this.cursor = cursor;
+            this.link = link;
+        }
     }
 
     @Override
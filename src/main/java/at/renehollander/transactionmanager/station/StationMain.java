@@ -1,19 +1,61 @@
 package at.renehollander.transactionmanager.station;
 
+import at.renehollander.transactionmanager.Transport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class StationMain {
 
     private static Logger LOG = LoggerFactory.getLogger(StationMain.class);
 
+    private static final AtomicLong localIds = new AtomicLong();
+
     public static void main(String[] args) {
+        if (args.length < 2) {
+            usage();
+            System.exit(1);
+        }
         File dbFolder = new File("db/");
         if (!dbFolder.exists()) dbFolder.mkdirs();
-        Station station = new Station(args[0], dbFolder, args[1], Integer.parseInt(args[2]));
+        int poolSize = args.length > 3 ? Integer.parseInt(args[3]) : DatabaseConnection.DEFAULT_POOL_SIZE;
+        int queueLimit = args.length > 5 ? Integer.parseInt(args[5]) : ExecutionEngine.DEFAULT_QUEUE_LIMIT;
+        ExecutionEngine engine;
+        if (args.length > 4 && args[4].equals("virtual")) {
+            engine = ExecutionEngine.virtual(queueLimit);
+        } else {
+            engine = ExecutionEngine.bounded(args.length > 4 ? Integer.parseInt(args[4]) : poolSize, queueLimit);
+        }
+        Transport transport = args.length > 6 ? Transport.parse(args[6]) : Transport.SOCKET_IO;
+        // "any" copies a peer the manager picks whenever the station connects, a station name copies that one
+        SnapshotOptions snapshot = null;
+        if (args.length > 7 && !args[7].equals("-")) {
+            snapshot = new SnapshotOptions(args[7].equals("any") ? null : args[7], args.length > 8 ? Long.parseLong(args[8]) : 0);
+        }
+        StorageProfile profile = args.length > 9 ? StorageProfile.parse(args[9]) : StorageProfile.DURABLE;
+        // several managers are separated by commas, the ones without a port listen on the given one. it may be left out
+        // or be "-" when every manager has its own
+        List<InetSocketAddress> managers = new ArrayList<>();
+        for (String manager : args[1].split(",")) {
+            int colon = manager.lastIndexOf(':');
+            if (colon < 0 && (args.length < 3 || args[2].equals("-"))) {
+                System.err.println("Manager " + manager + " has no port and no default port was given");
+                usage();
+                System.exit(1);
+            }
+            managers.add(colon < 0 ? InetSocketAddress.createUnresolved(manager, Integer.parseInt(args[2]))
+                    : InetSocketAddress.createUnresolved(manager.substring(0, colon), Integer.parseInt(manager.substring(colon + 1))));
+        }
+        Station station = new Station(args[0], dbFolder, managers, poolSize, engine, transport, snapshot, profile);
+
+        station.getMetrics().startReporting(60, TimeUnit.SECONDS);
 
         LOG.info("Waiting for Statements");
         LOG.info("Example: INSERT INTO test VALUES(1, 'Hello World')");
@@ -22,11 +64,15 @@ public class StationMain {
         while (true) {
             // INSERT INTO test VALUES(1, 'Hello World')
             String line = sc.nextLine();
-            station.getDatabaseConnection().execute(30, line, (err, ret) -> {
+            long id = localIds.decrementAndGet();
+            station.getDatabaseConnection().execute(id, 30, line, (err, ret) -> {
                 if (err != null) {
                     LOG.error("An error occured executing statement", err);
+                    station.getDatabaseConnection().rollback(id, (err2) -> {
+                        if (err2 != null) LOG.error("An error occured rolling back", err2);
+                    });
                 } else {
-                    station.getDatabaseConnection().commit((err2) -> {
+                    station.getDatabaseConnection().commit(id, (err2) -> {
                         if (err2 != null) {
                             LOG.error("An error occured commiting", err2);
                         } else {
@@ -38,4 +84,9 @@ public class StationMain {
         }
     }
 
+    private static void usage() {
+        System.err.println("Usage: java -cp transactionmanager-1.0.0.jar " + StationMain.class.getName() + " name host[:port][,host[:port]...] [port|-] [pool] [threads|virtual] [queue] [transport] [donor|any|-] [limit] [storage]");
+        System.err.println("  port is the one of managers listed without their own, it can be left out or be - if all have one");
+    }
+
 }
@@ -0,0 +1,70 @@
+package at.renehollander.transactionmanager.station;
+
+import java.util.Locale;
+
+// how a station's sqlite database trades durability for speed. every profile uses the write-ahead log, so reads do not
+// wait for the writer, and leaves checkpoints to a background task instead of the commit that fills the log.
+// DURABLE syncs the log before a commit is acknowledged, the station does it itself so a group of commits shares one sync.
+// BALANCED only syncs on checkpoints, so a power loss may take the last commits but a crash of the station does not.
+// THROUGHPUT never syncs and leaves it to the operating system
+public enum StorageProfile {
+
+    DURABLE("NORMAL", true, 8 * 1024, 0, 1000, 16 * 1024 * 1024),
+    BALANCED("NORMAL", false, 32 * 1024, 256L * 1024 * 1024, 1000, 64 * 1024 * 1024),
+    THROUGHPUT("OFF", false, 128 * 1024, 1024L * 1024 * 1024, 5000, 256 * 1024 * 1024);
+
+    private final String synchronous;
+    private final boolean syncingCommits;
+    private final int cacheKiB;
+    private final long mmapBytes;
+    private final long checkpointInterval;
+    private final long maxWalBytes;
+
+    StorageProfile(String synchronous, boolean syncingCommits, int cacheKiB, long mmapBytes, long checkpointInterval, long maxWalBytes) {
+        this.synchronous = synchronous;
+        this.syncingCommits = syncingCommits;
+        this.cacheKiB = cacheKiB;
+        this.mmapBytes = mmapBytes;
+        this.checkpointInterval = checkpointInterval;
+        this.maxWalBytes = maxWalBytes;
+    }
+
+    public static StorageProfile parse(String name) {
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    public String getSynchronous() {
+        return synchronous;
+    }
+
+    // whether the station syncs the log after commits, sqlite's own setting then leaves that out
+    public boolean isSyncingCommits() {
+        return syncingCommits;
+    }
+
+    // page cache of every connection
+    public int getCacheKiB() {
+        return cacheKiB;
+    }
+
+    public long getMmapBytes() {
+        return mmapBytes;
+    }
+
+    // how often the background task copies the log into the database, in milliseconds
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    // above this the background task also truncates the log, once no reader still needs it
+    public long getMaxWalBytes() {
+        return maxWalBytes;
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ROOT) + " (synchronous=" + synchronous + (syncingCommits ? " with synced commits" : "") + ", cache=" + cacheKiB + "KiB, mmap=" + mmapBytes
+                + ", checkpoint every " + checkpointInterval + "ms, wal limit " + maxWalBytes + ")";
+    }
+
+}
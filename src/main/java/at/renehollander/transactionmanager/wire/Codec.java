@@ -0,0 +1,172 @@
+package at.renehollander.transactionmanager.wire;
+
+import io.netty.buffer.ByteBuf;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// every value starts with a one byte tag, integers and lengths are zigzag varints
+public class Codec {
+
+    private static final byte NULL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte INTEGER = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte STRING = 5;
+    private static final byte BYTES = 6;
+    private static final byte LIST = 7;
+    private static final byte MAP = 8;
+
+    private Codec() {
+    }
+
+    public static void encode(ByteBuf buf, Object value) {
+        if (value == null || value == JSONObject.NULL) {
+            buf.writeByte(NULL);
+        } else if (value instanceof Boolean) {
+            buf.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            buf.writeByte(INTEGER);
+            writeVarLong(buf, ((Number) value).longValue());
+        } else if (value instanceof Number) {
+            buf.writeByte(DOUBLE);
+            buf.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof byte[]) {
+            buf.writeByte(BYTES);
+            writeVarLong(buf, ((byte[]) value).length);
+            buf.writeBytes((byte[]) value);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            buf.writeByte(MAP);
+            writeVarLong(buf, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(buf, String.valueOf(entry.getKey()));
+                encode(buf, entry.getValue());
+            }
+        } else if (value instanceof Collection) {
+            Collection<?> list = (Collection<?>) value;
+            buf.writeByte(LIST);
+            writeVarLong(buf, list.size());
+            for (Object element : list) {
+                encode(buf, element);
+            }
+        } else if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            buf.writeByte(MAP);
+            writeVarLong(buf, object.length());
+            Iterator<?> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = (String) keys.next();
+                writeString(buf, key);
+                encode(buf, object.opt(key));
+            }
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            buf.writeByte(LIST);
+            writeVarLong(buf, array.length());
+            for (int i = 0; i < array.length(); i++) {
+                encode(buf, array.opt(i));
+            }
+        } else {
+            buf.writeByte(STRING);
+            writeString(buf, value.toString());
+        }
+    }
+
+    // json decodes maps and lists into JSONObject and JSONArray, the types the station handlers already work with
+    public static Object decode(ByteBuf buf, boolean json) {
+        byte tag = buf.readByte();
+        switch (tag) {
+            case NULL:
+                return json ? JSONObject.NULL : null;
+            case FALSE:
+                return Boolean.FALSE;
+            case TRUE:
+                return Boolean.TRUE;
+            case INTEGER:
+                long value = readVarLong(buf);
+                return value == (int) value ? (Object) (int) value : (Object) value;
+            case DOUBLE:
+                return buf.readDouble();
+            case STRING:
+                return readString(buf);
+            case BYTES:
+                byte[] bytes = new byte[(int) readVarLong(buf)];
+                buf.readBytes(bytes);
+                return bytes;
+            case LIST:
+                int length = (int) readVarLong(buf);
+                List<Object> list = new ArrayList<>(length);
+                for (int i = 0; i < length; i++) {
+                    list.add(decode(buf, json));
+                }
+                return json ? new JSONArray(list) : list;
+            case MAP:
+                int size = (int) readVarLong(buf);
+                Map<String, Object> map = new HashMap<>(size * 2);
+                for (int i = 0; i < size; i++) {
+                    map.put(readString(buf), decode(buf, json));
+                }
+                return json ? object(map) : map;
+            default:
+                throw new IllegalArgumentException("Unknown value tag " + tag);
+        }
+    }
+
+    private static JSONObject object(Map<String, Object> map) {
+        JSONObject object = new JSONObject();
+        try {
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                object.put(entry.getKey(), entry.getValue());
+            }
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return object;
+    }
+
+    public static void writeString(ByteBuf buf, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(buf, bytes.length);
+        buf.writeBytes(bytes);
+    }
+
+    public static String readString(ByteBuf buf) {
+        int length = (int) readVarLong(buf);
+        String value = buf.toString(buf.readerIndex(), length, StandardCharsets.UTF_8);
+        buf.skipBytes(length);
+        return value;
+    }
+
+    public static void writeVarLong(ByteBuf buf, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            buf.writeByte((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        buf.writeByte((int) zigzag);
+    }
+
+    public static long readVarLong(ByteBuf buf) {
+        long zigzag = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 63) throw new IllegalArgumentException("Malformed varint");
+            b = buf.readByte();
+            zigzag |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+}
@@ -0,0 +1,70 @@
+package at.renehollander.transactionmanager.wire;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+
+// [length:int][type:byte][id:varint][event:string, not for replies][payload:value]
+public class Frame {
+
+    // expects a reply carrying the same id, ids are chosen by the sender and only unique per connection and direction
+    public static final byte REQUEST = 1;
+    public static final byte EVENT = 2;
+    public static final byte REPLY = 3;
+
+    public static final String HELLO = "hello";
+
+    private static final int MAX_LENGTH = 64 * 1024 * 1024;
+
+    private final byte type;
+    private final long id;
+    private final String event;
+    private final Object payload;
+
+    public Frame(byte type, long id, String event, Object payload) {
+        this.type = type;
+        this.id = id;
+        this.event = event;
+        this.payload = payload;
+    }
+
+    public static void install(ChannelPipeline pipeline) {
+        pipeline.addLast(new LengthFieldBasedFrameDecoder(MAX_LENGTH, 0, 4, 0, 4));
+        pipeline.addLast(new LengthFieldPrepender(4));
+    }
+
+    public ByteBuf encode(ByteBufAllocator allocator) {
+        ByteBuf buf = allocator.buffer();
+        buf.writeByte(type);
+        Codec.writeVarLong(buf, id);
+        if (type != REPLY) Codec.writeString(buf, event);
+        Codec.encode(buf, payload);
+        return buf;
+    }
+
+    public static Frame decode(ByteBuf buf, boolean json) {
+        byte type = buf.readByte();
+        long id = Codec.readVarLong(buf);
+        String event = type == REPLY ? null : Codec.readString(buf);
+        return new Frame(type, id, event, Codec.decode(buf, json));
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getEvent() {
+        return event;
+    }
+
+    public Object getPayload() {
+        return payload;
+    }
+
+}
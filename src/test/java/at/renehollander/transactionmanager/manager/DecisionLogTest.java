@@ -0,0 +1,124 @@
+package at.renehollander.transactionmanager.manager;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class DecisionLogTest {
+
+    private static final int SEGMENT_SIZE = 8 + 9 * 16;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void closeRunsTheCallbacksStillWaiting() throws Exception {
+        DecisionLog log = new DecisionLog(folder.getRoot());
+        AtomicInteger durable = new AtomicInteger();
+        for (long id = 1; id <= 1000; id++) log.commit(id, Collections.singletonList("s1"), durable::incrementAndGet);
+        log.close();
+        assertEquals(1000, durable.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void refusesCommitsOnceClosed() throws Exception {
+        DecisionLog log = new DecisionLog(folder.getRoot());
+        log.close();
+        log.commit(1, Collections.singletonList("s1"), () -> {
+        });
+    }
+
+    @Test
+    public void recoversOpenCommitsWithTheirStations() throws Exception {
+        DecisionLog log = new DecisionLog(folder.getRoot());
+        log.commit(1, Arrays.asList("s1", "s2"), () -> {
+        });
+        log.commit(2, Collections.singletonList("s1"), () -> {
+        });
+        log.end(1);
+        log.reserve(5);
+        log.close();
+
+        DecisionLog recovered = new DecisionLog(folder.getRoot());
+        assertEquals(Collections.singletonMap(2L, stations("s1")), recovered.getRecovered());
+        assertEquals(DecisionLog.ID_BLOCK, recovered.getRecoveredReserved());
+        recovered.close();
+    }
+
+    @Test
+    public void ignoresAPartialRecordAtTheEnd() throws Exception {
+        DecisionLog log = new DecisionLog(folder.getRoot());
+        for (long id = 1; id <= 3; id++) {
+            log.commit(id, Collections.singletonList("s1"), () -> {
+            });
+        }
+        log.end(2);
+        log.close();
+        File segment = segments()[0];
+        // the end of 2 was cut off halfway through, so 2 is still open
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(8 + 9 * 6 + 5);
+        }
+
+        DecisionLog recovered = new DecisionLog(folder.getRoot());
+        assertEquals(new LinkedHashSet<>(Arrays.asList(1L, 2L, 3L)), recovered.getRecovered().keySet());
+        recovered.close();
+    }
+
+    @Test
+    public void replaysSegmentsLeftBehindByACrashWhileRolling() throws Exception {
+        DecisionLog log = new DecisionLog(folder.getRoot(), SEGMENT_SIZE);
+        Map<Long, Set<Long>> expected = new HashMap<>();
+        File[] before = segments();
+        byte[] previous = null;
+        long id = 0;
+        // commits until the log rolls over, keeping what the first segment held right before that
+        while (Arrays.equals(before, segments())) {
+            previous = Files.readAllBytes(before[0].toPath());
+            id++;
+            log.commit(id, Arrays.asList("s1", "s2"), () -> {
+            });
+            expected.put(id, stations("s1", "s2"));
+            if (id % 2 == 0) {
+                log.end(id - 1);
+                expected.remove(id - 1);
+            }
+        }
+        // ended in the new segment, the old one still has it open
+        log.end(2);
+        expected.remove(2L);
+        // the log stops without closing, the old segment is back as if it had not been deleted yet
+        Files.write(before[0].toPath(), previous);
+
+        DecisionLog recovered = new DecisionLog(folder.getRoot(), SEGMENT_SIZE);
+        assertEquals(expected, recovered.getRecovered());
+        recovered.close();
+        log.close();
+    }
+
+    private File[] segments() {
+        File[] files = folder.getRoot().listFiles((dir, name) -> name.startsWith("decisions-"));
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static Set<Long> stations(String... names) {
+        Set<Long> stations = new LinkedHashSet<>();
+        for (String name : names) stations.add(DecisionLog.station(name));
+        return stations;
+    }
+
+}
@@ -0,0 +1,154 @@
+package at.renehollander.transactionmanager.manager;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LockManagerTest {
+
+    private final LockManager manager = new LockManager();
+    private final List<Long> granted = Collections.synchronizedList(new ArrayList<>());
+
+    private void acquire(long id, Locks locks) {
+        manager.acquire(id, locks, () -> granted.add(id));
+    }
+
+    @Test
+    public void disjointKeysAreGrantedTogether() {
+        acquire(1, new Locks().exclusive("t", 1));
+        acquire(2, new Locks().exclusive("t", 2));
+        acquire(3, new Locks().shared("t", 1).shared("u"));
+        assertEquals(Arrays.asList(1L, 2L), granted);
+        assertEquals(1, manager.getWaiting());
+    }
+
+    @Test
+    public void sharedLocksAreGrantedTogether() {
+        acquire(1, new Locks().shared("t", 1));
+        acquire(2, new Locks().shared("t", 1));
+        acquire(3, new Locks().shared("t"));
+        assertEquals(Arrays.asList(1L, 2L, 3L), granted);
+    }
+
+    @Test
+    public void waitersAreGrantedInTheOrderTheyCame() {
+        acquire(1, new Locks().exclusive("t", 1));
+        acquire(2, new Locks().shared("t", 1));
+        acquire(3, new Locks().exclusive("t", 1));
+        // compatible with 2 but queued behind 3, it does not overtake it
+        acquire(4, new Locks().shared("t", 1));
+        assertEquals(Collections.singletonList(1L), granted);
+
+        manager.release(1);
+        assertEquals(Arrays.asList(1L, 2L), granted);
+        manager.release(2);
+        assertEquals(Arrays.asList(1L, 2L, 3L), granted);
+        manager.release(3);
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), granted);
+        manager.release(4);
+        assertEquals(0, manager.getLocked());
+    }
+
+    @Test
+    public void sharedWaitersAfterAWriterAreGrantedTogether() {
+        acquire(1, new Locks().exclusive("t", 1));
+        acquire(2, new Locks().shared("t", 1));
+        acquire(3, new Locks().shared("t", 1));
+        manager.release(1);
+        assertEquals(Arrays.asList(1L, 2L, 3L), granted);
+    }
+
+    @Test
+    public void aTableLockWaitsForTheKeysOfTheTable() {
+        acquire(1, new Locks().exclusive("t", 1));
+        acquire(2, new Locks().exclusive("t"));
+        acquire(3, new Locks().shared("t", 2));
+        assertEquals(Collections.singletonList(1L), granted);
+        manager.release(1);
+        assertEquals(Arrays.asList(1L, 2L), granted);
+        manager.release(2);
+        assertEquals(Arrays.asList(1L, 2L, 3L), granted);
+    }
+
+    @Test
+    public void locksAreTakenInOneOrderWhateverOrderTheyAreDeclaredIn() {
+        acquire(1, new Locks().exclusive("t", "a").exclusive("t", "b"));
+        acquire(2, new Locks().exclusive("t", "b").exclusive("t", "a"));
+        acquire(3, new Locks().exclusive("t", "b"));
+        assertEquals(Collections.singletonList(1L), granted);
+        manager.release(1);
+        // 2 waited for a holding nothing, so 3 queued for b first and 2 never holds a lock 3 waits for
+        assertEquals(Arrays.asList(1L, 3L), granted);
+        manager.release(3);
+        assertEquals(Arrays.asList(1L, 3L, 2L), granted);
+    }
+
+    @Test
+    public void aReleasedWaiterLeavesTheQueue() {
+        acquire(1, new Locks().exclusive("t", 1));
+        acquire(2, new Locks().exclusive("t", 1));
+        acquire(3, new Locks().shared("t", 1));
+        manager.release(2);
+        manager.release(1);
+        assertEquals(Arrays.asList(1L, 3L), granted);
+        manager.release(3);
+        assertEquals(0, manager.getLocked());
+        assertEquals(0, manager.getWaiting());
+    }
+
+    @Test
+    public void stationTurnsAreGivenBackBeforeTheKeys() {
+        acquire(1, new Locks().exclusive("t", 1).station("s1"));
+        acquire(2, new Locks().exclusive("t", 2).station("s1"));
+        acquire(3, new Locks().exclusive("t", 1).station("s1"));
+        assertEquals(Collections.singletonList(1L), granted);
+        manager.releaseStations(1);
+        assertEquals(Arrays.asList(1L, 2L), granted);
+        manager.releaseStations(2);
+        // the key of 1 is still held
+        assertEquals(Arrays.asList(1L, 2L), granted);
+        manager.release(1);
+        assertEquals(Arrays.asList(1L, 2L, 3L), granted);
+    }
+
+    @Test
+    public void stationTurnsStayWhileLocksAreMissing() {
+        acquire(1, new Locks().exclusive("t", 1).station("s1"));
+        acquire(2, new Locks().exclusive("t", 2).station("s1"));
+        manager.releaseStations(2);
+        acquire(3, new Locks().exclusive("t", 3).station("s1"));
+        assertEquals(Collections.singletonList(1L), granted);
+        manager.releaseStations(1);
+        assertEquals(Arrays.asList(1L, 2L), granted);
+        manager.releaseStations(2);
+        assertEquals(Arrays.asList(1L, 2L, 3L), granted);
+    }
+
+    @Test
+    public void aFenceWaitsForTheWritersOfItsStation() {
+        acquire(1, new Locks().exclusive("t", 1).station("s1"));
+        manager.releaseStations(1);
+        acquire(2, new Locks().fence("s1"));
+        acquire(3, new Locks().exclusive("t", 2).station("s1"));
+        assertEquals(Collections.singletonList(1L), granted);
+        manager.release(1);
+        assertEquals(Arrays.asList(1L, 2L), granted);
+        manager.release(2);
+        assertEquals(Arrays.asList(1L, 2L, 3L), granted);
+    }
+
+    @Test
+    public void aSingleSelectTakesNoLocks() {
+        manager.key("t", "id");
+        assertTrue(manager.footprint(Collections.singletonList(StatementInfo.parse("SELECT * FROM t WHERE id = 1")), null).isEmpty());
+        Locks locks = manager.footprint(Arrays.asList(StatementInfo.parse("SELECT * FROM t WHERE id = 1"), StatementInfo.parse("UPDATE t SET v = 2 WHERE id = 2")), null);
+        assertEquals("{1:t=IX, 1:t:1=S, 1:t:2=X}", locks.toString());
+    }
+
+}
@@ -0,0 +1,142 @@
+package at.renehollander.transactionmanager.manager;
+
+import at.renehollander.transactionmanager.Maps;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PartitionMapTest {
+
+    private static final List<String> CONNECTED = Arrays.asList("s1", "s2", "s3");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final PartitionMap ranges = new PartitionMap()
+            .range("t", "id", 0, 100, "s1", "s2")
+            .range("t", "id", 100, 200, "s2", "s3");
+
+    @Test
+    public void routesKeysToTheStationsOfTheirRange() {
+        assertEquals(stations("s1", "s2"), ranges.owners(StatementInfo.parse("UPDATE t SET v = 1 WHERE id = 5")));
+        assertEquals(stations("s2", "s3"), ranges.owners(StatementInfo.parse("DELETE FROM T WHERE id = 100")));
+        assertEquals(stations("s1", "s2", "s3"), ranges.owners(StatementInfo.parse("INSERT INTO t(id, v) VALUES (5, 1), (150, 2)")));
+        assertEquals(stations("s1", "s2"), ranges.owners(StatementInfo.parse("UPDATE t SET v = ? WHERE id = ?", Arrays.asList(1, 99))));
+    }
+
+    @Test
+    public void statementsWithoutAKeyGoToEveryStationOfTheTable() {
+        assertEquals(stations("s1", "s2", "s3"), ranges.owners(StatementInfo.parse("UPDATE t SET v = 1 WHERE v > 3")));
+        assertEquals(stations("s1", "s2", "s3"), ranges.owners(StatementInfo.parse("DELETE FROM t WHERE id = 1 OR id = 150")));
+    }
+
+    @Test
+    public void keysOutsideEveryRangeHaveNoOwner() {
+        assertEquals(Collections.emptySet(), ranges.owners(StatementInfo.parse("UPDATE t SET v = 1 WHERE id = 200")));
+        assertEquals(Collections.emptySet(), ranges.owners(StatementInfo.parse("UPDATE t SET v = 1 WHERE id = 'x'")));
+    }
+
+    @Test
+    public void tablesThatAreNotPartitionedAreNotRouted() {
+        assertNull(ranges.owners(StatementInfo.parse("UPDATE u SET v = 1 WHERE id = 5")));
+        assertNull(ranges.holders(StatementInfo.parse("SELECT * FROM u WHERE id = 5")));
+        assertNull(ranges.scatter(StatementInfo.parse("SELECT * FROM u"), CONNECTED));
+    }
+
+    @Test
+    public void readsGoToStationsHoldingEveryRow() {
+        assertEquals(stations("s1", "s2"), ranges.holders(StatementInfo.parse("SELECT * FROM t WHERE id = 5")));
+        assertEquals(Collections.emptySet(), ranges.holders(StatementInfo.parse("SELECT * FROM t")));
+    }
+
+    @Test
+    public void hashedKeysGoToConsecutiveReplicas() {
+        PartitionMap map = new PartitionMap().hash("t", "id", 2, "s1", "s2", "s3");
+        for (int key = 0; key < 100; key++) {
+            List<String> owners = Arrays.asList(map.owners("t", String.valueOf(key)).toArray(new String[0]));
+            int first = Math.floorMod(String.valueOf(key).hashCode(), 3);
+            assertEquals(Arrays.asList(CONNECTED.get(first), CONNECTED.get((first + 1) % 3)), owners);
+            assertEquals(new LinkedHashSet<>(owners), map.owners(StatementInfo.parse("UPDATE t SET v = 1 WHERE id = " + key)));
+        }
+    }
+
+    @Test
+    public void scatterReadsEveryRangeOnceAndFiltersSharedStations() {
+        Map<String, Map<String, Object>> expected = new LinkedHashMap<>();
+        expected.put("s1", null);
+        expected.put("s2", Maps.of("column", "id", "ranges", Collections.singletonList(Arrays.asList(100L, 200L))));
+        assertEquals(expected, ranges.scatter(StatementInfo.parse("SELECT * FROM t"), CONNECTED));
+    }
+
+    @Test
+    public void scatterFallsBackToReplicas() {
+        // s2 holds both ranges, which are all it holds
+        assertEquals(Collections.singletonMap("s2", null), ranges.scatter(StatementInfo.parse("SELECT * FROM t"), Arrays.asList("s2", "s3")));
+    }
+
+    @Test
+    public void scatterOfHashedTablesFiltersBySlot() {
+        PartitionMap map = new PartitionMap().hash("t", "id", 2, "s1", "s2", "s3");
+        Map<String, Map<String, Object>> expected = new LinkedHashMap<>();
+        expected.put("s1", Maps.of("column", "id", "modulus", 3, "slots", Collections.singletonList(0)));
+        expected.put("s2", Maps.of("column", "id", "modulus", 3, "slots", Collections.singletonList(1)));
+        expected.put("s3", Maps.of("column", "id", "modulus", 3, "slots", Collections.singletonList(2)));
+        assertEquals(expected, map.scatter(StatementInfo.parse("SELECT * FROM t"), CONNECTED));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void scatterFailsWithoutAConnectedOwner() {
+        ranges.scatter(StatementInfo.parse("SELECT * FROM t"), Collections.singletonList("s3"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOverlappingRanges() {
+        ranges.range("t", "id", 150, 250, "s1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMoreReplicasThanStations() {
+        new PartitionMap().hash("t", "id", 3, "s1", "s2");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnotherKeyColumn() {
+        ranges.range("t", "v", 300, 400, "s1");
+    }
+
+    @Test
+    public void loadsRulesFromAFile() throws IOException {
+        File file = folder.newFile("partitions.txt");
+        Files.write(file.toPath(), Arrays.asList("# accounts", "", "hash a id 1 s1 s2", "range t id 0 100 s1"), StandardCharsets.UTF_8);
+        PartitionMap map = PartitionMap.load(file);
+        assertEquals("id", map.getKeyColumn("A"));
+        assertEquals(stations("s1"), map.owners("t", "5"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsInvalidRules() throws IOException {
+        File file = folder.newFile("partitions.txt");
+        Files.write(file.toPath(), Collections.singletonList("range t id 0 s1"), StandardCharsets.UTF_8);
+        PartitionMap.load(file);
+    }
+
+    private static Set<String> stations(String... names) {
+        return new LinkedHashSet<>(Arrays.asList(names));
+    }
+
+}
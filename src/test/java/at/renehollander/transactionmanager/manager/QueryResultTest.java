@@ -0,0 +1,149 @@
+package at.renehollander.transactionmanager.manager;
+
+import at.renehollander.transactionmanager.Maps;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class QueryResultTest {
+
+    private final AtomicInteger unregistered = new AtomicInteger();
+    private final List<Map<String, Object>> acks = new ArrayList<>();
+
+    private QueryResult result(int capacity, boolean ordered) {
+        return new QueryResult(1, 1, ordered ? QueryResult.byColumn(0) : null, capacity, Arrays.asList("s1", "s2"), unregistered::incrementAndGet);
+    }
+
+    private void send(QueryResult result, String station, boolean last, Object... values) {
+        List<List<Object>> rows = new ArrayList<>();
+        for (Object value : values) rows.add(Arrays.asList(value));
+        result.receive(station, Maps.of("rows", rows, "last", last), acks::add);
+    }
+
+    private static List<Object> drain(QueryResult result) {
+        List<Object> values = new ArrayList<>();
+        while (result.hasNext()) values.add(result.next().get(0));
+        return values;
+    }
+
+    @Test
+    public void mergesOrderedStreams() {
+        QueryResult result = result(100, true);
+        send(result, "s1", true, 1, 4, 7);
+        send(result, "s2", true, 2, 3, 9);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 7, 9), drain(result));
+        assertEquals(1, unregistered.get());
+    }
+
+    @Test
+    public void anOrderedMergeWaitsForEveryRunningStation() {
+        QueryResult result = result(100, true);
+        send(result, "s1", false, 5);
+        send(result, "s2", true, 1);
+        assertEquals(1, result.next().get(0));
+        assertEquals(5, result.next().get(0));
+        // s1 has not finished and shown no further row, so nothing can be emitted
+        try {
+            result.hasNext();
+            fail("expected the query to time out");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("timed out"));
+        }
+        assertEquals(1, unregistered.get());
+    }
+
+    @Test
+    public void unorderedRowsDoNotWaitForOtherStations() {
+        QueryResult result = result(100, false);
+        send(result, "s2", false, 9);
+        assertEquals(9, result.next().get(0));
+        send(result, "s1", true, 1);
+        send(result, "s2", true, 3);
+        assertEquals(Arrays.asList(1, 3), drain(result));
+    }
+
+    @Test
+    public void holdsTheAckOfAStationUntilItsRowsAreConsumed() {
+        QueryResult result = result(4, false);
+        send(result, "s1", false, 1, 2);
+        assertEquals(1, acks.size());
+        send(result, "s1", false, 3, 4);
+        // the buffer of s1 is full, its next chunk waits for the ack
+        assertEquals(1, acks.size());
+        result.next();
+        assertEquals(1, acks.size());
+        result.next();
+        assertEquals(2, acks.size());
+        assertNull(acks.get(1));
+        send(result, "s1", true);
+        send(result, "s2", true);
+        assertEquals(Arrays.asList(3, 4), drain(result));
+    }
+
+    @Test
+    public void closingCancelsTheStations() {
+        QueryResult result = result(1, false);
+        send(result, "s1", false, 1);
+        result.close();
+        assertEquals(Maps.of("cancel", true), acks.get(0));
+        assertFalse(result.hasNext());
+        send(result, "s2", false, 2);
+        assertEquals(Maps.of("cancel", true), acks.get(1));
+        assertEquals(1, unregistered.get());
+    }
+
+    @Test
+    public void aFailedStationFailsTheQuery() {
+        QueryResult result = result(1, false);
+        send(result, "s1", false, 1);
+        result.failed("s2", "responded with an exception: no such table");
+        assertEquals(Maps.of("cancel", true), acks.get(0));
+        try {
+            result.hasNext();
+            fail("expected the query to fail");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("station s2 responded with an exception: no such table"));
+        }
+    }
+
+    @Test
+    public void aggregatesTheRows() {
+        QueryResult result = result(100, false);
+        send(result, "s1", true, 3, null, 5L);
+        send(result, "s2", true, 2);
+        assertEquals(10L, result.sum(0));
+
+        result = result(100, false);
+        send(result, "s1", true, 3, 1.5);
+        send(result, "s2", true, "a");
+        assertEquals(4.5, result.sum(0));
+
+        result = result(100, false);
+        send(result, "s1", true, 3, null, "b");
+        send(result, "s2", true, 2.5);
+        assertEquals("b", result.max(0));
+
+        result = result(100, false);
+        send(result, "s1", true, 3, null);
+        send(result, "s2", true, 2.5);
+        assertEquals(2.5, result.min(0));
+    }
+
+    @Test
+    public void comparesLikeSqlite() {
+        List<Object> values = new ArrayList<>(Arrays.asList("b", 2.5, null, 3L, "a", 1));
+        values.sort(QueryResult::compare);
+        assertEquals(Arrays.asList(null, 1, 2.5, 3L, "a", "b"), values);
+    }
+
+}
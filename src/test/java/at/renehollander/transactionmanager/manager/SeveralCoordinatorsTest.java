@@ -0,0 +1,95 @@
+package at.renehollander.transactionmanager.manager;
+
+import at.renehollander.transactionmanager.Transport;
+import at.renehollander.transactionmanager.station.ExecutionEngine;
+import at.renehollander.transactionmanager.station.Station;
+import at.renehollander.transactionmanager.station.StorageProfile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// two managers writing to the same two stations, every write goes to both so writers of the two coordinators meet on them
+public class SeveralCoordinatorsTest {
+
+    private static final int PORT = 4170;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Manager> managers = new ArrayList<>();
+    private final List<Station> stations = new ArrayList<>();
+
+    @Before
+    public void start() throws Exception {
+        for (int coordinator = 0; coordinator < 2; coordinator++) {
+            Manager manager = new Manager(PORT + coordinator, Transport.BINARY, coordinator);
+            manager.getLockManager().key("t", "id");
+            managers.add(manager);
+        }
+        List<InetSocketAddress> addresses = Arrays.asList(InetSocketAddress.createUnresolved("localhost", PORT), InetSocketAddress.createUnresolved("localhost", PORT + 1));
+        for (String name : Arrays.asList("s1", "s2")) {
+            stations.add(new Station(name, folder.getRoot(), addresses, 4, ExecutionEngine.bounded(4, 1024), Transport.BINARY, null, StorageProfile.THROUGHPUT));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        for (Manager manager : managers) {
+            while (manager.getStations().size() < 2) {
+                assertTrue("stations did not join", System.nanoTime() < deadline);
+                Thread.sleep(20);
+            }
+        }
+        assertTrue(managers.get(0).executeAsync(10, "CREATE TABLE t(id INTEGER PRIMARY KEY, coordinator INTEGER)").toCompletableFuture().get(10, TimeUnit.SECONDS).isCommitted());
+    }
+
+    @After
+    public void stop() {
+        stations.forEach(Station::close);
+        managers.forEach(Manager::close);
+    }
+
+    @Test
+    public void writersOfDifferentCoordinatorsNeverWaitForEachOther() throws Exception {
+        List<List<CompletableFuture<TransactionResult>>> results = new ArrayList<>();
+        for (int coordinator = 0; coordinator < 2; coordinator++) results.add(new ArrayList<>());
+        for (int i = 0; i < 200; i++) {
+            for (int coordinator = 0; coordinator < 2; coordinator++) {
+                String statement = "INSERT INTO t VALUES(" + (i * 2 + coordinator) + ", " + coordinator + ")";
+                results.get(coordinator).add(managers.get(coordinator).executeAsync(5, statement).toCompletableFuture());
+            }
+        }
+        int[] committed = new int[2];
+        for (int coordinator = 0; coordinator < 2; coordinator++) {
+            for (CompletableFuture<TransactionResult> future : results.get(coordinator)) {
+                // a deadlock between the coordinators would only end with the timeouts of the stations
+                TransactionResult result = future.get(4, TimeUnit.SECONDS);
+                if (result.isCommitted()) {
+                    committed[coordinator]++;
+                } else {
+                    assertEquals(TransactionResult.Outcome.ABORTED, result.getOutcome());
+                    assertTrue(result.getErrors().toString(), result.getErrors().toString().contains("gave way"));
+                }
+            }
+            assertTrue("coordinator " + coordinator + " committed nothing", committed[coordinator] > 0);
+        }
+        // every transaction ended on both stations before its result came back
+        for (Station station : stations) {
+            assertEquals(0, station.getDatabaseConnection().getOpenTransactions());
+        }
+        for (int coordinator = 0; coordinator < 2; coordinator++) {
+            QueryResult rows = managers.get(coordinator).query(10, "SELECT count(*) FROM t WHERE coordinator = " + coordinator);
+            assertEquals(committed[coordinator], ((Number) rows.next().get(0)).intValue());
+        }
+    }
+
+}
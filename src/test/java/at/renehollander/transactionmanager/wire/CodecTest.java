@@ -0,0 +1,109 @@
+package at.renehollander.transactionmanager.wire;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+public class CodecTest {
+
+    @Test
+    public void varintsRoundTrip() {
+        long[] values = {0, 1, -1, 63, -64, 64, -65, 8191, 8192, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        ByteBuf buf = Unpooled.buffer();
+        for (long value : values) Codec.writeVarLong(buf, value);
+        for (long value : values) assertEquals(value, Codec.readVarLong(buf));
+        assertFalse(buf.isReadable());
+    }
+
+    @Test
+    public void smallMagnitudesTakeFewBytes() {
+        assertEquals(1, varintSize(0));
+        assertEquals(1, varintSize(-1));
+        assertEquals(1, varintSize(63));
+        assertEquals(1, varintSize(-64));
+        assertEquals(2, varintSize(64));
+        assertEquals(2, varintSize(-65));
+        assertEquals(10, varintSize(Long.MAX_VALUE));
+        assertEquals(10, varintSize(Long.MIN_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsVarintsLongerThanALong() {
+        ByteBuf buf = Unpooled.buffer();
+        for (int i = 0; i < 11; i++) buf.writeByte(0x80);
+        buf.writeByte(0);
+        Codec.readVarLong(buf);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownTags() {
+        Codec.decode(Unpooled.wrappedBuffer(new byte[]{42}), false);
+    }
+
+    @Test
+    public void valuesRoundTrip() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", 1L << 40);
+        map.put("small", 7);
+        map.put("ratio", 0.5);
+        map.put("statement", "SELECT 'ä' FROM t");
+        map.put("rows", Arrays.asList(Arrays.asList(1, "a", null), Arrays.asList(-2, "b", true)));
+        map.put("missing", null);
+        ByteBuf buf = Unpooled.buffer();
+        Codec.encode(buf, map);
+        assertEquals(map, Codec.decode(buf, false));
+        assertFalse(buf.isReadable());
+    }
+
+    @Test
+    public void bytesRoundTrip() {
+        ByteBuf buf = Unpooled.buffer();
+        Codec.encode(buf, new byte[]{0, -1, 127});
+        assertArrayEquals(new byte[]{0, -1, 127}, (byte[]) Codec.decode(buf, false));
+    }
+
+    @Test
+    public void decodesIntoJsonForTheStations() throws Exception {
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", 5);
+        map.put("parameters", Arrays.asList("x", null));
+        ByteBuf buf = Unpooled.buffer();
+        Codec.encode(buf, map);
+        JSONObject object = (JSONObject) Codec.decode(buf, true);
+        assertEquals(5, object.getInt("id"));
+        JSONArray parameters = object.getJSONArray("parameters");
+        assertEquals("x", parameters.getString(0));
+        assertSame(JSONObject.NULL, parameters.get(1));
+    }
+
+    @Test
+    public void encodesJsonLikeMapsAndLists() throws Exception {
+        JSONObject object = new JSONObject();
+        object.put("ids", new JSONArray(Arrays.asList(1, 2)));
+        object.put("sync", false);
+        ByteBuf buf = Unpooled.buffer();
+        Codec.encode(buf, object);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> decoded = (Map<String, Object>) Codec.decode(buf, false);
+        assertEquals(Arrays.asList(1, 2), decoded.get("ids"));
+        assertEquals(false, decoded.get("sync"));
+    }
+
+    private static int varintSize(long value) {
+        ByteBuf buf = Unpooled.buffer();
+        Codec.writeVarLong(buf, value);
+        return buf.readableBytes();
+    }
+
+}